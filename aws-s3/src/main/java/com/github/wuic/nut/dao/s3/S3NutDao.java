@@ -36,6 +36,7 @@ import com.amazonaws.services.sns.model.NotFoundException;
 import com.github.wuic.ApplicationConfig;
 import com.github.wuic.NutType;
 import com.github.wuic.ProcessContext;
+import com.github.wuic.commons.ObjectPrefetcher;
 import com.github.wuic.config.Alias;
 import com.github.wuic.config.BooleanConfigParam;
 import com.github.wuic.config.Config;
@@ -54,6 +55,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Future;
@@ -73,6 +75,21 @@ import java.util.regex.Pattern;
 @Alias("s3")
 public class S3NutDao extends AbstractNutDao implements ApplicationConfig {
 
+    /**
+     * Property key for the number of threads prefetching listed objects, {@code 0} to disable prefetch.
+     */
+    public static final String PREFETCH_POOL_SIZE = "c.g.wuic.dao.prefetchPoolSize";
+
+    /**
+     * Property key for the maximum number of bytes retained in memory by prefetched objects.
+     */
+    public static final String PREFETCH_MAX_BYTES = "c.g.wuic.dao.prefetchMaxBytes";
+
+    /**
+     * Property key for the number of milliseconds a read waits for an object being prefetched.
+     */
+    public static final String PREFETCH_TIMEOUT = "c.g.wuic.dao.prefetchTimeout";
+
     /**
      * Logger.
      */
@@ -103,6 +120,11 @@ public class S3NutDao extends AbstractNutDao implements ApplicationConfig {
      */
     private Boolean regularExpression;
 
+    /**
+     * Downloads listed objects in background, {@code null} if prefetch is disabled.
+     */
+    private volatile ObjectPrefetcher prefetcher;
+
     /**
      * <p>
      * Initializes a new instance.
@@ -140,12 +162,44 @@ public class S3NutDao extends AbstractNutDao implements ApplicationConfig {
         regularExpression = regex;
     }
 
+    /**
+     * <p>
+     * Configures the prefetch of listed objects. When enabled, all the objects matched by a listing are downloaded
+     * concurrently by a bounded pool and nuts read the downloaded buffers instead of opening a new remote stream.
+     * </p>
+     *
+     * @param poolSize the number of threads downloading objects, {@code 0} to disable prefetch
+     * @param maxBytes the maximum number of bytes retained in memory by prefetched objects
+     * @param timeout the number of milliseconds a read waits for an object being prefetched
+     */
+    @Config
+    public void prefetch(@IntegerConfigParam(defaultValue = 0, propertyKey = PREFETCH_POOL_SIZE) final int poolSize,
+                         @IntegerConfigParam(defaultValue = ObjectPrefetcher.DEFAULT_MAX_BYTES, propertyKey = PREFETCH_MAX_BYTES) final int maxBytes,
+                         @IntegerConfigParam(defaultValue = ObjectPrefetcher.DEFAULT_TIMEOUT, propertyKey = PREFETCH_TIMEOUT) final int timeout) {
+        if (prefetcher != null) {
+            prefetcher.shutdown();
+        }
+
+        prefetcher = poolSize > 0 ? new S3ObjectPrefetcher(poolSize, maxBytes, timeout) : null;
+    }
+
+    /**
+     * <p>
+     * Configures the prefetch of listed objects with the default memory budget and timeout.
+     * </p>
+     *
+     * @param poolSize the number of threads downloading objects, {@code 0} to disable prefetch
+     */
+    public void prefetch(final int poolSize) {
+        prefetch(poolSize, ObjectPrefetcher.DEFAULT_MAX_BYTES, ObjectPrefetcher.DEFAULT_TIMEOUT);
+    }
+
     /**
      * <p>
      * Connects to S3 if not already connected.
      * </p>
      */
-    public void connect() {
+    public synchronized void connect() {
         if (login != null && password != null && amazonS3Client == null) {
             amazonS3Client = initClient();
         }
@@ -201,6 +255,10 @@ public class S3NutDao extends AbstractNutDao implements ApplicationConfig {
 
                 if (matcher.find()) {
                     retval.add(s3ObjectSummary.getKey());
+
+                    if (prefetcher != null) {
+                        prefetcher.prefetch(s3ObjectSummary.getKey(), s3ObjectSummary.getETag(), s3ObjectSummary.getSize());
+                    }
                 }
             }
         }
@@ -248,6 +306,12 @@ public class S3NutDao extends AbstractNutDao implements ApplicationConfig {
      */
     @Override
     public Input newInputStream(final String path, final ProcessContext processContext) throws IOException {
+        final InputStream prefetched = takePrefetched(path);
+
+        if (prefetched != null) {
+            return newInput(prefetched);
+        }
+
         try {
             connect();
             return newInput(amazonS3Client.getObject(bucketName, path).getObjectContent());
@@ -257,6 +321,19 @@ public class S3NutDao extends AbstractNutDao implements ApplicationConfig {
         }
     }
 
+    /**
+     * <p>
+     * Takes the content prefetched for the given object.
+     * </p>
+     *
+     * @param path the object key
+     * @return the stream reading the prefetched content, {@code null} if nothing has been prefetched
+     */
+    private InputStream takePrefetched(final String path) {
+        final ObjectPrefetcher p = prefetcher;
+        return p == null ? null : p.take(path);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -287,6 +364,10 @@ public class S3NutDao extends AbstractNutDao implements ApplicationConfig {
             if (amazonS3Client != null) {
                 amazonS3Client.shutdown();
             }
+
+            if (prefetcher != null) {
+                prefetcher.shutdown();
+            }
         } finally {
             super.finalize();
         }
@@ -320,6 +401,13 @@ public class S3NutDao extends AbstractNutDao implements ApplicationConfig {
          */
         @Override
         public Input openStream() throws IOException {
+            // Content already downloaded in background
+            final InputStream prefetched = takePrefetched(getInitialName());
+
+            if (prefetched != null) {
+                return newInput(prefetched);
+            }
+
             // Try to get S3 object
             S3Object s3Object;
 
@@ -341,4 +429,37 @@ public class S3NutDao extends AbstractNutDao implements ApplicationConfig {
             }
         }
     }
+
+    /**
+     * <p>
+     * Prefetches S3 objects.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5.3
+     */
+    private final class S3ObjectPrefetcher extends ObjectPrefetcher {
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param poolSize the number of threads
+         * @param maxBytes the maximum number of bytes retained in memory
+         * @param timeout the number of milliseconds a read waits for a download
+         */
+        private S3ObjectPrefetcher(final int poolSize, final int maxBytes, final int timeout) {
+            super("wuic-s3-prefetch-", poolSize, maxBytes, timeout);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected InputStream download(final String name) throws IOException {
+            connect();
+            return amazonS3Client.getObject(bucketName, name).getObjectContent();
+        }
+    }
 }
@@ -42,6 +42,7 @@ import com.github.wuic.nut.NutsHeap;
 import com.github.wuic.nut.Nut;
 import com.github.wuic.nut.dao.s3.S3NutDao;
 import com.github.wuic.config.ObjectBuilder;
+import com.github.wuic.util.IOUtils;
 import com.github.wuic.util.Input;
 import org.junit.Assert;
 import org.junit.Rule;
@@ -51,6 +52,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
 import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.Date;
@@ -60,6 +62,8 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -175,4 +179,48 @@ public class S3Test {
             is.close();
         }
     }
+
+    /**
+     * <p>
+     * Tests that listed objects are prefetched and read only once.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void s3PrefetchTest() throws Exception {
+        final S3NutDao d = new S3NutDao();
+        d.init("wuic", "login", "pwd", false);
+        d.init("/path", null, -1);
+        d.init(false, true, null);
+        d.setNutTypeFactory(new NutTypeFactory(Charset.defaultCharset().displayName()));
+
+        // Prefetcher must be created by the spy to use the mocked client
+        final S3NutDao dao = spy(d);
+        dao.prefetch(2);
+
+        final AmazonS3Client client = mock(AmazonS3Client.class);
+        when(dao.initClient()).thenReturn(client);
+
+        final ObjectListing list = mock(ObjectListing.class);
+        final S3ObjectSummary summary = mock(S3ObjectSummary.class);
+        when(summary.getKey()).thenReturn("cloud.css");
+        when(summary.getETag()).thenReturn("etag");
+        when(client.listObjects(any(ListObjectsRequest.class))).thenReturn(list);
+        when(list.getObjectSummaries()).thenReturn(Arrays.asList(summary));
+
+        final String content = ".cloud { text-align : justify;}";
+        final S3Object object = mock(S3Object.class);
+        when(object.getObjectContent()).thenReturn(new S3ObjectInputStream(new ByteArrayInputStream(content.getBytes()), null));
+        when(client.getObject(anyString(), anyString())).thenReturn(object);
+
+        // Listing twice with the same version triggers only one download
+        Assert.assertEquals(1, dao.listNutsPaths("cloud.css").size());
+        Assert.assertEquals(1, dao.listNutsPaths("cloud.css").size());
+
+        final Input is = dao.newInputStream("cloud.css", ProcessContext.DEFAULT);
+        Assert.assertEquals(content, IOUtils.readString(new InputStreamReader(is.inputStream())));
+        is.close();
+        verify(client, times(1)).getObject(anyString(), anyString());
+    }
 }
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2016   The authors of WUIC
+ *
+ * License/Terms of Use
+ * Permission is hereby granted, free of charge and for the term of intellectual
+ * property rights on the Software, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify and
+ * propagate free of charge, anywhere in the world, all or part of the Software
+ * subject to the following mandatory conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, PEACEFUL ENJOYMENT,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.github.wuic.commons;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Keeps the fingerprints of the configurations embedded in templates and already applied to the facade. A
+ * configuration is {@link #fingerprint(String, String) fingerprinted} with the tag it's applied with and a hash of its
+ * XML, so JAXB parsing and facade reconfiguration can be skipped when the same configuration is seen again.
+ * </p>
+ *
+ * <p>
+ * The fingerprints must be {@link #invalidate() invalidated} when the configuration of the facade is cleared or
+ * rebuilt, otherwise the configurations seen before would never be applied again. A generation counter is incremented
+ * at each invalidation and stored with each fingerprint: a configuration applied concurrently with an invalidation is
+ * not considered as applied after it.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5.3
+ */
+public class ConfigFingerprints {
+
+    /**
+     * Default maximum number of fingerprints.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    /**
+     * The generation of each applied fingerprint.
+     */
+    private final LruCache<String, Long> applied;
+
+    /**
+     * The current generation.
+     */
+    private final AtomicLong generation;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param cacheSize the maximum number of fingerprints
+     */
+    public ConfigFingerprints(final int cacheSize) {
+        applied = new LruCache<String, Long>(cacheSize, -1L);
+        generation = new AtomicLong();
+    }
+
+    /**
+     * <p>
+     * Computes the fingerprint of a configuration.
+     * </p>
+     *
+     * @param tag the tag the configuration is applied with
+     * @param xml the XML configuration
+     * @return the fingerprint
+     */
+    public static String fingerprint(final String tag, final String xml) {
+        try {
+            final MessageDigest md = MessageDigest.getInstance("MD5");
+            return tag + '|' + new BigInteger(1, md.digest(xml.getBytes("UTF-8"))).toString(16);
+        } catch (NoSuchAlgorithmException nsae) {
+            // MD5 is always supported by the JVM
+            throw new IllegalStateException(nsae);
+        } catch (UnsupportedEncodingException uee) {
+            // UTF-8 is always supported by the JVM
+            throw new IllegalStateException(uee);
+        }
+    }
+
+    /**
+     * <p>
+     * Indicates if the configuration with the given fingerprint has been applied since the last invalidation.
+     * </p>
+     *
+     * @param fingerprint the fingerprint
+     * @return {@code true} if the configuration has been applied, {@code false} otherwise
+     */
+    public boolean isApplied(final String fingerprint) {
+        final Long g = applied.get(fingerprint);
+        return g != null && g == generation.get();
+    }
+
+    /**
+     * <p>
+     * Marks the configuration with the given fingerprint as applied. The generation must be read with
+     * {@link #getGeneration()} before the configuration is applied.
+     * </p>
+     *
+     * @param fingerprint the fingerprint
+     * @param g the generation read before applying the configuration
+     */
+    public void applied(final String fingerprint, final long g) {
+        applied.put(fingerprint, g);
+    }
+
+    /**
+     * <p>
+     * Invalidates all the fingerprints.
+     * </p>
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        applied.clear();
+    }
+
+    /**
+     * <p>
+     * Gets the current generation, incremented at each invalidation.
+     * </p>
+     *
+     * @return the generation
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2016   The authors of WUIC
+ *
+ * License/Terms of Use
+ * Permission is hereby granted, free of charge and for the term of intellectual
+ * property rights on the Software, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify and
+ * propagate free of charge, anywhere in the world, all or part of the Software
+ * subject to the following mandatory conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, PEACEFUL ENJOYMENT,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.github.wuic.commons;
+
+import com.github.wuic.nut.ConvertibleNut;
+import com.github.wuic.util.HtmlUtil;
+import com.github.wuic.util.NutUtils;
+import com.github.wuic.util.UrlProvider;
+import com.github.wuic.util.UrlProviderFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Keeps the import statements generated for the nuts of a workflow. The statements depend on the workflow, on the
+ * context path of the facade and on the context of the URL provider, for instance the context path of the request, so
+ * an entry is {@link #key(String, String, String) keyed} by all of them.
+ * </p>
+ *
+ * <p>
+ * Each entry is stored with the names and the version numbers of the nuts it has been generated for. As long as the
+ * workflow produces the same nuts with the same versions, the cached statements are returned. A new version of any
+ * nut regenerates them.
+ * </p>
+ *
+ * <p>
+ * All entries can be {@link #invalidate() invalidated}, for instance when the configuration changes. A generation
+ * counter is incremented at each invalidation and stored with each entry: statements generated before an invalidation
+ * are never returned after it, even if they are put in the cache once the invalidation is done.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5.3
+ */
+public class ImportMarkupCache {
+
+    /**
+     * Default maximum number of entries.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    /**
+     * The entries.
+     */
+    private final LruCache<String, Markup> markups;
+
+    /**
+     * The current generation.
+     */
+    private final AtomicLong generation;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param cacheSize the maximum number of entries
+     */
+    public ImportMarkupCache(final int cacheSize) {
+        markups = new LruCache<String, Markup>(cacheSize, -1L);
+        generation = new AtomicLong();
+    }
+
+    /**
+     * <p>
+     * Builds the key of the statements generated for a workflow.
+     * </p>
+     *
+     * @param workflowId the workflow ID
+     * @param contextPath the context path of the facade
+     * @param urlContext the context of the URL provider, {@code null} if none
+     * @return the key
+     */
+    public static String key(final String workflowId, final String contextPath, final String urlContext) {
+        return new StringBuilder()
+                .append(workflowId)
+                .append('|')
+                .append(contextPath)
+                .append('|')
+                .append(urlContext == null ? "" : urlContext)
+                .toString();
+    }
+
+    /**
+     * <p>
+     * Gets the import statements of the given nuts, generating them only if the nuts or their versions have changed
+     * since the last call with the same key, or if the cache has been invalidated meanwhile.
+     * </p>
+     *
+     * @param key the key
+     * @param nuts the nuts produced by the workflow
+     * @param urlProviderFactory the factory creating the URL provider when statements are generated
+     * @param workflowContextPath the workflow context path given to the factory
+     * @return the import statements
+     * @throws IOException if the statements can't be generated
+     */
+    public String get(final String key,
+                      final List<ConvertibleNut> nuts,
+                      final UrlProviderFactory urlProviderFactory,
+                      final String workflowContextPath) throws IOException {
+        final long current = generation.get();
+        final String fingerprint = fingerprint(nuts);
+        final Markup cached = markups.get(key);
+
+        if (cached != null && cached.generation == current && cached.fingerprint.equals(fingerprint)) {
+            return cached.html;
+        }
+
+        final Markup markup = new Markup(current, fingerprint, generate(nuts, urlProviderFactory, workflowContextPath));
+        markups.put(key, markup);
+        return markup.html;
+    }
+
+    /**
+     * <p>
+     * Generates the import statements of the given nuts.
+     * </p>
+     *
+     * @param nuts the nuts
+     * @param urlProviderFactory the factory creating the URL provider
+     * @param workflowContextPath the workflow context path given to the factory
+     * @return the import statements
+     * @throws IOException if the statements can't be generated
+     */
+    protected String generate(final List<ConvertibleNut> nuts,
+                              final UrlProviderFactory urlProviderFactory,
+                              final String workflowContextPath) throws IOException {
+        final UrlProvider urlProvider = urlProviderFactory.create(workflowContextPath);
+        final StringBuilder retval = new StringBuilder();
+
+        for (final ConvertibleNut nut : nuts) {
+            retval.append(HtmlUtil.writeScriptImport(nut, urlProvider));
+        }
+
+        return retval.toString();
+    }
+
+    /**
+     * <p>
+     * Invalidates all the entries.
+     * </p>
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        markups.clear();
+    }
+
+    /**
+     * <p>
+     * Gets the current generation, incremented at each invalidation.
+     * </p>
+     *
+     * @return the generation
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * <p>
+     * Builds a string identifying the given nuts by their names and versions.
+     * </p>
+     *
+     * @param nuts the nuts
+     * @return the fingerprint
+     */
+    private static String fingerprint(final List<ConvertibleNut> nuts) {
+        final StringBuilder retval = new StringBuilder();
+
+        for (final ConvertibleNut nut : nuts) {
+            retval.append(nut.getName()).append('@').append(NutUtils.getVersionNumber(nut)).append(';');
+        }
+
+        return retval.toString();
+    }
+
+    /**
+     * <p>
+     * Import statements generated for a set of nuts identified by their names and versions.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5.3
+     */
+    private static final class Markup {
+
+        /**
+         * The generation of the cache when the statements have been generated.
+         */
+        private final long generation;
+
+        /**
+         * The names and versions of the nuts.
+         */
+        private final String fingerprint;
+
+        /**
+         * The import statements.
+         */
+        private final String html;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param g the generation
+         * @param f the fingerprint
+         * @param h the HTML
+         */
+        private Markup(final long g, final String f, final String h) {
+            generation = g;
+            fingerprint = f;
+            html = h;
+        }
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2016   The authors of WUIC
+ *
+ * License/Terms of Use
+ * Permission is hereby granted, free of charge and for the term of intellectual
+ * property rights on the Software, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify and
+ * propagate free of charge, anywhere in the world, all or part of the Software
+ * subject to the following mandatory conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, PEACEFUL ENJOYMENT,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.github.wuic.commons;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * A bounded cache evicting the least recently used entries. Entries can also expire after a given time to live and
+ * the cache can be bounded by the total weight of its values, for instance a number of bytes.
+ * </p>
+ *
+ * <p>
+ * This class is thread-safe and lock-free for reads and writes: entries are stored in a {@link ConcurrentMap} and
+ * each read stamps the entry with a logical clock. When a bound is exceeded, a single thread evicts a batch of the
+ * least recently used entries, which amortizes the cost of the eviction over several writes. The bounds can be
+ * exceeded for a short time while the eviction is in progress.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ * @since 0.5.3
+ */
+public class LruCache<K, V> {
+
+    /**
+     * The entries.
+     */
+    private final ConcurrentMap<K, Entry<V>> entries;
+
+    /**
+     * Logical clock stamping the accesses.
+     */
+    private final AtomicLong clock;
+
+    /**
+     * Total weight of the values.
+     */
+    private final AtomicLong weight;
+
+    /**
+     * Only one thread evicts entries at a time.
+     */
+    private final ReentrantLock evictionLock;
+
+    /**
+     * Maximum number of entries.
+     */
+    private final int maxSize;
+
+    /**
+     * Maximum total weight, a negative value if the weight is not bounded.
+     */
+    private final long maxWeight;
+
+    /**
+     * Time to live in milliseconds, a negative value if entries never expire.
+     */
+    private final long timeToLive;
+
+    /**
+     * <p>
+     * Builds a new instance bounded by a number of entries.
+     * </p>
+     *
+     * @param maxSize the maximum number of entries
+     * @param ttl the time to live of an entry in milliseconds, a negative value if entries never expire
+     */
+    public LruCache(final int maxSize, final long ttl) {
+        this(maxSize, -1L, ttl);
+    }
+
+    /**
+     * <p>
+     * Builds a new instance bounded by a number of entries and by the total weight of the values.
+     * </p>
+     *
+     * @param maxSize the maximum number of entries
+     * @param maxWeight the maximum total weight, a negative value if the weight is not bounded
+     * @param ttl the time to live of an entry in milliseconds, a negative value if entries never expire
+     */
+    public LruCache(final int maxSize, final long maxWeight, final long ttl) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be a positive number.");
+        }
+
+        this.entries = new ConcurrentHashMap<K, Entry<V>>(Math.min(maxSize, 16));
+        this.clock = new AtomicLong();
+        this.weight = new AtomicLong();
+        this.evictionLock = new ReentrantLock();
+        this.maxSize = maxSize;
+        this.maxWeight = maxWeight;
+        this.timeToLive = ttl;
+    }
+
+    /**
+     * <p>
+     * Gets the current time in milliseconds. Can be overridden for tests.
+     * </p>
+     *
+     * @return the current time
+     */
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * <p>
+     * Gets the value associated to the given key.
+     * </p>
+     *
+     * @param key the key
+     * @return the value, {@code null} if absent or expired
+     */
+    public V get(final K key) {
+        final Entry<V> entry = entries.get(key);
+
+        if (entry == null) {
+            return null;
+        } else if (isExpired(entry)) {
+            remove(key, entry);
+            return null;
+        }
+
+        entry.accessedAt = clock.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * <p>
+     * Associates a value with a weight of {@code 0} to the given key.
+     * </p>
+     *
+     * @param key the key
+     * @param value the value
+     */
+    public void put(final K key, final V value) {
+        put(key, value, 0L);
+    }
+
+    /**
+     * <p>
+     * Associates a value to the given key. A value heavier than the maximum weight is not cached.
+     * </p>
+     *
+     * @param key the key
+     * @param value the value
+     * @param valueWeight the weight of the value
+     */
+    public void put(final K key, final V value, final long valueWeight) {
+        if (maxWeight >= 0 && valueWeight > maxWeight) {
+            remove(key);
+            return;
+        }
+
+        final Entry<V> entry = new Entry<V>(value, valueWeight, now(), clock.incrementAndGet());
+        final Entry<V> previous = entries.put(key, entry);
+        weight.addAndGet(previous == null ? valueWeight : valueWeight - previous.weight);
+
+        if (entries.size() > maxSize || (maxWeight >= 0 && weight.get() > maxWeight)) {
+            evict();
+        }
+    }
+
+    /**
+     * <p>
+     * Removes the value associated to the given key.
+     * </p>
+     *
+     * @param key the key
+     */
+    public void remove(final K key) {
+        final Entry<V> entry = entries.remove(key);
+
+        if (entry != null) {
+            weight.addAndGet(-entry.weight);
+        }
+    }
+
+    /**
+     * <p>
+     * Removes all the entries.
+     * </p>
+     */
+    public void clear() {
+        for (final K key : entries.keySet()) {
+            remove(key);
+        }
+    }
+
+    /**
+     * <p>
+     * Gets the number of entries, including expired entries not evicted yet.
+     * </p>
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * <p>
+     * Gets the total weight of the values.
+     * </p>
+     *
+     * @return the weight
+     */
+    public long weight() {
+        return weight.get();
+    }
+
+    /**
+     * <p>
+     * Removes the given entry if it's still associated to the given key.
+     * </p>
+     *
+     * @param key the key
+     * @param entry the entry
+     */
+    private void remove(final K key, final Entry<V> entry) {
+        if (entries.remove(key, entry)) {
+            weight.addAndGet(-entry.weight);
+        }
+    }
+
+    /**
+     * <p>
+     * Indicates if the given entry has expired.
+     * </p>
+     *
+     * @param entry the entry
+     * @return {@code true} if expired
+     */
+    private boolean isExpired(final Entry<V> entry) {
+        return timeToLive >= 0 && now() - entry.createdAt > timeToLive;
+    }
+
+    /**
+     * <p>
+     * Evicts the expired entries, then the least recently used ones until the cache is 10% below its bounds.
+     * Threads that find an eviction in progress return immediately.
+     * </p>
+     */
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+
+        try {
+            final int targetSize = maxSize - maxSize / 10;
+            final long targetWeight = maxWeight - maxWeight / 10;
+            final List<Map.Entry<K, Entry<V>>> candidates = new ArrayList<Map.Entry<K, Entry<V>>>(entries.size());
+
+            for (final Map.Entry<K, Entry<V>> e : entries.entrySet()) {
+                if (isExpired(e.getValue())) {
+                    remove(e.getKey(), e.getValue());
+                } else {
+                    candidates.add(e);
+                }
+            }
+
+            Collections.sort(candidates, new Comparator<Map.Entry<K, Entry<V>>>() {
+
+                /**
+                 * {@inheritDoc}
+                 */
+                @Override
+                public int compare(final Map.Entry<K, Entry<V>> o1, final Map.Entry<K, Entry<V>> o2) {
+                    final long a1 = o1.getValue().accessedAt;
+                    final long a2 = o2.getValue().accessedAt;
+                    return a1 < a2 ? -1 : (a1 == a2 ? 0 : 1);
+                }
+            });
+
+            for (final Map.Entry<K, Entry<V>> e : candidates) {
+                if (entries.size() <= targetSize && (maxWeight < 0 || weight.get() <= targetWeight)) {
+                    break;
+                }
+
+                remove(e.getKey(), e.getValue());
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * <p>
+     * A value with its weight, its creation date and its last access.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @param <V> the type of value
+     * @since 0.5.3
+     */
+    private static final class Entry<V> {
+
+        /**
+         * The value.
+         */
+        private final V value;
+
+        /**
+         * The weight.
+         */
+        private final long weight;
+
+        /**
+         * Creation date.
+         */
+        private final long createdAt;
+
+        /**
+         * Stamp of the last access.
+         */
+        private volatile long accessedAt;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param v the value
+         * @param w the weight
+         * @param c the creation date
+         * @param a the stamp of the access
+         */
+        private Entry(final V v, final long w, final long c, final long a) {
+            value = v;
+            weight = w;
+            createdAt = c;
+            accessedAt = a;
+        }
+    }
+}
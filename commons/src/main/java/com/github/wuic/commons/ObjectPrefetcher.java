@@ -0,0 +1,550 @@
+/*
+ * Copyright (c) 2016   The authors of WUIC
+ *
+ * License/Terms of Use
+ * Permission is hereby granted, free of charge and for the term of intellectual
+ * property rights on the Software, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify and
+ * propagate free of charge, anywhere in the world, all or part of the Software
+ * subject to the following mandatory conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, PEACEFUL ENJOYMENT,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.github.wuic.commons;
+
+import com.github.wuic.util.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Downloads objects in background as soon as they are listed, so the next stream opened on them reads a buffer in
+ * memory instead of doing a remote call. This way, the time spent to read all the objects of a workflow approaches
+ * the time spent to read the slowest object.
+ * </p>
+ *
+ * <p>
+ * Each prefetch is associated to the version of the object reported by the listing. An object is downloaded again only
+ * if a new listing reports a different version, which means that polling does not transfer unchanged objects.
+ * A buffer is released as soon as it has been {@link #take(String) taken}.
+ * </p>
+ *
+ * <p>
+ * The buffers retained in memory never exceed a budget of bytes. The size reported by the listing is reserved before a
+ * download starts and the reservation grows while the download reads more bytes, so downloads in progress are counted
+ * as well as completed ones. A download that does not fit in the remaining budget is abandoned, its reservation is
+ * given back and the object will be read remotely. A caller never waits for a download longer than the configured
+ * timeout and all waiting callers are released when the prefetcher is {@link #shutdown() shut down}.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5.3
+ */
+public abstract class ObjectPrefetcher {
+
+    /**
+     * Default number of bytes that can be retained in memory.
+     */
+    public static final int DEFAULT_MAX_BYTES = 32 * 1024 * 1024;
+
+    /**
+     * Default number of milliseconds a caller waits for a download in progress.
+     */
+    public static final int DEFAULT_TIMEOUT = 30000;
+
+    /**
+     * Logger.
+     */
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    /**
+     * Prefetch state for each object name.
+     */
+    private final ConcurrentMap<String, Prefetch> prefetches = new ConcurrentHashMap<String, Prefetch>();
+
+    /**
+     * The bounded pool executing downloads.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The number of bytes currently reserved by downloads in progress and retained by downloaded buffers.
+     */
+    private final AtomicLong retainedBytes = new AtomicLong();
+
+    /**
+     * The maximum number of bytes retained by downloaded buffers.
+     */
+    private final long maxBytes;
+
+    /**
+     * The number of milliseconds a caller waits for a download in progress.
+     */
+    private final long timeout;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param threadPrefix the prefix of the name given to the threads
+     * @param poolSize the number of threads downloading objects concurrently
+     * @param maxBytes the maximum number of bytes retained in memory
+     * @param timeoutMillis the number of milliseconds a caller waits for a download in progress
+     */
+    protected ObjectPrefetcher(final String threadPrefix, final int poolSize, final long maxBytes, final long timeoutMillis) {
+        final AtomicInteger count = new AtomicInteger();
+        this.maxBytes = maxBytes;
+        this.timeout = timeoutMillis;
+        this.executor = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread retval = new Thread(r, threadPrefix + count.incrementAndGet());
+                retval.setDaemon(true);
+                return retval;
+            }
+        });
+    }
+
+    /**
+     * <p>
+     * Opens a stream to the remote object.
+     * </p>
+     *
+     * @param name the object name
+     * @return the stream
+     * @throws IOException if the object can't be read
+     */
+    protected abstract InputStream download(String name) throws IOException;
+
+    /**
+     * <p>
+     * Starts the download of the given object if the version has changed since the last prefetch. Nothing is
+     * downloaded when the budget of bytes is exhausted.
+     * </p>
+     *
+     * @param name the object name
+     * @param version the object version reported by the listing, {@code null} if unknown
+     */
+    public void prefetch(final String name, final String version) {
+        prefetch(name, version, -1L);
+    }
+
+    /**
+     * <p>
+     * Starts the download of the given object if the version has changed since the last prefetch. The given size is
+     * reserved in the budget before the download starts: nothing is downloaded if it does not fit.
+     * </p>
+     *
+     * @param name the object name
+     * @param version the object version reported by the listing, {@code null} if unknown
+     * @param size the object size reported by the listing, a negative value if unknown
+     */
+    public void prefetch(final String name, final String version, final long size) {
+        final String v = version == null ? "" : version;
+        final Prefetch previous = prefetches.get(name);
+
+        if (previous != null && previous.version.equals(v)) {
+            return;
+        }
+
+        final Reservation reservation = new Reservation();
+
+        if (retainedBytes.get() >= maxBytes || (size > 0 && !reservation.grow(size))) {
+            // Never serve a previous version while the new one is not downloaded
+            if (previous != null && prefetches.remove(name, previous)) {
+                previous.cancel();
+            }
+
+            log.debug("Prefetch budget of {} bytes exhausted, {} will be read remotely", maxBytes, name);
+            return;
+        }
+
+        final Prefetch prefetch = new Prefetch(v, new PrefetchTask(name, reservation));
+
+        if (previous == null ? prefetches.putIfAbsent(name, prefetch) == null : prefetches.replace(name, previous, prefetch)) {
+            if (previous != null) {
+                previous.cancel();
+            }
+
+            executor.execute(prefetch.task);
+        } else {
+            reservation.release();
+        }
+    }
+
+    /**
+     * <p>
+     * Takes the buffer downloaded for the given object. Waits until the download is over if it's still in progress,
+     * but no longer than the configured timeout.
+     * </p>
+     *
+     * @param name the object name
+     * @return the stream reading the buffer, {@code null} if no buffer is available
+     */
+    public InputStream take(final String name) {
+        final Prefetch prefetch = prefetches.get(name);
+
+        if (prefetch == null || !prefetch.taken.compareAndSet(false, true)) {
+            return null;
+        }
+
+        try {
+            final byte[] content = prefetch.task.get(timeout, TimeUnit.MILLISECONDS);
+            return content == null ? null : new ByteArrayInputStream(content);
+        } catch (ExecutionException ee) {
+            log.debug("Unable to prefetch {}, object will be read remotely", name, ee);
+        } catch (TimeoutException te) {
+            log.debug("Prefetch of {} did not complete within {} ms, object will be read remotely", name, timeout);
+            prefetch.task.cancel(true);
+        } catch (CancellationException ce) {
+            log.debug("Prefetch of {} has been cancelled, object will be read remotely", name);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // The buffer belongs to the caller now
+            prefetch.task.release();
+        }
+
+        return null;
+    }
+
+    /**
+     * <p>
+     * Gets the number of bytes currently reserved by the downloads in progress and retained by the downloaded buffers.
+     * </p>
+     *
+     * @return the retained bytes
+     */
+    public long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    /**
+     * <p>
+     * Stops the threads and releases the buffers. Callers waiting for a download are released immediately.
+     * </p>
+     */
+    public void shutdown() {
+        for (final Prefetch prefetch : prefetches.values()) {
+            prefetch.cancel();
+        }
+
+        executor.shutdownNow();
+        prefetches.clear();
+    }
+
+    /**
+     * <p>
+     * The prefetch state of an object.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5.3
+     */
+    private static final class Prefetch {
+
+        /**
+         * The prefetched version.
+         */
+        private final String version;
+
+        /**
+         * The download.
+         */
+        private final PrefetchTask task;
+
+        /**
+         * Content can be taken only once.
+         */
+        private final AtomicBoolean taken;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param v the version
+         * @param t the download
+         */
+        private Prefetch(final String v, final PrefetchTask t) {
+            version = v;
+            task = t;
+            taken = new AtomicBoolean();
+        }
+
+        /**
+         * <p>
+         * Cancels the download and releases the downloaded bytes.
+         * </p>
+         */
+        private void cancel() {
+            if (!task.cancel(true)) {
+                task.release();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * The bytes reserved in the budget by a download. The reservation grows while the download reads bytes and is given
+     * back once, when the buffer is released or the download fails. A released reservation can't grow anymore.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5.3
+     */
+    private final class Reservation {
+
+        /**
+         * The reserved bytes.
+         */
+        private long bytes;
+
+        /**
+         * If the reservation has been given back.
+         */
+        private boolean released;
+
+        /**
+         * <p>
+         * Reserves the given number of additional bytes if they fit the budget.
+         * </p>
+         *
+         * @param length the number of bytes
+         * @return {@code true} if bytes have been reserved, {@code false} otherwise
+         */
+        private synchronized boolean grow(final long length) {
+            if (released) {
+                return false;
+            }
+
+            for (;;) {
+                final long current = retainedBytes.get();
+
+                if (current + length > maxBytes) {
+                    return false;
+                } else if (retainedBytes.compareAndSet(current, current + length)) {
+                    bytes += length;
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * <p>
+         * Reserves exactly the given number of bytes, giving back the bytes reserved in excess.
+         * </p>
+         *
+         * @param length the number of bytes
+         * @return {@code true} if bytes are reserved, {@code false} otherwise
+         */
+        private synchronized boolean adjust(final long length) {
+            if (length > bytes) {
+                return grow(length - bytes);
+            } else if (!released) {
+                retainedBytes.addAndGet(length - bytes);
+                bytes = length;
+            }
+
+            return !released;
+        }
+
+        /**
+         * <p>
+         * Gets the reserved bytes.
+         * </p>
+         *
+         * @return the bytes
+         */
+        private synchronized long bytes() {
+            return bytes;
+        }
+
+        /**
+         * <p>
+         * Gives back the reserved bytes to the budget.
+         * </p>
+         */
+        private synchronized void release() {
+            if (!released) {
+                released = true;
+                retainedBytes.addAndGet(-bytes);
+                bytes = 0L;
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * A download which keeps its bytes reserved in the budget until it's released.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5.3
+     */
+    private final class PrefetchTask extends FutureTask<byte[]> {
+
+        /**
+         * The bytes reserved in the budget.
+         */
+        private final Reservation reservation;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param name the object name
+         * @param r the bytes already reserved for the download
+         */
+        private PrefetchTask(final String name, final Reservation r) {
+            super(new Download(name, r));
+            reservation = r;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void set(final byte[] content) {
+            if (content == null || !reservation.adjust(content.length)) {
+                release();
+                super.set(null);
+                return;
+            }
+
+            super.set(content);
+
+            // Cancelled before completion: the content will never be taken
+            if (isCancelled()) {
+                release();
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void setException(final Throwable t) {
+            release();
+            super.setException(t);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                release();
+            }
+        }
+
+        /**
+         * <p>
+         * Gives back the reserved bytes to the budget.
+         * </p>
+         */
+        private void release() {
+            reservation.release();
+        }
+    }
+
+    /**
+     * <p>
+     * Downloads an object into memory. The download is abandoned as soon as it exceeds the reserved bytes and the
+     * remaining budget.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5.3
+     */
+    private final class Download implements Callable<byte[]> {
+
+        /**
+         * The object name.
+         */
+        private final String name;
+
+        /**
+         * The bytes reserved for the download.
+         */
+        private final Reservation reservation;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param n the object name
+         * @param r the bytes reserved for the download
+         */
+        private Download(final String n, final Reservation r) {
+            name = n;
+            reservation = r;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public byte[] call() throws IOException {
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream(IOUtils.WUIC_BUFFER_LEN);
+            final byte[] buffer = new byte[IOUtils.WUIC_BUFFER_LEN];
+            InputStream is = null;
+
+            try {
+                is = download(name);
+                int offset;
+
+                while ((offset = is.read(buffer)) != -1) {
+                    bos.write(buffer, 0, offset);
+                    final long missing = bos.size() - reservation.bytes();
+
+                    if (missing > 0 && !reservation.grow(missing)) {
+                        log.debug("{} exceeds the prefetch budget of {} bytes, object will be read remotely", name, maxBytes);
+                        return null;
+                    }
+                }
+
+                return bos.toByteArray();
+            } finally {
+                IOUtils.close(is);
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2016   The authors of WUIC
+ *
+ * License/Terms of Use
+ * Permission is hereby granted, free of charge and for the term of intellectual
+ * property rights on the Software, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify and
+ * propagate free of charge, anywhere in the world, all or part of the Software
+ * subject to the following mandatory conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, PEACEFUL ENJOYMENT,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.github.wuic.commons;
+
+import com.github.wuic.NutTypeFactory;
+import com.github.wuic.nut.ConvertibleNut;
+import com.github.wuic.nut.InMemoryNut;
+import com.github.wuic.util.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * <p>
+ * The manifest of the nuts precompiled at build time. It's a properties file named {@link #FILE_NAME}. Each nut is
+ * listed with its path relative to the artifact, that is the workflow ID followed by the nut name, and its version
+ * number. Each workflow is listed with the {@link #WORKFLOW_PREFIX} followed by its ID and the names of the nuts it
+ * produces, in order and separated by a comma.
+ * </p>
+ *
+ * <p>
+ * With the manifest, the version number of a precompiled nut is known without running its workflow, and the import
+ * statements of a workflow can be generated from the {@link #getNuts(String, NutTypeFactory) nuts} it lists.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5.3
+ */
+public class PrecompiledManifest {
+
+    /**
+     * The manifest file name.
+     */
+    public static final String FILE_NAME = "wuic-manifest.properties";
+
+    /**
+     * The prefix of the keys listing the nuts of a workflow.
+     */
+    public static final String WORKFLOW_PREFIX = "workflow:";
+
+    /**
+     * The entries.
+     */
+    private final Properties properties;
+
+    /**
+     * <p>
+     * Builds an empty manifest.
+     * </p>
+     */
+    public PrecompiledManifest() {
+        this(new Properties());
+    }
+
+    /**
+     * <p>
+     * Builds a manifest from the given entries.
+     * </p>
+     *
+     * @param p the entries
+     */
+    public PrecompiledManifest(final Properties p) {
+        properties = p;
+    }
+
+    /**
+     * <p>
+     * Reads a manifest from the given stream. The stream is not closed.
+     * </p>
+     *
+     * @param is the stream
+     * @return the manifest
+     * @throws IOException if the stream can't be read
+     */
+    public static PrecompiledManifest read(final InputStream is) throws IOException {
+        final Properties properties = new Properties();
+        properties.load(is);
+        return new PrecompiledManifest(properties);
+    }
+
+    /**
+     * <p>
+     * Writes this manifest to the given stream. The stream is not closed.
+     * </p>
+     *
+     * @param os the stream
+     * @throws IOException if the stream can't be written
+     */
+    public void store(final OutputStream os) throws IOException {
+        properties.store(os, "WUIC precompiled nuts");
+    }
+
+    /**
+     * <p>
+     * Adds a precompiled nut.
+     * </p>
+     *
+     * @param workflowId the workflow ID
+     * @param nutName the nut name
+     * @param versionNumber the version number
+     */
+    public void putNut(final String workflowId, final String nutName, final long versionNumber) {
+        properties.setProperty(IOUtils.mergePath(workflowId, nutName), String.valueOf(versionNumber));
+    }
+
+    /**
+     * <p>
+     * Adds a precompiled workflow with the names of the nuts it produces.
+     * </p>
+     *
+     * @param workflowId the workflow ID
+     * @param nutNames the nut names, in order
+     */
+    public void putWorkflow(final String workflowId, final List<String> nutNames) {
+        final StringBuilder value = new StringBuilder();
+
+        for (final String nutName : nutNames) {
+            if (value.length() > 0) {
+                value.append(',');
+            }
+
+            value.append(nutName);
+        }
+
+        properties.setProperty(WORKFLOW_PREFIX + workflowId, value.toString());
+    }
+
+    /**
+     * <p>
+     * Gets the version number of a precompiled nut.
+     * </p>
+     *
+     * @param workflowId the workflow ID
+     * @param nutName the nut name
+     * @return the version number, {@code null} if the nut is not precompiled
+     */
+    public Long getVersionNumber(final String workflowId, final String nutName) {
+        final String value = properties.getProperty(IOUtils.mergePath(workflowId, nutName));
+        return value == null ? null : Long.parseLong(value);
+    }
+
+    /**
+     * <p>
+     * Gets the names of the nuts produced by a precompiled workflow.
+     * </p>
+     *
+     * @param workflowId the workflow ID
+     * @return the nut names in order, {@code null} if the workflow is not precompiled
+     */
+    public List<String> getNutNames(final String workflowId) {
+        final String value = properties.getProperty(WORKFLOW_PREFIX + workflowId);
+
+        if (value == null) {
+            return null;
+        }
+
+        return value.isEmpty() ? Collections.<String>emptyList() : Arrays.asList(value.split(","));
+    }
+
+    /**
+     * <p>
+     * Creates the nuts produced by a precompiled workflow. Each nut has the name and the version number listed in the
+     * manifest and no content: they can be used to generate URLs and import statements without running the workflow.
+     * </p>
+     *
+     * @param workflowId the workflow ID
+     * @param nutTypeFactory the factory resolving the type of each nut from its extension
+     * @return the nuts in order, {@code null} if the workflow or one of its nuts is not precompiled
+     */
+    public List<ConvertibleNut> getNuts(final String workflowId, final NutTypeFactory nutTypeFactory) {
+        final List<String> nutNames = getNutNames(workflowId);
+
+        if (nutNames == null) {
+            return null;
+        }
+
+        final List<ConvertibleNut> retval = new ArrayList<ConvertibleNut>(nutNames.size());
+
+        for (final String nutName : nutNames) {
+            final Long versionNumber = getVersionNumber(workflowId, nutName);
+            final int dot = nutName.lastIndexOf('.');
+
+            if (versionNumber == null || dot == -1) {
+                return null;
+            }
+
+            retval.add(new InMemoryNut(new byte[0],
+                    nutName,
+                    nutTypeFactory.getNutTypeForExtension(nutName.substring(dot)),
+                    versionNumber,
+                    false));
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Gets a copy of the entries of this manifest.
+     * </p>
+     *
+     * @return the entries
+     */
+    public Properties getProperties() {
+        final Properties retval = new Properties();
+        retval.putAll(properties);
+        return retval;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2016   The authors of WUIC
+ *
+ * License/Terms of Use
+ * Permission is hereby granted, free of charge and for the term of intellectual
+ * property rights on the Software, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify and
+ * propagate free of charge, anywhere in the world, all or part of the Software
+ * subject to the following mandatory conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, PEACEFUL ENJOYMENT,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.github.wuic.commons.test;
+
+import com.github.wuic.commons.ConfigFingerprints;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * <p>
+ * Tests for {@link ConfigFingerprints}.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5.3
+ */
+@RunWith(JUnit4.class)
+public class ConfigFingerprintsTest {
+
+    /**
+     * Timeout.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /**
+     * <p>
+     * Tests that fingerprints depend on both the tag and the XML.
+     * </p>
+     */
+    @Test
+    public void fingerprintTest() {
+        final String xml = "<wuic><heaps/></wuic>";
+        Assert.assertEquals(ConfigFingerprints.fingerprint("tag", xml), ConfigFingerprints.fingerprint("tag", xml));
+        Assert.assertNotEquals(ConfigFingerprints.fingerprint("tag", xml), ConfigFingerprints.fingerprint("other", xml));
+        Assert.assertNotEquals(ConfigFingerprints.fingerprint("tag", xml),
+                ConfigFingerprints.fingerprint("tag", "<wuic><workflows/></wuic>"));
+    }
+
+    /**
+     * <p>
+     * Tests that applied configurations are forgotten when invalidated, including the ones applied concurrently.
+     * </p>
+     */
+    @Test
+    public void invalidateTest() {
+        final ConfigFingerprints fingerprints = new ConfigFingerprints(ConfigFingerprints.DEFAULT_CACHE_SIZE);
+        final String fingerprint = ConfigFingerprints.fingerprint("tag", "<wuic/>");
+        Assert.assertFalse(fingerprints.isApplied(fingerprint));
+
+        fingerprints.applied(fingerprint, fingerprints.getGeneration());
+        Assert.assertTrue(fingerprints.isApplied(fingerprint));
+
+        fingerprints.invalidate();
+        Assert.assertEquals(1L, fingerprints.getGeneration());
+        Assert.assertFalse(fingerprints.isApplied(fingerprint));
+
+        // Configuration started before an invalidation and marked as applied after it
+        final long generation = fingerprints.getGeneration();
+        fingerprints.invalidate();
+        fingerprints.applied(fingerprint, generation);
+        Assert.assertFalse(fingerprints.isApplied(fingerprint));
+
+        fingerprints.applied(fingerprint, fingerprints.getGeneration());
+        Assert.assertTrue(fingerprints.isApplied(fingerprint));
+    }
+
+    /**
+     * <p>
+     * Tests that the number of fingerprints is bounded.
+     * </p>
+     */
+    @Test
+    public void boundedTest() {
+        final ConfigFingerprints fingerprints = new ConfigFingerprints(2);
+
+        for (int i = 0; i < 3; i++) {
+            fingerprints.applied(ConfigFingerprints.fingerprint("tag" + i, "<wuic/>"), fingerprints.getGeneration());
+        }
+
+        Assert.assertFalse(fingerprints.isApplied(ConfigFingerprints.fingerprint("tag0", "<wuic/>")));
+        Assert.assertTrue(fingerprints.isApplied(ConfigFingerprints.fingerprint("tag2", "<wuic/>")));
+    }
+}
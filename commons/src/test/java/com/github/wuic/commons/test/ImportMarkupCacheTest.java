@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2016   The authors of WUIC
+ *
+ * License/Terms of Use
+ * Permission is hereby granted, free of charge and for the term of intellectual
+ * property rights on the Software, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify and
+ * propagate free of charge, anywhere in the world, all or part of the Software
+ * subject to the following mandatory conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, PEACEFUL ENJOYMENT,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.github.wuic.commons.test;
+
+import com.github.wuic.EnumNutType;
+import com.github.wuic.NutTypeFactory;
+import com.github.wuic.commons.ImportMarkupCache;
+import com.github.wuic.nut.ConvertibleNut;
+import com.github.wuic.nut.InMemoryNut;
+import com.github.wuic.util.NutUtils;
+import com.github.wuic.util.UrlProvider;
+import com.github.wuic.util.UrlProviderFactory;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Tests for {@link ImportMarkupCache}.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5.3
+ */
+@RunWith(JUnit4.class)
+public class ImportMarkupCacheTest {
+
+    /**
+     * Timeout.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /**
+     * <p>
+     * Tests that statements are generated only when the nuts, their versions, the key or the generation change.
+     * </p>
+     *
+     * @throws IOException if test fails
+     */
+    @Test
+    public void markupCacheTest() throws IOException {
+        final NutTypeFactory nutTypeFactory = new NutTypeFactory(Charset.defaultCharset().displayName());
+        final AtomicInteger count = new AtomicInteger();
+        final UrlProviderFactory factory = new UrlProviderFactory() {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public UrlProvider create(final String workflowContextPath) {
+                count.incrementAndGet();
+
+                return new UrlProvider() {
+
+                    /**
+                     * {@inheritDoc}
+                     */
+                    @Override
+                    public String getUrl(final ConvertibleNut nut) {
+                        return workflowContextPath + "/" + NutUtils.getVersionNumber(nut) + "/" + nut.getName();
+                    }
+                };
+            }
+        };
+
+        final ImportMarkupCache cache = new ImportMarkupCache(ImportMarkupCache.DEFAULT_CACHE_SIZE);
+        final String key = ImportMarkupCache.key("wf", "/wuic", "/app");
+        final List<ConvertibleNut> v1 = Arrays.<ConvertibleNut>asList(
+                new InMemoryNut("var a;".getBytes(), "a.js", nutTypeFactory.getNutType(EnumNutType.JAVASCRIPT), 1L, false));
+
+        // First call generates, second call is served from cache
+        final String html = cache.get(key, v1, factory, "/wuic/wf");
+        Assert.assertTrue(html, html.contains("/wuic/wf/1/a.js"));
+        Assert.assertEquals(1, count.get());
+        Assert.assertEquals(html, cache.get(key, v1, factory, "/wuic/wf"));
+        Assert.assertEquals(1, count.get());
+
+        // A new version regenerates the statements
+        final List<ConvertibleNut> v2 = Arrays.<ConvertibleNut>asList(
+                new InMemoryNut("var a;".getBytes(), "a.js", nutTypeFactory.getNutType(EnumNutType.JAVASCRIPT), 2L, false));
+        final String html2 = cache.get(key, v2, factory, "/wuic/wf");
+        Assert.assertTrue(html2, html2.contains("/wuic/wf/2/a.js"));
+        Assert.assertEquals(2, count.get());
+
+        // Another request context path has its own entry
+        final String other = ImportMarkupCache.key("wf", "/wuic", "/other");
+        Assert.assertNotEquals(key, other);
+        cache.get(other, v2, factory, "/wuic/wf");
+        Assert.assertEquals(3, count.get());
+        cache.get(key, v2, factory, "/wuic/wf");
+        Assert.assertEquals(3, count.get());
+
+        // Invalidation regenerates everything
+        Assert.assertEquals(0L, cache.getGeneration());
+        cache.invalidate();
+        Assert.assertEquals(1L, cache.getGeneration());
+        cache.get(key, v2, factory, "/wuic/wf");
+        Assert.assertEquals(4, count.get());
+        cache.get(key, v2, factory, "/wuic/wf");
+        Assert.assertEquals(4, count.get());
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2016   The authors of WUIC
+ *
+ * License/Terms of Use
+ * Permission is hereby granted, free of charge and for the term of intellectual
+ * property rights on the Software, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify and
+ * propagate free of charge, anywhere in the world, all or part of the Software
+ * subject to the following mandatory conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, PEACEFUL ENJOYMENT,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.github.wuic.commons.test;
+
+import com.github.wuic.commons.LruCache;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Tests for {@link LruCache}.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5.3
+ */
+@RunWith(JUnit4.class)
+public class LruCacheTest {
+
+    /**
+     * Timeout.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /**
+     * <p>
+     * A cache with a clock controlled by the test.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     * @since 0.5.3
+     */
+    private static final class ClockedCache<K, V> extends LruCache<K, V> {
+
+        /**
+         * The current time.
+         */
+        private final AtomicLong time = new AtomicLong();
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param maxSize the maximum number of entries
+         * @param maxWeight the maximum weight
+         * @param ttl the time to live
+         */
+        private ClockedCache(final int maxSize, final long maxWeight, final long ttl) {
+            super(maxSize, maxWeight, ttl);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected long now() {
+            return time.get();
+        }
+    }
+
+    /**
+     * <p>
+     * Tests that the least recently used entry is evicted first.
+     * </p>
+     */
+    @Test
+    public void lruTest() {
+        final LruCache<String, String> cache = new LruCache<String, String>(2, -1L);
+        cache.put("a", "1");
+        cache.put("b", "2");
+
+        // "a" is now more recent than "b"
+        Assert.assertEquals("1", cache.get("a"));
+        cache.put("c", "3");
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals("1", cache.get("a"));
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals("3", cache.get("c"));
+    }
+
+    /**
+     * <p>
+     * Tests that entries expire after their time to live.
+     * </p>
+     */
+    @Test
+    public void ttlTest() {
+        final ClockedCache<String, String> cache = new ClockedCache<String, String>(10, -1L, 100L);
+        cache.put("a", "1");
+        cache.time.set(100L);
+        Assert.assertEquals("1", cache.get("a"));
+        cache.time.set(101L);
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    /**
+     * <p>
+     * Tests that the cache is bounded by the weight of its values.
+     * </p>
+     */
+    @Test
+    public void weightTest() {
+        final LruCache<String, byte[]> cache = new LruCache<String, byte[]>(100, 10L, -1L);
+        cache.put("a", new byte[4], 4L);
+        cache.put("b", new byte[4], 4L);
+        Assert.assertEquals(8L, cache.weight());
+
+        // Evicts "a" to make room
+        cache.put("c", new byte[4], 4L);
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(8L, cache.weight());
+
+        // Too heavy to be cached
+        cache.put("d", new byte[11], 11L);
+        Assert.assertNull(cache.get("d"));
+
+        cache.remove("b");
+        Assert.assertEquals(4L, cache.weight());
+        cache.clear();
+        Assert.assertEquals(0L, cache.weight());
+        Assert.assertEquals(0, cache.size());
+    }
+
+    /**
+     * <p>
+     * Tests that concurrent writes keep the cache bounded and the weight consistent.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void concurrentTest() throws Exception {
+        final LruCache<Integer, Integer> cache = new LruCache<Integer, Integer>(50, -1L);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+        try {
+            for (int t = 0; t < 8; t++) {
+                final int offset = t * 1000;
+
+                futures.add(executor.submit(new Callable<Void>() {
+
+                    /**
+                     * {@inheritDoc}
+                     */
+                    @Override
+                    public Void call() {
+                        for (int i = 0; i < 1000; i++) {
+                            cache.put(offset + i, i, 1L);
+                            cache.get(offset + i / 2);
+                        }
+
+                        return null;
+                    }
+                }));
+            }
+
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // A final write triggers an eviction if a concurrent one has been skipped
+        cache.put(-1, -1, 1L);
+        Assert.assertTrue(String.valueOf(cache.size()), cache.size() <= 50);
+        Assert.assertEquals(cache.size(), cache.weight());
+    }
+}
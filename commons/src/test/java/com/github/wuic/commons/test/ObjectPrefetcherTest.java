@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2016   The authors of WUIC
+ *
+ * License/Terms of Use
+ * Permission is hereby granted, free of charge and for the term of intellectual
+ * property rights on the Software, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify and
+ * propagate free of charge, anywhere in the world, all or part of the Software
+ * subject to the following mandatory conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, PEACEFUL ENJOYMENT,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.github.wuic.commons.test;
+
+import com.github.wuic.commons.ObjectPrefetcher;
+import com.github.wuic.util.IOUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>
+ * Tests for {@link ObjectPrefetcher}.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5.3
+ */
+@RunWith(JUnit4.class)
+public class ObjectPrefetcherTest {
+
+    /**
+     * Timeout.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /**
+     * <p>
+     * A prefetcher serving objects from a map, optionally blocking until a latch is released.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5.3
+     */
+    private static final class MapPrefetcher extends ObjectPrefetcher {
+
+        /**
+         * The objects.
+         */
+        private final Map<String, String> objects = new HashMap<String, String>();
+
+        /**
+         * Number of downloads.
+         */
+        private final AtomicInteger downloads = new AtomicInteger();
+
+        /**
+         * Released when a download starts.
+         */
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        /**
+         * Downloads wait for this latch.
+         */
+        private final CountDownLatch unblock;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param maxBytes the budget
+         * @param timeout the timeout
+         * @param blocking if downloads must block
+         */
+        private MapPrefetcher(final long maxBytes, final long timeout, final boolean blocking) {
+            super("wuic-test-prefetch-", 1, maxBytes, timeout);
+            unblock = new CountDownLatch(blocking ? 1 : 0);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected InputStream download(final String name) throws IOException {
+            downloads.incrementAndGet();
+            started.countDown();
+
+            try {
+                unblock.await();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException(ie);
+            }
+
+            return new ByteArrayInputStream(objects.get(name).getBytes());
+        }
+    }
+
+    /**
+     * <p>
+     * Reads the given stream.
+     * </p>
+     *
+     * @param is the stream
+     * @return the content
+     * @throws IOException if an I/O error occurs
+     */
+    private static String read(final InputStream is) throws IOException {
+        return IOUtils.readString(new InputStreamReader(is));
+    }
+
+    /**
+     * <p>
+     * Tests that an object is downloaded once per version and read from memory.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void prefetchTest() throws Exception {
+        final MapPrefetcher prefetcher = new MapPrefetcher(1024L, 10000L, false);
+        prefetcher.objects.put("foo.js", "var foo;");
+
+        prefetcher.prefetch("foo.js", "1");
+        prefetcher.prefetch("foo.js", "1");
+        Assert.assertEquals("var foo;", read(prefetcher.take("foo.js")));
+        Assert.assertEquals(1, prefetcher.downloads.get());
+
+        // Content is released once taken
+        Assert.assertNull(prefetcher.take("foo.js"));
+        Assert.assertEquals(0L, prefetcher.getRetainedBytes());
+
+        // A new version is downloaded again
+        prefetcher.prefetch("foo.js", "2");
+        Assert.assertEquals("var foo;", read(prefetcher.take("foo.js")));
+        Assert.assertEquals(2, prefetcher.downloads.get());
+        prefetcher.shutdown();
+    }
+
+    /**
+     * <p>
+     * Tests that the retained bytes never exceed the budget.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void budgetTest() throws Exception {
+        final MapPrefetcher prefetcher = new MapPrefetcher(10L, 10000L, false);
+        prefetcher.objects.put("small.js", "12345678");
+        prefetcher.objects.put("other.js", "12345678");
+        prefetcher.objects.put("big.js", "12345678901234567890");
+
+        // Single thread: small.js fits in the budget, then other.js does not fit in the remaining bytes
+        prefetcher.prefetch("small.js", "1");
+        prefetcher.prefetch("other.js", "1");
+        prefetcher.prefetch("big.js", "1");
+        Assert.assertNull(prefetcher.take("big.js"));
+        Assert.assertNull(prefetcher.take("other.js"));
+        Assert.assertEquals(8L, prefetcher.getRetainedBytes());
+
+        Assert.assertEquals("12345678", read(prefetcher.take("small.js")));
+        Assert.assertEquals(0L, prefetcher.getRetainedBytes());
+        prefetcher.shutdown();
+    }
+
+    /**
+     * <p>
+     * Tests that the size reported by the listing is reserved while the download is in progress and given back when
+     * the download fails.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void reservationTest() throws Exception {
+        final MapPrefetcher prefetcher = new MapPrefetcher(10L, 10000L, true);
+        prefetcher.objects.put("foo.js", "var foo;");
+        prefetcher.objects.put("bar.js", "var bar;");
+
+        // The download of foo.js is blocked but its size is already reserved
+        prefetcher.prefetch("foo.js", "1", 8L);
+        Assert.assertTrue(prefetcher.started.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(8L, prefetcher.getRetainedBytes());
+
+        // bar.js does not fit in the remaining budget and is not downloaded
+        prefetcher.prefetch("bar.js", "1", 8L);
+        Assert.assertNull(prefetcher.take("bar.js"));
+        Assert.assertEquals(8L, prefetcher.getRetainedBytes());
+
+        prefetcher.unblock.countDown();
+        Assert.assertEquals("var foo;", read(prefetcher.take("foo.js")));
+        Assert.assertEquals(1, prefetcher.downloads.get());
+        Assert.assertEquals(0L, prefetcher.getRetainedBytes());
+
+        // A failed download gives back its reservation
+        prefetcher.prefetch("missing.js", "1", 5L);
+        Assert.assertNull(prefetcher.take("missing.js"));
+        Assert.assertEquals(0L, prefetcher.getRetainedBytes());
+        prefetcher.shutdown();
+    }
+
+    /**
+     * <p>
+     * Tests that a caller does not wait longer than the timeout.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void timeoutTest() throws Exception {
+        final MapPrefetcher prefetcher = new MapPrefetcher(1024L, 100L, true);
+        prefetcher.objects.put("foo.js", "var foo;");
+        prefetcher.prefetch("foo.js", "1");
+        Assert.assertTrue(prefetcher.started.await(10, TimeUnit.SECONDS));
+        Assert.assertNull(prefetcher.take("foo.js"));
+        prefetcher.unblock.countDown();
+        prefetcher.shutdown();
+        Assert.assertEquals(0L, prefetcher.getRetainedBytes());
+    }
+
+    /**
+     * <p>
+     * Tests that shutdown releases the callers waiting for a download.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void shutdownTest() throws Exception {
+        final MapPrefetcher prefetcher = new MapPrefetcher(1024L, 60000L, true);
+        prefetcher.objects.put("foo.js", "var foo;");
+        prefetcher.objects.put("bar.js", "var bar;");
+        prefetcher.prefetch("foo.js", "1");
+
+        // bar.js is queued behind foo.js and never starts
+        prefetcher.prefetch("bar.js", "1");
+        Assert.assertTrue(prefetcher.started.await(10, TimeUnit.SECONDS));
+
+        final AtomicReference<InputStream> taken = new AtomicReference<InputStream>(new ByteArrayInputStream(new byte[0]));
+        final Thread taker = new Thread(new Runnable() {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void run() {
+                taken.set(prefetcher.take("bar.js"));
+            }
+        });
+
+        taker.start();
+        prefetcher.shutdown();
+        taker.join(10000L);
+
+        Assert.assertFalse(taker.isAlive());
+        Assert.assertNull(taken.get());
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2016   The authors of WUIC
+ *
+ * License/Terms of Use
+ * Permission is hereby granted, free of charge and for the term of intellectual
+ * property rights on the Software, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify and
+ * propagate free of charge, anywhere in the world, all or part of the Software
+ * subject to the following mandatory conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, PEACEFUL ENJOYMENT,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.github.wuic.commons.test;
+
+import com.github.wuic.NutTypeFactory;
+import com.github.wuic.commons.PrecompiledManifest;
+import com.github.wuic.nut.ConvertibleNut;
+import com.github.wuic.util.NutUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * Tests for {@link PrecompiledManifest}.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5.3
+ */
+@RunWith(JUnit4.class)
+public class PrecompiledManifestTest {
+
+    /**
+     * Timeout.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /**
+     * <p>
+     * Tests that a stored manifest is read with its workflows, nuts and versions.
+     * </p>
+     *
+     * @throws IOException if test fails
+     */
+    @Test
+    public void manifestTest() throws IOException {
+        final PrecompiledManifest manifest = new PrecompiledManifest();
+        manifest.putWorkflow("foo", Arrays.asList("aggregate.js", "aggregate.css"));
+        manifest.putNut("foo", "aggregate.js", 1L);
+        manifest.putNut("foo", "aggregate.css", 2L);
+        manifest.putNut("foo", "img/logo.png", 3L);
+        manifest.putWorkflow("empty", Arrays.<String>asList());
+        manifest.putWorkflow("partial", Arrays.asList("missing.js"));
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        manifest.store(bos);
+        final PrecompiledManifest read = PrecompiledManifest.read(new ByteArrayInputStream(bos.toByteArray()));
+
+        Assert.assertEquals(Arrays.asList("aggregate.js", "aggregate.css"), read.getNutNames("foo"));
+        Assert.assertTrue(read.getNutNames("empty").isEmpty());
+        Assert.assertNull(read.getNutNames("bar"));
+        Assert.assertEquals(Long.valueOf(3L), read.getVersionNumber("foo", "img/logo.png"));
+        Assert.assertNull(read.getVersionNumber("bar", "aggregate.js"));
+        Assert.assertEquals("1", read.getProperties().getProperty("foo/aggregate.js"));
+
+        // Nuts are built from the manifest, in order
+        final NutTypeFactory nutTypeFactory = new NutTypeFactory(Charset.defaultCharset().displayName());
+        final List<ConvertibleNut> nuts = read.getNuts("foo", nutTypeFactory);
+        Assert.assertEquals(2, nuts.size());
+        Assert.assertEquals("aggregate.js", nuts.get(0).getName());
+        Assert.assertEquals(1L, NutUtils.getVersionNumber(nuts.get(0)));
+        Assert.assertEquals("aggregate.css", nuts.get(1).getName());
+        Assert.assertEquals(2L, NutUtils.getVersionNumber(nuts.get(1)));
+        Assert.assertNull(read.getNuts("partial", nutTypeFactory));
+        Assert.assertNull(read.getNuts("bar", nutTypeFactory));
+    }
+}
@@ -0,0 +1,416 @@
+/*
+ * Copyright (c) 2016   The authors of WUIC
+ *
+ * License/Terms of Use
+ * Permission is hereby granted, free of charge and for the term of intellectual
+ * property rights on the Software, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify and
+ * propagate free of charge, anywhere in the world, all or part of the Software
+ * subject to the following mandatory conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, PEACEFUL ENJOYMENT,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.github.wuic.nut.dao.ftp;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
+import org.apache.commons.net.ftp.FTPSClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>
+ * A bounded pool of authenticated {@link FTPClient clients}. Since a client is stateful (working directory, pending
+ * transfers), it can't be shared by several threads. Each operation {@link #borrow() borrows} a client and
+ * {@link #release(FTPClient) releases} it when done, or {@link #invalidate(FTPClient) invalidates} it if the
+ * connection is broken.
+ * </p>
+ *
+ * <p>
+ * The number of clients is limited: a thread waits at most {@code maxWait} milliseconds for a client when all of them
+ * are borrowed. Clients that stay idle for more than {@code idleTimeout} seconds are disconnected. A client idle for a
+ * few seconds is validated with a {@code NOOP} command before being borrowed again.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5.3
+ */
+public class FtpClientPool {
+
+    /**
+     * A client idle for more than this number of milliseconds is validated before being borrowed.
+     */
+    private static final long VALIDATION_INTERVAL = 5000L;
+
+    /**
+     * Logger.
+     */
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Idle clients, the most recently used first.
+     */
+    private final LinkedBlockingDeque<IdleClient> idleClients;
+
+    /**
+     * Permits to borrow a client.
+     */
+    private final Semaphore permits;
+
+    /**
+     * Use FTPS protocol or not.
+     */
+    private final boolean ftps;
+
+    /**
+     * The host name.
+     */
+    private final String hostName;
+
+    /**
+     * The port.
+     */
+    private final int port;
+
+    /**
+     * The user name.
+     */
+    private final String userName;
+
+    /**
+     * The password.
+     */
+    private final String password;
+
+    /**
+     * Maximum time in milliseconds to wait for a client.
+     */
+    private final long maxWait;
+
+    /**
+     * Idle clients are disconnected after this number of milliseconds.
+     */
+    private final long idleTimeout;
+
+    /**
+     * Closed or not.
+     */
+    private volatile boolean closed;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param secure use FTPS or FTP protocol
+     * @param host the host name
+     * @param p the port
+     * @param user the user name ({@code null} to skip the the authentication)
+     * @param pwd the password (will be ignored if user is {@code null})
+     * @param maxSize the maximum number of clients
+     * @param maxWaitMillis maximum time in milliseconds to wait for a client
+     * @param idleTimeoutSeconds idle clients are disconnected after this number of seconds
+     */
+    public FtpClientPool(final boolean secure,
+                         final String host,
+                         final int p,
+                         final String user,
+                         final String pwd,
+                         final int maxSize,
+                         final long maxWaitMillis,
+                         final int idleTimeoutSeconds) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("FTP pool size must be a positive number.");
+        }
+
+        ftps = secure;
+        hostName = host;
+        port = p;
+        userName = user;
+        password = pwd;
+        maxWait = maxWaitMillis;
+        idleTimeout = TimeUnit.SECONDS.toMillis(idleTimeoutSeconds);
+        permits = new Semaphore(maxSize, true);
+        idleClients = new LinkedBlockingDeque<IdleClient>(maxSize);
+    }
+
+    /**
+     * <p>
+     * Borrows a connected client. An idle client is reused if any, otherwise a new connection is opened.
+     * </p>
+     *
+     * @return the client
+     * @throws IOException if no client is available in time or if a new connection can't be opened
+     */
+    public FTPClient borrow() throws IOException {
+        if (closed) {
+            throw new IOException("FTP client pool is closed.");
+        }
+
+        try {
+            if (!permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS)) {
+                throw new IOException(String.format("No FTP connection available after %d ms.", maxWait));
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for an FTP connection", ie);
+        }
+
+        try {
+            evictIdleClients();
+
+            IdleClient idle;
+
+            while ((idle = idleClients.pollFirst()) != null) {
+                if (validate(idle)) {
+                    return idle.client;
+                }
+
+                disconnect(idle.client);
+            }
+
+            return connect();
+        } catch (IOException ioe) {
+            permits.release();
+            throw ioe;
+        } catch (RuntimeException re) {
+            permits.release();
+            throw re;
+        }
+    }
+
+    /**
+     * <p>
+     * Releases a client previously {@link #borrow() borrowed}.
+     * </p>
+     *
+     * @param client the client
+     */
+    public void release(final FTPClient client) {
+        try {
+            if (closed || !client.isConnected() || !idleClients.offerFirst(new IdleClient(client))) {
+                disconnect(client);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * <p>
+     * Disconnects a client previously {@link #borrow() borrowed} which must not be used anymore.
+     * </p>
+     *
+     * @param client the client
+     */
+    public void invalidate(final FTPClient client) {
+        try {
+            disconnect(client);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * <p>
+     * Wraps a stream opened with {@link FTPClient#retrieveFileStream(String)} on a borrowed client. When the returned
+     * stream is closed, the pending command is completed and the client is released.
+     * </p>
+     *
+     * @param client the borrowed client
+     * @param inputStream the stream to wrap
+     * @return the wrapping stream
+     */
+    public InputStream releaseOnClose(final FTPClient client, final InputStream inputStream) {
+        final AtomicBoolean released = new AtomicBoolean(false);
+
+        return new FilterInputStream(inputStream) {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void close() throws IOException {
+                if (!released.compareAndSet(false, true)) {
+                    return;
+                }
+
+                boolean completed = false;
+
+                try {
+                    super.close();
+                    completed = client.completePendingCommand();
+                } finally {
+                    if (completed) {
+                        release(client);
+                    } else {
+                        invalidate(client);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * <p>
+     * Closes this pool by disconnecting all idle clients. Borrowed clients are disconnected when released.
+     * </p>
+     */
+    public void close() {
+        closed = true;
+        IdleClient idle;
+
+        while ((idle = idleClients.pollFirst()) != null) {
+            disconnect(idle.client);
+        }
+    }
+
+    /**
+     * <p>
+     * Opens a new connection and authenticates the client.
+     * </p>
+     *
+     * @return the connected client
+     * @throws IOException if any I/O error occurs, the connection is refused or if the credentials are not correct
+     */
+    private FTPClient connect() throws IOException {
+        final FTPClient client = ftps ? new FTPSClient(Boolean.TRUE) : new FTPClient();
+        log.debug("Connecting to FTP server.");
+
+        try {
+            client.connect(hostName, port);
+
+            log.debug(client.getReplyString());
+
+            // After connection attempt, you should check the reply code to verify success
+            final int reply = client.getReplyCode();
+
+            if (!FTPReply.isPositiveCompletion(reply)) {
+                throw new IOException("FTP server refused connection.");
+            }
+
+            if (userName != null && !client.login(userName, password)) {
+                throw new IOException("Bad FTP credentials.");
+            }
+
+            return client;
+        } catch (IOException ioe) {
+            disconnect(client);
+            throw ioe;
+        }
+    }
+
+    /**
+     * <p>
+     * Checks that an idle client is still usable. A client used recently is considered as valid, otherwise a
+     * {@code NOOP} command is sent.
+     * </p>
+     *
+     * @param idle the idle client
+     * @return {@code true} if the client can be borrowed
+     */
+    private boolean validate(final IdleClient idle) {
+        if (!idle.client.isConnected()) {
+            return false;
+        } else if (System.currentTimeMillis() - idle.since < VALIDATION_INTERVAL) {
+            return true;
+        }
+
+        try {
+            return idle.client.sendNoOp();
+        } catch (IOException ioe) {
+            log.debug("FTP connection is not valid anymore", ioe);
+            return false;
+        }
+    }
+
+    /**
+     * <p>
+     * Disconnects the clients idle for too long. The oldest clients are at the end of the deque.
+     * </p>
+     */
+    private void evictIdleClients() {
+        final long now = System.currentTimeMillis();
+        final Iterator<IdleClient> it = idleClients.descendingIterator();
+
+        while (it.hasNext()) {
+            final IdleClient idle = it.next();
+
+            if (now - idle.since < idleTimeout) {
+                break;
+            } else if (idleClients.removeFirstOccurrence(idle)) {
+                log.debug("Evicting FTP connection idle for {} ms", now - idle.since);
+                disconnect(idle.client);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Quietly disconnects the given client.
+     * </p>
+     *
+     * @param client the client
+     */
+    private void disconnect(final FTPClient client) {
+        try {
+            if (client.isConnected()) {
+                client.disconnect();
+            }
+        } catch (IOException ioe) {
+            log.debug("Unable to disconnect FTP client", ioe);
+        }
+    }
+
+    /**
+     * <p>
+     * A client in the pool with the moment it has been released.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5.3
+     */
+    private static final class IdleClient {
+
+        /**
+         * The client.
+         */
+        private final FTPClient client;
+
+        /**
+         * Idle since this timestamp.
+         */
+        private final long since;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param c the client
+         */
+        private IdleClient(final FTPClient c) {
+            client = c;
+            since = System.currentTimeMillis();
+        }
+    }
+}
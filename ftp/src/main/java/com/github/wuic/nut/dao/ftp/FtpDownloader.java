@@ -0,0 +1,368 @@
+/*
+ * Copyright (c) 2016   The authors of WUIC
+ *
+ * License/Terms of Use
+ * Permission is hereby granted, free of charge and for the term of intellectual
+ * property rights on the Software, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify and
+ * propagate free of charge, anywhere in the world, all or part of the Software
+ * subject to the following mandatory conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, PEACEFUL ENJOYMENT,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.github.wuic.nut.dao.ftp;
+
+import com.github.wuic.util.IOUtils;
+import org.apache.commons.net.ftp.FTP;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * Downloads files from an FTP server to the disk with a resumable transfer. Data is appended to a {@code .part} file
+ * and a failed transfer restarts from the last received byte with the {@code REST} command. Once complete, the file
+ * is validated with a checksum computed by the server ({@code XCRC}, {@code XMD5} or {@code HASH} when offered),
+ * or with its size otherwise, then renamed atomically to its final name.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5.3
+ */
+final class FtpDownloader {
+
+    /**
+     * Extension of files being downloaded.
+     */
+    static final String PART_EXTENSION = ".part";
+
+    /**
+     * Logger.
+     */
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * The pool providing clients.
+     */
+    private final FtpClientPool pool;
+
+    /**
+     * Number of attempts after a failed transfer.
+     */
+    private final int retries;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param p the pool providing clients
+     * @param r the number of attempts after a failed transfer
+     */
+    FtpDownloader(final FtpClientPool p, final int r) {
+        pool = p;
+        retries = r;
+    }
+
+    /**
+     * <p>
+     * Downloads the given path to the given file. Callers must not download the same file concurrently.
+     * </p>
+     *
+     * @param path the absolute path on the server
+     * @param file the target file
+     * @throws IOException if the file can't be downloaded after all attempts
+     */
+    void download(final String path, final File file) throws IOException {
+        final File part = new File(file.getParentFile(), file.getName() + PART_EXTENSION);
+        IOException last = null;
+
+        for (int attempt = 0; attempt <= retries; attempt++) {
+            final FTPClient ftpClient = pool.borrow();
+            boolean valid = false;
+
+            try {
+                transfer(ftpClient, path, part);
+
+                if (!checksum(ftpClient, path, part)) {
+                    // Corrupted content can't be resumed
+                    part.delete();
+                    throw new IOException(String.format("Checksum of '%s' downloaded from FTP does not match", path));
+                }
+
+                valid = true;
+            } catch (IOException ioe) {
+                log.warn("Attempt {} to download '{}' from FTP failed", attempt + 1, path, ioe);
+                last = ioe;
+            } finally {
+                if (valid) {
+                    pool.release(ftpClient);
+                } else {
+                    pool.invalidate(ftpClient);
+                }
+            }
+
+            if (valid) {
+                if (!part.renameTo(file)) {
+                    // Windows does not replace an existing file
+                    if (!file.delete() || !part.renameTo(file)) {
+                        throw new IOException("Can't move downloaded resource to " + file.getAbsolutePath());
+                    }
+                }
+
+                return;
+            }
+        }
+
+        throw last;
+    }
+
+    /**
+     * <p>
+     * Transfers the file in binary mode, appending to the partial file if it already contains data.
+     * </p>
+     *
+     * @param ftpClient the client
+     * @param path the path on the server
+     * @param part the partial file
+     * @throws IOException if transfer fails
+     */
+    private void transfer(final FTPClient ftpClient, final String path, final File part) throws IOException {
+        if (!ftpClient.setFileType(FTP.BINARY_FILE_TYPE)) {
+            throw new IOException("Can't switch FTP client to binary mode: " + ftpClient.getReplyString());
+        }
+
+        try {
+            long offset = part.isFile() ? part.length() : 0L;
+            InputStream is = null;
+
+            if (offset > 0L) {
+                ftpClient.setRestartOffset(offset);
+                is = ftpClient.retrieveFileStream(path);
+
+                // Server does not support REST: restart from the beginning
+                if (is == null) {
+                    log.info("FTP server can't resume '{}' at offset {}: {}", path, offset, ftpClient.getReplyString());
+                    offset = 0L;
+                } else {
+                    log.debug("Resuming download of '{}' at offset {}", path, offset);
+                }
+            }
+
+            if (is == null) {
+                ftpClient.setRestartOffset(0L);
+                is = ftpClient.retrieveFileStream(path);
+            }
+
+            if (is == null) {
+                throw new IOException(String.format("Can't retrieve '%s' from FTP server: %s", path, ftpClient.getReplyString()));
+            }
+
+            OutputStream os = null;
+
+            try {
+                os = new FileOutputStream(part, offset > 0L);
+                IOUtils.copyStream(is, os);
+            } finally {
+                IOUtils.close(os, is);
+            }
+
+            if (!ftpClient.completePendingCommand()) {
+                throw new IOException("FTP command not completed correctly: " + ftpClient.getReplyString());
+            }
+        } finally {
+            ftpClient.setRestartOffset(0L);
+            ftpClient.setFileType(FTP.ASCII_FILE_TYPE);
+        }
+    }
+
+    /**
+     * <p>
+     * Validates the downloaded file with the best mean offered by the server. A malformed reply is ignored and the next
+     * mean is used.
+     * </p>
+     *
+     * @param ftpClient the client
+     * @param path the path on the server
+     * @param part the downloaded file
+     * @return {@code true} if the file is valid
+     * @throws IOException if the server can't be queried
+     */
+    private boolean checksum(final FTPClient ftpClient, final String path, final File part) throws IOException {
+        if (ftpClient.hasFeature("XCRC")) {
+            final Long expected = parse(reply(ftpClient, "XCRC", path), 16);
+
+            if (expected != null) {
+                return expected == crc32(part);
+            }
+        }
+
+        if (ftpClient.hasFeature("XMD5")) {
+            final String expected = reply(ftpClient, "XMD5", path);
+
+            if (expected != null) {
+                return expected.equalsIgnoreCase(digest(part, "MD5"));
+            }
+        }
+
+        if (ftpClient.hasFeature("HASH")) {
+            // Format: 213 <algorithm> <range> <hash> <path>
+            final String response = reply(ftpClient, "HASH", path);
+            final String[] tokens = response == null ? new String[0] : response.split(" ");
+
+            if (tokens.length >= 3) {
+                final String algorithm = tokens[0].toUpperCase();
+                final Long crc = "CRC32".equals(algorithm) ? parse(tokens[2], 16) : null;
+
+                if (crc != null) {
+                    return crc == crc32(part);
+                } else if (algorithm.startsWith("SHA-") || "MD5".equals(algorithm)) {
+                    return tokens[2].equalsIgnoreCase(digest(part, algorithm));
+                }
+            }
+        }
+
+        final Long size = parse(reply(ftpClient, "SIZE", path), 10);
+
+        if (size != null) {
+            return size == part.length();
+        }
+
+        log.warn("FTP server can't validate '{}', file is accepted as is", path);
+        return true;
+    }
+
+    /**
+     * <p>
+     * Sends a command and returns the response without the reply code.
+     * </p>
+     *
+     * @param ftpClient the client
+     * @param command the command
+     * @param path the argument
+     * @return the response, {@code null} if the command failed
+     * @throws IOException if the command can't be sent
+     */
+    private String reply(final FTPClient ftpClient, final String command, final String path) throws IOException {
+        if (!FTPReply.isPositiveCompletion(ftpClient.sendCommand(command, path))) {
+            log.debug("FTP command {} failed: {}", command, ftpClient.getReplyString());
+            return null;
+        }
+
+        final String reply = ftpClient.getReplyString().trim();
+        return reply.length() > 4 ? reply.substring(4).trim() : null;
+    }
+
+    /**
+     * <p>
+     * Parses a number replied by the server.
+     * </p>
+     *
+     * @param value the value, {@code null} if the command failed
+     * @param radix the radix
+     * @return the number, {@code null} if the value is {@code null} or malformed
+     */
+    private Long parse(final String value, final int radix) {
+        if (value == null) {
+            return null;
+        }
+
+        try {
+            return Long.parseLong(value, radix);
+        } catch (NumberFormatException nfe) {
+            log.debug("Malformed reply '{}' from FTP server is ignored", value, nfe);
+            return null;
+        }
+    }
+
+    /**
+     * <p>
+     * Computes the CRC32 of the given file.
+     * </p>
+     *
+     * @param file the file
+     * @return the CRC32
+     * @throws IOException if the file can't be read
+     */
+    private static long crc32(final File file) throws IOException {
+        final CRC32 crc = new CRC32();
+        final byte[] buffer = new byte[IOUtils.WUIC_BUFFER_LEN];
+        InputStream is = null;
+
+        try {
+            is = new FileInputStream(file);
+            int offset;
+
+            while ((offset = is.read(buffer)) != -1) {
+                crc.update(buffer, 0, offset);
+            }
+
+            return crc.getValue();
+        } finally {
+            IOUtils.close(is);
+        }
+    }
+
+    /**
+     * <p>
+     * Computes the hexadecimal digest of the given file.
+     * </p>
+     *
+     * @param file the file
+     * @param algorithm the digest algorithm
+     * @return the digest
+     * @throws IOException if the file can't be read or the algorithm is not supported
+     */
+    private static String digest(final File file, final String algorithm) throws IOException {
+        final MessageDigest md;
+
+        try {
+            md = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IOException(nsae);
+        }
+
+        final byte[] buffer = new byte[IOUtils.WUIC_BUFFER_LEN];
+        InputStream is = null;
+
+        try {
+            is = new FileInputStream(file);
+            int offset;
+
+            while ((offset = is.read(buffer)) != -1) {
+                md.update(buffer, 0, offset);
+            }
+        } finally {
+            IOUtils.close(is);
+        }
+
+        final StringBuilder retval = new StringBuilder();
+
+        for (final byte b : md.digest()) {
+            retval.append(String.format("%02x", b));
+        }
+
+        return retval.toString();
+    }
+}
@@ -28,9 +28,9 @@ import com.github.wuic.ProcessContext;
 import com.github.wuic.config.*;
 import com.github.wuic.config.Config;
 import com.github.wuic.exception.WuicException;
+import com.github.wuic.nut.AbstractNut;
 import com.github.wuic.nut.AbstractNutDao;
 import com.github.wuic.nut.FilePathNut;
-import com.github.wuic.nut.InMemoryNut;
 import com.github.wuic.nut.Nut;
 import com.github.wuic.nut.dao.NutDaoService;
 import com.github.wuic.nut.setter.ProxyUrisPropertySetter;
@@ -43,24 +43,36 @@ import com.github.wuic.util.TemporaryFileManagerHolder;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPFile;
 import org.apache.commons.net.ftp.FTPReply;
-import org.apache.commons.net.ftp.FTPSClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.regex.Matcher;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 /**
@@ -80,10 +92,70 @@ public class FtpNutDao extends AbstractNutDao implements TemporaryFileManagerHol
      */
     public static final int FILE_UNAVAILABLE_CODE = 550;
 
+    /**
+     * Property key for the maximum number of FTP connections.
+     */
+    public static final String POOL_SIZE = "c.g.wuic.dao.poolSize";
+
+    /**
+     * Property key for the maximum time in milliseconds to wait for an FTP connection.
+     */
+    public static final String POOL_MAX_WAIT = "c.g.wuic.dao.poolMaxWait";
+
+    /**
+     * Property key for the number of seconds after which an idle FTP connection is closed.
+     */
+    public static final String POOL_IDLE_TIMEOUT = "c.g.wuic.dao.poolIdleTimeout";
+
+    /**
+     * Property key to list directories with {@code MLSD} when the server supports it.
+     */
+    public static final String MACHINE_LISTING = "c.g.wuic.dao.machineListing";
+
+    /**
+     * Property key for the number of directories listed concurrently.
+     */
+    public static final String LISTING_PARALLELISM = "c.g.wuic.dao.listingParallelism";
+
+    /**
+     * Property key for the number of attempts after a failed download to disk.
+     */
+    public static final String DOWNLOAD_RETRIES = "c.g.wuic.dao.downloadRetries";
+
+    /**
+     * Default number of attempts after a failed download to disk.
+     */
+    public static final int DEFAULT_DOWNLOAD_RETRIES = 3;
+
+    /**
+     * Default maximum number of FTP connections.
+     */
+    public static final int DEFAULT_POOL_SIZE = 4;
+
+    /**
+     * Default maximum time in milliseconds to wait for an FTP connection.
+     */
+    public static final int DEFAULT_POOL_MAX_WAIT = 30000;
+
+    /**
+     * Default number of seconds after which an idle FTP connection is closed.
+     */
+    public static final int DEFAULT_POOL_IDLE_TIMEOUT = 60;
+
     /**
      * Expected format when retrieved last modification date.
      */
-    private static final DateFormat MODIFICATION_TIME_FORMAT = new SimpleDateFormat("yyyyMMddhhmmss");
+    private static final String MODIFICATION_TIME_FORMAT = "yyyyMMddHHmmss";
+
+    /**
+     * Feature advertised by servers supporting {@code MLST} and {@code MLSD} commands.
+     */
+    private static final String MLST_FEATURE = "MLST";
+
+    /**
+     * Directory in the temporary directory where nuts are downloaded when they are downloaded to disk.
+     */
+    private static final String SPOOL_DIRECTORY = "wuic-ftp-spool";
 
     /**
      * Logger.
@@ -91,9 +163,9 @@ public class FtpNutDao extends AbstractNutDao implements TemporaryFileManagerHol
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
     /**
-     * The client connected to the server.
+     * Use FTPS or FTP protocol.
      */
-    private FTPClient ftpClient;
+    private Boolean secretProtocol;
 
     /**
      * The host name.
@@ -130,6 +202,76 @@ public class FtpNutDao extends AbstractNutDao implements TemporaryFileManagerHol
      */
     private TemporaryFileManager temporaryFileManager;
 
+    /**
+     * Maximum number of FTP connections.
+     */
+    private int poolSize = DEFAULT_POOL_SIZE;
+
+    /**
+     * Maximum time in milliseconds to wait for an FTP connection.
+     */
+    private int poolMaxWait = DEFAULT_POOL_MAX_WAIT;
+
+    /**
+     * Number of seconds after which an idle FTP connection is closed.
+     */
+    private int poolIdleTimeout = DEFAULT_POOL_IDLE_TIMEOUT;
+
+    /**
+     * The pool of clients connected to the server, {@code null} until first access.
+     */
+    private volatile FtpClientPool clientPool;
+
+    /**
+     * List directories with {@code MLSD} when the server supports it.
+     */
+    private Boolean machineListing = Boolean.FALSE;
+
+    /**
+     * If the server supports {@code MLSD}, {@code null} until checked.
+     */
+    private volatile Boolean machineListingSupported;
+
+    /**
+     * Number of directories listed concurrently.
+     */
+    private int listingParallelism = 1;
+
+    /**
+     * Executor listing directories concurrently, {@code null} until first access.
+     */
+    private volatile ExecutorService listingExecutor;
+
+    /**
+     * Paths matching each listed pattern.
+     */
+    private final ConcurrentMap<String, CachedListing> listingCache = new ConcurrentHashMap<String, CachedListing>();
+
+    /**
+     * Number of attempts after a failed download to disk.
+     */
+    private int downloadRetries = DEFAULT_DOWNLOAD_RETRIES;
+
+    /**
+     * Downloads in progress for each spool file, removed once finished.
+     */
+    private final ConcurrentMap<String, FutureTask<File>> spoolDownloads = new ConcurrentHashMap<String, FutureTask<File>>();
+
+    /**
+     * Polling interval in seconds.
+     */
+    private int pollingInterval = -1;
+
+    /**
+     * Last modification dates collected when listing directories with {@code MLSD}.
+     */
+    private final ConcurrentMap<String, ListedTimestamp> listedTimestamps = new ConcurrentHashMap<String, ListedTimestamp>();
+
+    /**
+     * The spool file holding the last downloaded version of each path.
+     */
+    private final ConcurrentMap<String, File> spooledFiles = new ConcurrentHashMap<String, File>();
+
     /**
      * <p>
      * Initializes a new instance.
@@ -144,6 +286,7 @@ public class FtpNutDao extends AbstractNutDao implements TemporaryFileManagerHol
                      @ObjectConfigParam(defaultValue = "", propertyKey = ApplicationConfig.PROXY_URIS, setter = ProxyUrisPropertySetter.class) final String[] proxies,
                      @IntegerConfigParam(defaultValue = -1, propertyKey = ApplicationConfig.POLLING_INTERVAL) final int pollingSeconds) {
         super.init(path, proxies, pollingSeconds);
+        pollingInterval = pollingSeconds;
     }
 
     /**
@@ -167,7 +310,7 @@ public class FtpNutDao extends AbstractNutDao implements TemporaryFileManagerHol
                      @StringConfigParam(defaultValue = "", propertyKey = ApplicationConfig.PASSWORD) final String pwd,
                      @BooleanConfigParam(defaultValue = false, propertyKey = ApplicationConfig.REGEX) final Boolean regex,
                      @BooleanConfigParam(defaultValue = false, propertyKey = ApplicationConfig.DOWNLOAD_TO_DISK) final Boolean dtd) {
-        ftpClient = ftps ? new FTPSClient(Boolean.TRUE) : new FTPClient();
+        secretProtocol = ftps;
         hostName = host;
         userName = user;
         password = pwd;
@@ -178,81 +321,274 @@ public class FtpNutDao extends AbstractNutDao implements TemporaryFileManagerHol
 
     /**
      * <p>
-     * Opens a connection with the current FtpClient if its not already opened.
+     * Configures the pool of FTP connections.
      * </p>
      *
-     * @throws IOException if any I/O error occurs, the connection is refused or if the credentials are not correct
+     * @param size the maximum number of connections
+     * @param maxWait the maximum time in milliseconds to wait for a connection
+     * @param idleTimeout the number of seconds after which an idle connection is closed
      */
-    private void connect() throws IOException {
-        if (!ftpClient.isConnected()) {
-            log.debug("Connecting to FTP server.");
+    @Config
+    public void pool(@IntegerConfigParam(defaultValue = DEFAULT_POOL_SIZE, propertyKey = POOL_SIZE) final int size,
+                     @IntegerConfigParam(defaultValue = DEFAULT_POOL_MAX_WAIT, propertyKey = POOL_MAX_WAIT) final int maxWait,
+                     @IntegerConfigParam(defaultValue = DEFAULT_POOL_IDLE_TIMEOUT, propertyKey = POOL_IDLE_TIMEOUT) final int idleTimeout) {
+        poolSize = size;
+        poolMaxWait = maxWait;
+        poolIdleTimeout = idleTimeout;
+    }
 
-            ftpClient.connect(hostName, port);
+    /**
+     * <p>
+     * Enables the listing of directories with {@code MLSD}. When the server supports it, each directory is listed with
+     * one command using absolute paths, without changing the working directory. The modification dates collected in
+     * the listing are used for polling instead of sending one {@code MDTM} command per nut.
+     * </p>
+     *
+     * @param mlsd {@code true} to use {@code MLSD} when supported
+     */
+    @Config
+    public void machineListing(@BooleanConfigParam(defaultValue = false, propertyKey = MACHINE_LISTING) final Boolean mlsd) {
+        machineListing = mlsd;
+    }
+
+    /**
+     * <p>
+     * Sets the number of directories listed concurrently. Each concurrent listing uses a connection from the pool, so
+     * the effective parallelism is also bounded by the pool size.
+     * </p>
+     *
+     * @param parallelism the number of directories listed concurrently, {@code 1} to list sequentially
+     */
+    @Config
+    public void listingParallelism(@IntegerConfigParam(defaultValue = 1, propertyKey = LISTING_PARALLELISM) final int parallelism) {
+        listingParallelism = parallelism;
+    }
+
+    /**
+     * <p>
+     * Sets the number of attempts after a failed download to disk. Each attempt resumes the transfer where the previous
+     * one stopped.
+     * </p>
+     *
+     * @param retries the number of attempts after a failed download
+     */
+    @Config
+    public void downloadRetries(@IntegerConfigParam(defaultValue = DEFAULT_DOWNLOAD_RETRIES, propertyKey = DOWNLOAD_RETRIES) final int retries) {
+        downloadRetries = retries;
+    }
 
-            log.debug(ftpClient.getReplyString());
+    /**
+     * <p>
+     * Gets the pool of connections, creating it if necessary.
+     * </p>
+     *
+     * @return the pool
+     */
+    private FtpClientPool pool() {
+        FtpClientPool retval = clientPool;
 
-            // After connection attempt, you should check the reply code to verify success
-            final int reply = ftpClient.getReplyCode();
+        if (retval == null) {
+            synchronized (this) {
+                retval = clientPool;
 
-            if (!FTPReply.isPositiveCompletion(reply)) {
-                throw new IOException("FTP server refused connection.");
+                if (retval == null) {
+                    retval = new FtpClientPool(secretProtocol, hostName, port, userName, password, poolSize, poolMaxWait, poolIdleTimeout);
+                    clientPool = retval;
+                }
             }
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Gets the executor listing directories concurrently, creating it if necessary.
+     * </p>
+     *
+     * @return the executor
+     */
+    private ExecutorService listingExecutor() {
+        ExecutorService retval = listingExecutor;
+
+        if (retval == null) {
+            synchronized (this) {
+                retval = listingExecutor;
 
-            if (userName != null && !ftpClient.login(userName, password)) {
-                throw new IOException("Bad FTP credentials.");
+                if (retval == null) {
+                    retval = Executors.newFixedThreadPool(listingParallelism, new ThreadFactory() {
+
+                        /**
+                         * Thread counter.
+                         */
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        /**
+                         * {@inheritDoc}
+                         */
+                        @Override
+                        public Thread newThread(final Runnable r) {
+                            final Thread thread = new Thread(r, "wuic-ftp-listing-" + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                    listingExecutor = retval;
+                }
             }
         }
+
+        return retval;
     }
 
     /**
      * <p>
-     * Searches recursively in the given path any files matching the given entry.
+     * Lists recursively all the directories from the base path. Subdirectories are listed concurrently over pooled
+     * connections when parallelism is greater than {@code 1}.
      * </p>
      *
-     * @param path the path
-     * @param pattern the pattern to match
-     * @return the list of matching files
-     * @throws IOException if the client can't move to a directory or any I/O error occurs
+     * @param mlsd {@code true} to list with {@code MLSD}, {@code false} to list with {@code LIST}
+     * @return the listing of each directory, the key being the path relative to the base path
+     * @throws IOException if a directory can't be listed
      */
-    private List<String> recursiveSearch(final String path, final Pattern pattern) throws IOException {
-        if (!ftpClient.changeWorkingDirectory(path)) {
-            throw new IOException("Can move to the following directory : " + path);
+    private Map<String, DirectoryListing> walk(final boolean mlsd) throws IOException {
+        final Map<String, DirectoryListing> retval = new HashMap<String, DirectoryListing>();
+
+        if (listingParallelism <= 1) {
+            final FtpClientPool pool = pool();
+            final FTPClient ftpClient = pool.borrow();
+            final LinkedList<DirectoryListing> pending = new LinkedList<DirectoryListing>();
+            pending.add(new DirectoryListing("", mlsd));
+            boolean valid = false;
+
+            try {
+                while (!pending.isEmpty()) {
+                    final DirectoryListing listing = pending.removeFirst();
+                    listing.list(ftpClient);
+                    retval.put(listing.relative, listing);
+
+                    for (final String directory : listing.directories) {
+                        pending.add(new DirectoryListing(directory, mlsd));
+                    }
+                }
+
+                valid = true;
+            } finally {
+                if (valid) {
+                    pool.release(ftpClient);
+                } else {
+                    pool.invalidate(ftpClient);
+                }
+            }
         } else {
-            final List<String> retval = new ArrayList<String>();
+            final CompletionService<DirectoryListing> completionService =
+                    new ExecutorCompletionService<DirectoryListing>(listingExecutor());
+            completionService.submit(new DirectoryListing("", mlsd));
+            int pending = 1;
 
-            // Test each path
-            for (final FTPFile file : ftpClient.listFiles()) {
-                final Matcher matcher = pattern.matcher(file.getName());
+            try {
+                while (pending > 0) {
+                    final DirectoryListing listing = completionService.take().get();
+                    pending--;
+                    retval.put(listing.relative, listing);
 
-                if (matcher.find()) {
-                   retval.add(matcher.group());
+                    for (final String directory : listing.directories) {
+                        completionService.submit(new DirectoryListing(directory, mlsd));
+                        pending++;
+                    }
                 }
+            } catch (ExecutionException ee) {
+                if (ee.getCause() instanceof IOException) {
+                    throw IOException.class.cast(ee.getCause());
+                }
+
+                throw new IOException(ee);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException(ie);
             }
+        }
 
-            // Search in each directory
-            for (final FTPFile directory : ftpClient.listDirectories()) {
-                final String pwd = ftpClient.printWorkingDirectory();
-                retval.addAll(recursiveSearch(directory.getName(), pattern));
-
-                // Remove quotes around the path
-                if (pwd.startsWith("\"") && pwd.endsWith("\"")) {
-                    ftpClient.changeWorkingDirectory(new StringBuilder()
-                            .append(pwd)
-                            .deleteCharAt(pwd.length() - 1)
-                            .deleteCharAt(0)
-                            .toString());
-                } else {
-                     ftpClient.changeWorkingDirectory(pwd);
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Collects in a deterministic order the files matching the given pattern. Files of a directory come before the
+     * files of its subdirectories, in the order returned by the server. Modification dates collected by {@code MLSD}
+     * are kept for polling.
+     * </p>
+     *
+     * @param listings all the listed directories
+     * @param relative the directory to collect
+     * @param pattern the pattern to match
+     * @param retval the list populated with the paths of matching files relative to the base path
+     */
+    private void collect(final Map<String, DirectoryListing> listings,
+                         final String relative,
+                         final Pattern pattern,
+                         final List<String> retval) {
+        final DirectoryListing listing = listings.get(relative);
+
+        for (final FTPFile file : listing.files) {
+            final String path = relative.isEmpty() ? file.getName() : IOUtils.mergePath(relative, file.getName());
+
+            if (pattern.matcher(path).find()) {
+                retval.add(path);
+
+                if (listing.mlsd && file.getTimestamp() != null) {
+                    listedTimestamps.put(path, new ListedTimestamp(file.getTimestamp().getTimeInMillis(), listing.listedAt));
                 }
             }
+        }
 
-            return retval;
+        for (final String directory : listing.directories) {
+            collect(listings, directory, pattern, retval);
+        }
+    }
+
+    /**
+     * <p>
+     * Indicates if the given entry of a listing is the listed directory or its parent.
+     * </p>
+     *
+     * @param file the entry
+     * @return {@code true} if the entry is the current or parent directory
+     */
+    private static boolean isCurrentOrParentDirectory(final FTPFile file) {
+        final String raw = file.getRawListing() == null ? "" : file.getRawListing().toLowerCase();
+        return ".".equals(file.getName())
+                || "..".equals(file.getName())
+                || raw.contains("type=cdir;")
+                || raw.contains("type=pdir;");
+    }
+
+    /**
+     * <p>
+     * Gets the modification date collected for the given path during the last listing, if still fresh. Timestamps
+     * remain fresh during one polling interval, or until the next listing when polling is disabled.
+     * </p>
+     *
+     * @param path the path
+     * @return the timestamp, {@code null} if unknown
+     */
+    private Long listedTimestamp(final String path) {
+        final ListedTimestamp listed = listedTimestamps.get(path);
+
+        if (listed == null) {
+            return null;
+        } else if (pollingInterval > 0 && System.currentTimeMillis() - listed.listedAt > pollingInterval * 1000L) {
+            listedTimestamps.remove(path, listed);
+            return null;
         }
+
+        return listed.timestamp;
     }
 
     /**
      * {@inheritDoc}
      */
+    @Override
     public void setTemporaryFileManager(final TemporaryFileManager temporaryFileManager) {
         this.temporaryFileManager = temporaryFileManager;
     }
@@ -262,54 +598,135 @@ public class FtpNutDao extends AbstractNutDao implements TemporaryFileManagerHol
      */
     @Override
     public Nut accessFor(final String realPath, final NutType type, final ProcessContext processContext) throws IOException {
+        // Content is transferred only when the nut is read
+        if (downloadToDisk) {
+            return new DownloadNut(realPath, type, getVersionNumber(realPath, processContext));
+        } else {
+            return new FtpNut(realPath, type, getVersionNumber(realPath, processContext));
+        }
+    }
+
+    /**
+     * <p>
+     * Gets the spool directory where nuts are downloaded, creating it if necessary.
+     * </p>
+     *
+     * @return the spool directory
+     * @throws IOException if the spool directory can't be created
+     */
+    private File spoolDirectory() throws IOException {
+        final File spool = new File(System.getProperty("java.io.tmpdir"), SPOOL_DIRECTORY);
+
+        if (!spool.isDirectory() && !spool.mkdirs() && !spool.isDirectory()) {
+            throw new IOException("Can't create spool directory to download resource from FTP: " + spool.getAbsolutePath());
+        }
+
+        return spool;
+    }
+
+    /**
+     * <p>
+     * Gets the file in the spool directory where the given version of the given path is downloaded. The file name is
+     * a digest of the server, the path and the version, so a file is reused as long as the nut does not change.
+     * </p>
+     *
+     * @param path the path relative to the base path
+     * @param version the version number
+     * @return the spool file
+     * @throws IOException if the spool directory can't be created
+     */
+    private File spoolFile(final String path, final Long version) throws IOException {
+        final File spool = spoolDirectory();
+        final String key = String.format("%s:%d%s@%d", hostName, port, IOUtils.mergePath(getBasePath(), path), version);
+
         try {
-            // Connect if necessary
-            connect();
+            final MessageDigest md = MessageDigest.getInstance("MD5");
+            final StringBuilder name = new StringBuilder();
 
-            ftpClient.changeWorkingDirectory(getBasePath());
+            for (final byte b : md.digest(key.getBytes("UTF-8"))) {
+                name.append(String.format("%02x", b));
+            }
 
-            // Download to disk
-            if (downloadToDisk) {
-                final File parent = new File(System.getProperty("java.io.tmpdir"), "wuic-ftp" + System.nanoTime());
+            return new File(spool, name.toString());
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IOException(nsae);
+        }
+    }
 
-                if (!parent.mkdir()) {
-                    WuicException.throwStreamException(new IOException("Can't create temporary file to download resource from FTP."));
-                } else {
-                    // Download to file
-                    final File file = new File(parent, realPath);
-                    final OutputStream fos = new FileOutputStream(file);
-                    IOUtils.copyStream(ftpClient.retrieveFileStream(realPath), fos);
-                    fos.close();
-
-                    // Check if download is OK
-                    if (!ftpClient.completePendingCommand()) {
-                        throw new IOException("FTP command not completed correctly.");
-                    }
+    /**
+     * <p>
+     * Downloads the given path into the spool file if it does not exist yet. The transfer is resumable and validated
+     * before the file is moved to its final name, so a partial download is never served. The file spooled for a
+     * previous version of the path is deleted once the new one is available.
+     * </p>
+     *
+     * @param path the path relative to the base path
+     * @param file the spool file
+     * @throws IOException if download fails
+     */
+    private void spool(final String path, final File file) throws IOException {
+        if (!file.isFile()) {
+            download(path, file);
+        }
 
-                    return new DownloadNut(parent, realPath, type, getVersionNumber(realPath, processContext), processContext);
-                }
-            } else {
-                // Download path into memory
-                final ByteArrayOutputStream baos = new ByteArrayOutputStream(IOUtils.WUIC_BUFFER_LEN);
-                IOUtils.copyStream(ftpClient.retrieveFileStream(realPath), baos);
+        final File previous = spooledFiles.put(path, file);
 
-                // Check if download is OK
-                if (!ftpClient.completePendingCommand()) {
-                    throw new IOException("FTP command not completed correctly.");
+        if (previous != null && !previous.equals(file) && previous.isFile() && !previous.delete()) {
+            log.warn("Unable to delete previous version of '{}' spooled in {}", path, previous.getAbsolutePath());
+        }
+    }
+
+    /**
+     * <p>
+     * Downloads the given path into the spool file. Only one thread downloads a given file: the download stays
+     * registered until it's finished and the other threads wait for its result.
+     * </p>
+     *
+     * @param path the path relative to the base path
+     * @param file the spool file
+     * @throws IOException if download fails
+     */
+    private void download(final String path, final File file) throws IOException {
+        final FutureTask<File> task = new FutureTask<File>(new Callable<File>() {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public File call() throws IOException {
+                // The file may have been downloaded by a task finished in the meantime
+                if (!file.isFile()) {
+                    new FtpDownloader(pool(), downloadRetries).download(IOUtils.mergePath(getBasePath(), path), file);
                 }
 
-                // Create nut
-                return new InMemoryNut(baos.toByteArray(), realPath, type, getVersionNumber(realPath, processContext).get(), false);
+                return file;
+            }
+        });
+
+        FutureTask<File> download = spoolDownloads.putIfAbsent(file.getName(), task);
+
+        if (download == null) {
+            download = task;
+
+            try {
+                task.run();
+            } finally {
+                spoolDownloads.remove(file.getName(), task);
             }
-        } catch (IOException ioe) {
-            WuicException.throwStreamException(ioe);
+        }
+
+        try {
+            download.get();
         } catch (ExecutionException ee) {
-            WuicException.throwStreamException(new IOException(ee));
+            if (ee.getCause() instanceof IOException) {
+                throw IOException.class.cast(ee.getCause());
+            }
+
+            throw new IOException(ee.getCause());
         } catch (InterruptedException ie) {
-            WuicException.throwStreamException(new IOException(ie));
+            Thread.currentThread().interrupt();
+            throw new IOException(ie);
         }
-
-        return null;
     }
 
     /**
@@ -317,23 +734,54 @@ public class FtpNutDao extends AbstractNutDao implements TemporaryFileManagerHol
      */
     @Override
     protected Long getLastUpdateTimestampFor(final String path) throws IOException {
-        try {
-            // Connect if necessary
-            connect();
+        final Long listed = listedTimestamp(path);
+
+        if (listed != null) {
+            log.debug("Last modification of FTP nut '{}' retrieved from listing", path);
+            return listed;
+        }
+
+        final FtpClientPool pool = pool();
+        final FTPClient ftpClient = pool.borrow();
+        boolean valid = false;
 
+        try {
             log.info("Polling FTP nut '{}'", path);
             final String response = ftpClient.getModificationTime(IOUtils.mergePath(getBasePath(), path));
+            valid = true;
             log.info("Last modification response : {}", response);
             log.info("Parse the response with {} date format which could be preceded by the server code and a space",
                     MODIFICATION_TIME_FORMAT);
 
-            return MODIFICATION_TIME_FORMAT.parse(response.substring(response.indexOf(' ') + 1)).getTime();
+            return parseModificationTime(response);
         } catch (ParseException pe) {
             WuicException.throwStreamException(new IOException(pe));
             return null;
+        } finally {
+            if (valid) {
+                pool.release(ftpClient);
+            } else {
+                pool.invalidate(ftpClient);
+            }
         }
     }
 
+    /**
+     * <p>
+     * Parses the response of a {@code MDTM} command.
+     * </p>
+     *
+     * @param response the response
+     * @return the timestamp
+     * @throws ParseException if the response is not well formatted
+     */
+    private static long parseModificationTime(final String response) throws ParseException {
+        // DateFormat is not thread-safe, MDTM returns a date in UTC
+        final DateFormat format = new SimpleDateFormat(MODIFICATION_TIME_FORMAT);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.parse(response.substring(response.indexOf(' ') + 1)).getTime();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -343,8 +791,14 @@ public class FtpNutDao extends AbstractNutDao implements TemporaryFileManagerHol
             log.debug("Disconnecting from FTP server...");
 
             // This object if not referenced and is going to be garbage collected.
-            // Do not keep the client connected.
-            ftpClient.disconnect();
+            // Do not keep the clients connected.
+            if (listingExecutor != null) {
+                listingExecutor.shutdownNow();
+            }
+
+            if (clientPool != null) {
+                clientPool.close();
+            }
         } finally {
             super.finalize();
         }
@@ -362,14 +816,42 @@ public class FtpNutDao extends AbstractNutDao implements TemporaryFileManagerHol
      */
     @Override
     public Input newInputStream(final String path, final ProcessContext processContext) throws IOException {
-        // Connect if necessary
-        connect();
+        final FtpClientPool pool = pool();
+        final FTPClient ftpClient = pool.borrow();
+        InputStream is = null;
+        String error = null;
+        boolean valid = false;
 
-        ftpClient.changeWorkingDirectory(getBasePath());
+        try {
+            if (!ftpClient.changeWorkingDirectory(getBasePath())) {
+                // Path would be resolved against the wrong directory
+                error = String.format("Can't change working directory to '%s' on FTP server: %s",
+                        getBasePath(), ftpClient.getReplyString());
+            } else {
+                // Download path, the client is released when the stream is closed
+                is = ftpClient.retrieveFileStream(path);
+
+                if (is == null) {
+                    error = String.format("Can't retrieve '%s' from FTP server: %s", path, ftpClient.getReplyString());
+                }
+            }
+
+            valid = true;
+        } finally {
+            if (!valid) {
+                // The connection is broken, don't give it back to the pool
+                pool.invalidate(ftpClient);
+            } else if (is == null) {
+                // Reply has been read, the client can be used by another thread
+                pool.release(ftpClient);
+            }
+        }
 
-        // Download path
-        final InputStream is = ftpClient.retrieveFileStream(path);
-        return newInput(is);
+        if (error != null) {
+            WuicException.throwStreamException(new IOException(error));
+        }
+
+        return newInput(pool.releaseOnClose(ftpClient, is));
     }
 
     /**
@@ -377,13 +859,23 @@ public class FtpNutDao extends AbstractNutDao implements TemporaryFileManagerHol
      */
     @Override
     public Boolean exists(final String path, final ProcessContext processContext) throws IOException {
-        // Connect if necessary
-        connect();
-
-        ftpClient.changeWorkingDirectory(getBasePath());
+        final FtpClientPool pool = pool();
+        final FTPClient ftpClient = pool.borrow();
+        boolean valid = false;
 
-        final Input inputStream = newInputStream(path, processContext);
-        return inputStream != null && ftpClient.getReplyCode() != FILE_UNAVAILABLE_CODE;
+        try {
+            // No data connection is required to check the existence
+            final Boolean retval = ftpClient.getModificationTime(IOUtils.mergePath(getBasePath(), path)) != null
+                    && ftpClient.getReplyCode() != FILE_UNAVAILABLE_CODE;
+            valid = true;
+            return retval;
+        } finally {
+            if (valid) {
+                pool.release(ftpClient);
+            } else {
+                pool.invalidate(ftpClient);
+            }
+        }
     }
 
     /**
@@ -391,53 +883,116 @@ public class FtpNutDao extends AbstractNutDao implements TemporaryFileManagerHol
      */
     @Override
     protected List<String> listNutsPaths(final String pattern) throws IOException {
-        connect();
-        return recursiveSearch(getBasePath(), Pattern.compile(regularExpression ? pattern : Pattern.quote(pattern)));
+        // Listings are kept until the next polling interval, which lists the server again
+        final CachedListing cached = listingCache.get(pattern);
+
+        if (cached != null && System.currentTimeMillis() - cached.listedAt < pollingInterval * 1000L) {
+            return new ArrayList<String>(cached.paths);
+        }
+
+        final long now = System.currentTimeMillis();
+        final Pattern compiled = Pattern.compile(regularExpression ? pattern : Pattern.quote(pattern));
+        final List<String> retval = new ArrayList<String>();
+        collect(walk(useMachineListing()), "", compiled, retval);
+
+        if (pollingInterval > 0) {
+            listingCache.put(pattern, new CachedListing(Collections.unmodifiableList(new ArrayList<String>(retval)), now));
+        }
+
+        return retval;
     }
 
     /**
      * <p>
-     * Represents a resource download on disk that corresponds to a nut. If the files does not exists when a stream is
-     * opened, the file a downloaded once again.
+     * Indicates if directories should be listed with {@code MLSD}. The server features are checked once.
+     * </p>
+     *
+     * @return {@code true} if {@code MLSD} is enabled and supported
+     * @throws IOException if the server can't be queried
+     */
+    private boolean useMachineListing() throws IOException {
+        if (!machineListing) {
+            return false;
+        }
+
+        Boolean retval = machineListingSupported;
+
+        if (retval == null) {
+            final FtpClientPool pool = pool();
+            final FTPClient ftpClient = pool.borrow();
+            boolean valid = false;
+
+            try {
+                retval = ftpClient.hasFeature(MLST_FEATURE);
+                machineListingSupported = retval;
+                valid = true;
+            } finally {
+                if (valid) {
+                    pool.release(ftpClient);
+                } else {
+                    pool.invalidate(ftpClient);
+                }
+            }
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Represents a resource on the FTP server. Content is transferred only when a stream is opened, either directly
+     * from the server or through a file in the spool directory when nuts are downloaded to disk.
      * </p>
      *
      * @author Guillaume DROUET
-     * @since 0.5.0
+     * @since 0.5.3
      */
-    private final class DownloadNut extends FilePathNut {
+    private final class FtpNut extends AbstractNut {
 
         /**
-         * The underlying file.
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param name the path
+         * @param ft the type
+         * @param versionNumber the version number
          */
-        private File file;
+        private FtpNut(final String name, final NutType ft, final Future<Long> versionNumber) {
+            super(name, ft, versionNumber);
+        }
 
         /**
-         * The process context.
+         * {@inheritDoc}
          */
-        private final ProcessContext processContext;
+        @Override
+        public Input openStream() throws IOException {
+            return newInputStream(getInitialName(), ProcessContext.DEFAULT);
+        }
+    }
+
+    /**
+     * <p>
+     * Represents a resource downloaded on disk that corresponds to a nut. The file is downloaded into the spool
+     * directory the first time a stream is opened and downloaded once again if it does not exist anymore.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5.0
+     */
+    private final class DownloadNut extends AbstractNut {
 
         /**
          * <p>
          * Builds a new instance.
          * </p>
          *
-         * @param parent the parent
          * @param name the path
          * @param ft the type
          * @param versionNumber the version number
-         * @param pc the process context
          */
-        private DownloadNut(final File parent,
-                            final String name,
-                            final NutType ft,
-                            final Future<Long> versionNumber,
-                            final ProcessContext pc)
-                throws IOException {
-            super(FilePath.class.cast(
-                    DirectoryPath.class.cast(
-                            IOUtils.buildPath(parent.getAbsolutePath(), getCharset(), temporaryFileManager)).getChild(name)), name, ft, versionNumber);
-            file = new File(parent, name);
-            processContext = pc;
+        private DownloadNut(final String name, final NutType ft, final Future<Long> versionNumber) {
+            super(name, ft, versionNumber);
         }
 
         /**
@@ -445,13 +1000,195 @@ public class FtpNutDao extends AbstractNutDao implements TemporaryFileManagerHol
          */
         @Override
         public Input openStream() throws IOException {
-            if (!file.exists()) {
-                final DownloadNut dn = DownloadNut.class.cast(accessFor(getInitialName(), getInitialNutType(), processContext));
-                file = dn.file;
-                return dn.openStream();
-            } else {
-                return super.openStream();
+            final File file;
+
+            try {
+                file = spoolFile(getInitialName(), getVersionNumber().get());
+            } catch (ExecutionException ee) {
+                WuicException.throwStreamException(new IOException(ee));
+                return null;
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                WuicException.throwStreamException(new IOException(ie));
+                return null;
+            }
+
+            // Download again if the spool file has been deleted
+            spool(getInitialName(), file);
+
+            final FilePath path = FilePath.class.cast(DirectoryPath.class.cast(
+                    IOUtils.buildPath(file.getParent(), getCharset(), temporaryFileManager)).getChild(file.getName()));
+            return new FilePathNut(path, getInitialName(), getInitialNutType(), getVersionNumber()).openStream();
+        }
+    }
+
+    /**
+     * <p>
+     * The listing of a directory.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5.3
+     */
+    private final class DirectoryListing implements Callable<DirectoryListing> {
+
+        /**
+         * The directory path relative to the base path.
+         */
+        private final String relative;
+
+        /**
+         * List with {@code MLSD} or {@code LIST}.
+         */
+        private final boolean mlsd;
+
+        /**
+         * The files in the directory.
+         */
+        private final List<FTPFile> files;
+
+        /**
+         * The subdirectories paths relative to the base path.
+         */
+        private final List<String> directories;
+
+        /**
+         * When the listing has been done.
+         */
+        private long listedAt;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param r the directory path relative to the base path
+         * @param m {@code true} to list with {@code MLSD}
+         */
+        private DirectoryListing(final String r, final boolean m) {
+            relative = r;
+            mlsd = m;
+            files = new ArrayList<FTPFile>();
+            directories = new ArrayList<String>();
+        }
+
+        /**
+         * <p>
+         * Lists the directory with one command on its absolute path.
+         * </p>
+         *
+         * @param ftpClient the client to use
+         * @throws IOException if the directory can't be listed
+         */
+        private void list(final FTPClient ftpClient) throws IOException {
+            final String path = relative.isEmpty() ? getBasePath() : IOUtils.mergePath(getBasePath(), relative);
+            final FTPFile[] entries = mlsd ? ftpClient.mlistDir(path) : ftpClient.listFiles(path);
+
+            if (!FTPReply.isPositiveCompletion(ftpClient.getReplyCode())) {
+                throw new IOException("Can't list the following directory : " + path);
+            }
+
+            listedAt = System.currentTimeMillis();
+
+            for (final FTPFile entry : entries) {
+                if (entry == null || isCurrentOrParentDirectory(entry)) {
+                    continue;
+                } else if (entry.isDirectory()) {
+                    directories.add(relative.isEmpty() ? entry.getName() : IOUtils.mergePath(relative, entry.getName()));
+                } else {
+                    files.add(entry);
+                }
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public DirectoryListing call() throws IOException {
+            final FtpClientPool pool = pool();
+            final FTPClient ftpClient = pool.borrow();
+            boolean valid = false;
+
+            try {
+                list(ftpClient);
+                valid = true;
+                return this;
+            } finally {
+                if (valid) {
+                    pool.release(ftpClient);
+                } else {
+                    pool.invalidate(ftpClient);
+                }
             }
         }
     }
+
+    /**
+     * <p>
+     * The paths matching a pattern, kept until the next polling.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5.3
+     */
+    private static final class CachedListing {
+
+        /**
+         * The matching paths.
+         */
+        private final List<String> paths;
+
+        /**
+         * When the listing has been done.
+         */
+        private final long listedAt;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param p the matching paths
+         * @param l when the listing has been done
+         */
+        private CachedListing(final List<String> p, final long l) {
+            paths = p;
+            listedAt = l;
+        }
+    }
+
+    /**
+     * <p>
+     * A modification date collected during a listing.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5.3
+     */
+    private static final class ListedTimestamp {
+
+        /**
+         * The modification date.
+         */
+        private final long timestamp;
+
+        /**
+         * When the listing has been done.
+         */
+        private final long listedAt;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param t the modification date
+         * @param l when the listing has been done
+         */
+        private ListedTimestamp(final long t, final long l) {
+            timestamp = t;
+            listedAt = l;
+        }
+    }
 }
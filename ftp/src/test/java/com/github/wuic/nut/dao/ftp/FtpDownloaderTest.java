@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2016   The authors of WUIC
+ *
+ * License/Terms of Use
+ * Permission is hereby granted, free of charge and for the term of intellectual
+ * property rights on the Software, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify and
+ * propagate free of charge, anywhere in the world, all or part of the Software
+ * subject to the following mandatory conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, PEACEFUL ENJOYMENT,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.github.wuic.nut.dao.ftp;
+
+import com.github.wuic.util.IOUtils;
+import org.apache.commons.net.ftp.FTPClient;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * <p>
+ * Tests for {@link FtpDownloader}.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5.3
+ */
+@RunWith(JUnit4.class)
+public class FtpDownloaderTest {
+
+    /**
+     * The downloaded path.
+     */
+    private static final String PATH = "/statics/foo.js";
+
+    /**
+     * Timeout.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /**
+     * The mocked pool.
+     */
+    private FtpClientPool pool;
+
+    /**
+     * The mocked client.
+     */
+    private FTPClient client;
+
+    /**
+     * Directory where files are downloaded.
+     */
+    private File directory;
+
+    /**
+     * <p>
+     * Creates the mocks and the download directory.
+     * </p>
+     *
+     * @throws IOException if directory can't be created
+     */
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("wuic-ftp-downloader", "");
+        Assert.assertTrue(directory.delete() && directory.mkdir());
+
+        client = mock(FTPClient.class);
+        when(client.setFileType(anyInt())).thenReturn(true);
+        when(client.completePendingCommand()).thenReturn(true);
+        when(client.hasFeature(anyString())).thenReturn(false);
+
+        pool = mock(FtpClientPool.class);
+        when(pool.borrow()).thenReturn(client);
+    }
+
+    /**
+     * <p>
+     * Deletes the download directory.
+     * </p>
+     */
+    @After
+    public void tearDown() {
+        final File[] files = directory.listFiles();
+
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+
+        directory.delete();
+    }
+
+    /**
+     * <p>
+     * Builds a stream returning the given content then failing.
+     * </p>
+     *
+     * @param content the content returned before the failure
+     * @return the stream
+     */
+    private static InputStream interrupted(final String content) {
+        return new InputStream() {
+
+            /**
+             * The content.
+             */
+            private final InputStream delegate = new ByteArrayInputStream(content.getBytes());
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public int read() throws IOException {
+                final int retval = delegate.read();
+
+                if (retval == -1) {
+                    throw new IOException("Connection reset");
+                }
+
+                return retval;
+            }
+        };
+    }
+
+    /**
+     * <p>
+     * Reads the given file.
+     * </p>
+     *
+     * @param file the file
+     * @return the content
+     * @throws IOException if the file can't be read
+     */
+    private static String read(final File file) throws IOException {
+        return IOUtils.readString(new FileReader(file));
+    }
+
+    /**
+     * <p>
+     * Tests that a failed transfer is resumed with {@code REST} at the last received byte.
+     * </p>
+     *
+     * @throws IOException if test fails
+     */
+    @Test
+    public void resumeTest() throws IOException {
+        when(client.retrieveFileStream(PATH)).thenReturn(interrupted("var foo"), new ByteArrayInputStream(" = 1;".getBytes()));
+        when(client.sendCommand("SIZE", PATH)).thenReturn(213);
+        when(client.getReplyString()).thenReturn("213 12\r\n");
+
+        final File file = new File(directory, "foo.js");
+        new FtpDownloader(pool, 1).download(PATH, file);
+
+        Assert.assertEquals("var foo = 1;", read(file));
+        Assert.assertFalse(new File(directory, "foo.js" + FtpDownloader.PART_EXTENSION).exists());
+        verify(client).setRestartOffset(7L);
+        verify(pool, times(1)).invalidate(client);
+        verify(pool, times(1)).release(client);
+    }
+
+    /**
+     * <p>
+     * Tests that a file whose checksum does not match is never moved to its final name.
+     * </p>
+     *
+     * @throws IOException if test fails
+     */
+    @Test
+    public void checksumMismatchTest() throws IOException {
+        when(client.retrieveFileStream(PATH)).thenReturn(new ByteArrayInputStream("var foo = 1;".getBytes()));
+        when(client.hasFeature("XCRC")).thenReturn(true);
+        when(client.sendCommand("XCRC", PATH)).thenReturn(250);
+        when(client.getReplyString()).thenReturn("250 00000000\r\n");
+
+        final File file = new File(directory, "foo.js");
+
+        try {
+            new FtpDownloader(pool, 0).download(PATH, file);
+            Assert.fail("Checksum mismatch must fail the download");
+        } catch (IOException ioe) {
+            // expected
+        }
+
+        Assert.assertFalse(file.exists());
+        Assert.assertFalse(new File(directory, "foo.js" + FtpDownloader.PART_EXTENSION).exists());
+        verify(pool).invalidate(client);
+        verify(pool, never()).release(client);
+    }
+
+    /**
+     * <p>
+     * Tests that a malformed checksum reply is ignored and the file is validated with its size.
+     * </p>
+     *
+     * @throws IOException if test fails
+     */
+    @Test
+    public void malformedChecksumTest() throws IOException {
+        when(client.retrieveFileStream(PATH)).thenReturn(new ByteArrayInputStream("var foo = 1;".getBytes()));
+        when(client.hasFeature("XCRC")).thenReturn(true);
+        when(client.sendCommand("XCRC", PATH)).thenReturn(250);
+        when(client.sendCommand("SIZE", PATH)).thenReturn(213);
+        when(client.getReplyString()).thenReturn("250 not-a-crc\r\n", "213 12\r\n");
+
+        final File file = new File(directory, "foo.js");
+        new FtpDownloader(pool, 0).download(PATH, file);
+
+        Assert.assertEquals("var foo = 1;", read(file));
+        verify(client).sendCommand("SIZE", PATH);
+        verify(pool).release(client);
+        verify(pool, never()).invalidate(client);
+    }
+
+    /**
+     * <p>
+     * Tests that the download gives up after the configured number of retries.
+     * </p>
+     *
+     * @throws IOException if test fails
+     */
+    @Test
+    public void retryLimitTest() throws IOException {
+        when(client.retrieveFileStream(PATH)).thenReturn(null);
+        when(client.getReplyString()).thenReturn("550 Unavailable\r\n");
+
+        final File file = new File(directory, "foo.js");
+
+        try {
+            new FtpDownloader(pool, 2).download(PATH, file);
+            Assert.fail("Download must fail when the file can't be retrieved");
+        } catch (IOException ioe) {
+            // expected
+        }
+
+        Assert.assertFalse(file.exists());
+        verify(pool, times(3)).borrow();
+        verify(pool, times(3)).invalidate(client);
+    }
+}
@@ -37,11 +37,17 @@ import com.github.wuic.nut.dao.ftp.FtpNutDao;
 import com.github.wuic.test.TestHelper;
 import com.github.wuic.util.IOUtils;
 import com.github.wuic.util.Input;
+import com.github.wuic.util.NutUtils;
 import com.github.wuic.util.UrlUtils;
 import com.github.wuic.config.bean.xml.FileXmlContextBuilderConfigurator;
 import org.apache.ftpserver.FtpServer;
 import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.ftplet.DefaultFtplet;
 import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.ftplet.FtpSession;
+import org.apache.ftpserver.ftplet.Ftplet;
+import org.apache.ftpserver.ftplet.FtpletResult;
 import org.apache.ftpserver.ftplet.UserManager;
 import org.apache.ftpserver.listener.ListenerFactory;
 import org.apache.ftpserver.usermanager.PropertiesUserManagerFactory;
@@ -58,10 +64,21 @@ import org.junit.runners.JUnit4;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <p>
@@ -79,6 +96,16 @@ public class FtpTest {
      */
     private static FtpServer server;
 
+    /**
+     * Number of {@code MDTM} commands received by the server.
+     */
+    private static final AtomicInteger MDTM_COUNT = new AtomicInteger();
+
+    /**
+     * Number of {@code RETR} commands received by the server.
+     */
+    private static final AtomicInteger RETR_COUNT = new AtomicInteger();
+
     /**
      * Timeout.
      */
@@ -116,6 +143,26 @@ public class FtpTest {
         // Configure factory
         serverFactory.setUserManager(um);
         serverFactory.addListener("default", factory.createListener());
+
+        // Count the commands sent to check which ones are avoided
+        final Map<String, Ftplet> ftplets = new HashMap<String, Ftplet>();
+        ftplets.put("counter", new DefaultFtplet() {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public FtpletResult beforeCommand(final FtpSession session, final FtpRequest request) throws FtpException, IOException {
+                if ("MDTM".equalsIgnoreCase(request.getCommand())) {
+                    MDTM_COUNT.incrementAndGet();
+                } else if ("RETR".equalsIgnoreCase(request.getCommand())) {
+                    RETR_COUNT.incrementAndGet();
+                }
+
+                return super.beforeCommand(session, request);
+            }
+        });
+        serverFactory.setFtplets(ftplets);
         server = serverFactory.createServer();
         server.start();
     }
@@ -235,4 +282,222 @@ public class FtpTest {
         is.close();
         bos.close();
     }
+
+    /**
+     * <p>
+     * Tests that content is transferred only when the nut is read.
+     * </p>
+     *
+     * @throws IOException if test fails
+     */
+    @Test
+    public void ftpLazyNutTest() throws IOException {
+        final ObjectBuilderFactory<NutDao> factory = new ObjectBuilderFactory<NutDao>(NutDaoService.class, FtpNutDao.class);
+        final ObjectBuilder<NutDao> builder = factory.create(FtpNutDao.class.getSimpleName() + "Builder");
+        final NutDao dao = builder
+                .property(ApplicationConfig.SERVER_PORT, 2221)
+                .property(ApplicationConfig.LOGIN, "wuicuser")
+                .property(ApplicationConfig.PASSWORD, "wuicpassword")
+                .build();
+        NutTypeFactoryHolder.class.cast(dao).setNutTypeFactory(new NutTypeFactory(Charset.defaultCharset().displayName()));
+        RETR_COUNT.set(0);
+
+        final Nut nut = dao.create("style.css", ProcessContext.DEFAULT).get(0);
+        Assert.assertEquals(0, RETR_COUNT.get());
+
+        for (int i = 1; i <= 2; i++) {
+            final Input is = nut.openStream();
+            Assert.assertFalse(IOUtils.readString(new InputStreamReader(is.inputStream())).isEmpty());
+            is.close();
+            Assert.assertEquals(i, RETR_COUNT.get());
+        }
+    }
+
+    /**
+     * <p>
+     * Tests that nuts downloaded to disk are transferred once per version and that the file of a previous version
+     * is deleted from the spool directory.
+     * </p>
+     *
+     * @throws IOException if test fails
+     */
+    @Test
+    public void ftpSpoolTest() throws IOException {
+        final File served = new File(FtpTest.class.getResource("/").getFile(), "spool.css");
+        final OutputStream os = new FileOutputStream(served);
+        os.write(".spool { color: red; }".getBytes());
+        os.close();
+        Assert.assertTrue(served.setLastModified(1000000000000L));
+
+        try {
+            final ObjectBuilderFactory<NutDao> factory = new ObjectBuilderFactory<NutDao>(NutDaoService.class, FtpNutDao.class);
+            final ObjectBuilder<NutDao> builder = factory.create(FtpNutDao.class.getSimpleName() + "Builder");
+            final NutDao dao = builder
+                    .property(ApplicationConfig.SERVER_PORT, 2221)
+                    .property(ApplicationConfig.LOGIN, "wuicuser")
+                    .property(ApplicationConfig.PASSWORD, "wuicpassword")
+                    .property(ApplicationConfig.DOWNLOAD_TO_DISK, "true")
+                    .build();
+            NutTypeFactoryHolder.class.cast(dao).setNutTypeFactory(new NutTypeFactory(Charset.defaultCharset().displayName()));
+            RETR_COUNT.set(0);
+
+            // Transferred once, then read from the spool
+            final Nut first = dao.create("spool.css", ProcessContext.DEFAULT).get(0);
+            Assert.assertEquals(0, RETR_COUNT.get());
+            final List<File> before = spooled();
+            Assert.assertEquals(".spool { color: red; }", read(first));
+            Assert.assertEquals(".spool { color: red; }", read(first));
+            Assert.assertEquals(1, RETR_COUNT.get());
+
+            final List<File> firstVersion = spooled();
+            firstVersion.removeAll(before);
+            Assert.assertEquals(1, firstVersion.size());
+
+            // A new version replaces the previous file
+            Assert.assertTrue(served.setLastModified(1000000060000L));
+            final Nut second = dao.create("spool.css", ProcessContext.DEFAULT).get(0);
+            Assert.assertEquals(".spool { color: red; }", read(second));
+            Assert.assertEquals(2, RETR_COUNT.get());
+            Assert.assertFalse(firstVersion.get(0).exists());
+        } finally {
+            served.delete();
+        }
+    }
+
+    /**
+     * <p>
+     * Lists the files in the FTP spool directory.
+     * </p>
+     *
+     * @return the files
+     */
+    private static List<File> spooled() {
+        final File[] files = new File(System.getProperty("java.io.tmpdir"), "wuic-ftp-spool").listFiles();
+        return files == null ? new ArrayList<File>() : new ArrayList<File>(Arrays.asList(files));
+    }
+
+    /**
+     * <p>
+     * Reads the given nut.
+     * </p>
+     *
+     * @param nut the nut
+     * @return the content
+     * @throws IOException if the nut can't be read
+     */
+    private static String read(final Nut nut) throws IOException {
+        final Input is = nut.openStream();
+
+        try {
+            return IOUtils.readString(new InputStreamReader(is.inputStream()));
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * <p>
+     * Test concurrent reads sharing a pool smaller than the number of threads.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void ftpConcurrentReadTest() throws Exception {
+        final ObjectBuilderFactory<NutDao> factory = new ObjectBuilderFactory<NutDao>(NutDaoService.class, FtpNutDao.class);
+        final ObjectBuilder<NutDao> builder = factory.create(FtpNutDao.class.getSimpleName() + "Builder");
+        final NutDao dao = builder
+                .property(ApplicationConfig.SERVER_PORT, 2221)
+                .property(ApplicationConfig.LOGIN, "wuicuser")
+                .property(ApplicationConfig.PASSWORD, "wuicpassword")
+                .property(FtpNutDao.POOL_SIZE, 2)
+                .build();
+        NutTypeFactoryHolder.class.cast(dao).setNutTypeFactory(new NutTypeFactory(Charset.defaultCharset().displayName()));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final List<Future<String>> futures = new ArrayList<Future<String>>();
+
+        try {
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        final Input is = dao.newInputStream("style.css", ProcessContext.DEFAULT);
+
+                        try {
+                            return IOUtils.readString(new InputStreamReader(is.inputStream()));
+                        } finally {
+                            is.close();
+                        }
+                    }
+                }));
+            }
+
+            final String expected = futures.get(0).get();
+            Assert.assertFalse(expected.isEmpty());
+
+            for (final Future<String> future : futures) {
+                Assert.assertEquals(expected, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * <p>
+     * Test listing with {@code MLSD} and polling from collected timestamps.
+     * </p>
+     *
+     * @throws IOException if test fails
+     */
+    @Test
+    public void ftpMachineListingTest() throws IOException {
+        final ObjectBuilderFactory<NutDao> factory = new ObjectBuilderFactory<NutDao>(NutDaoService.class, FtpNutDao.class);
+        final ObjectBuilder<NutDao> builder = factory.create(FtpNutDao.class.getSimpleName() + "Builder");
+        final NutDao dao = builder
+                .property(ApplicationConfig.SERVER_PORT, 2221)
+                .property(ApplicationConfig.LOGIN, "wuicuser")
+                .property(ApplicationConfig.PASSWORD, "wuicpassword")
+                .property(FtpNutDao.MACHINE_LISTING, true)
+                .build();
+        NutTypeFactoryHolder.class.cast(dao).setNutTypeFactory(new NutTypeFactory(Charset.defaultCharset().displayName()));
+        MDTM_COUNT.set(0);
+        final List<Nut> nuts = dao.create("style.css", ProcessContext.DEFAULT);
+        Assert.assertEquals(1, nuts.size());
+
+        // Timestamp comes from the MLSD facts (second precision) and no MDTM has been sent
+        final long expected = new File(getClass().getResource("/style.css").getFile()).lastModified();
+        Assert.assertEquals(expected / 1000L, NutUtils.getVersionNumber(nuts.get(0)) / 1000L);
+        Assert.assertEquals(0, MDTM_COUNT.get());
+    }
+
+    /**
+     * <p>
+     * Test listing with concurrent directory listings.
+     * </p>
+     *
+     * @throws IOException if test fails
+     */
+    @Test
+    public void ftpParallelListingTest() throws IOException {
+        final ObjectBuilderFactory<NutDao> factory = new ObjectBuilderFactory<NutDao>(NutDaoService.class, FtpNutDao.class);
+        final ObjectBuilder<NutDao> builder = factory.create(FtpNutDao.class.getSimpleName() + "Builder");
+        final NutDao dao = builder
+                .property(ApplicationConfig.SERVER_PORT, 2221)
+                .property(ApplicationConfig.LOGIN, "wuicuser")
+                .property(ApplicationConfig.PASSWORD, "wuicpassword")
+                .property(ApplicationConfig.REGEX, true)
+                .property(FtpNutDao.LISTING_PARALLELISM, 4)
+                .build();
+        NutTypeFactoryHolder.class.cast(dao).setNutTypeFactory(new NutTypeFactory(Charset.defaultCharset().displayName()));
+        final List<Nut> first = dao.create(".*.css", ProcessContext.DEFAULT);
+        final List<Nut> second = dao.create(".*.css", ProcessContext.DEFAULT);
+        Assert.assertEquals(2, first.size());
+        Assert.assertEquals(first.size(), second.size());
+
+        for (int i = 0; i < first.size(); i++) {
+            Assert.assertEquals(first.get(i).getInitialName(), second.get(i).getInitialName());
+        }
+    }
 }
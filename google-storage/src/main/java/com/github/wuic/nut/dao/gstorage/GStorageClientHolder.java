@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2016   The authors of WUIC
+ *
+ * License/Terms of Use
+ * Permission is hereby granted, free of charge and for the term of intellectual
+ * property rights on the Software, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify and
+ * propagate free of charge, anywhere in the world, all or part of the Software
+ * subject to the following mandatory conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, PEACEFUL ENJOYMENT,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.github.wuic.nut.dao.gstorage;
+
+import com.github.wuic.util.IOUtils;
+import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.services.storage.Storage;
+import com.google.api.services.storage.StorageScopes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>
+ * Thread-safe holder of the {@link Storage} client used by {@link GStorageNutDao}.
+ * </p>
+ *
+ * <p>
+ * The client and its {@link GoogleCredential} are built once, the first time they are requested. All instances share
+ * the same HTTP transport which is thread-safe and reuses its connections. The OAuth2 token is refreshed by a
+ * background task before it expires, so request threads never wait for a refresh. Finally, the number of calls
+ * in-flight is bounded: each call must {@link #acquire() acquire} a permit and {@link #release() release} it when done.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5.3
+ */
+public final class GStorageClientHolder {
+
+    /**
+     * Token is refreshed when it expires in less than this number of seconds.
+     */
+    public static final long REFRESH_AHEAD_SECONDS = 300L;
+
+    /**
+     * Interval in seconds between two checks of the token expiration.
+     */
+    private static final long REFRESH_CHECK_SECONDS = 60L;
+
+    /**
+     * Transport shared by all the clients.
+     */
+    private static final NetHttpTransport HTTP_TRANSPORT = new NetHttpTransport();
+
+    /**
+     * JSON factory shared by all the clients.
+     */
+    private static final JsonFactory JSON_FACTORY = new JacksonFactory();
+
+    /**
+     * Executes the refresh tasks in a daemon thread.
+     */
+    private static final ScheduledExecutorService REFRESHER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread retval = new Thread(r, "wuic-gstorage-token-refresher");
+            retval.setDaemon(true);
+            return retval;
+        }
+    });
+
+    /**
+     * Logger.
+     */
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    /**
+     * Google service account id.
+     */
+    private final String serviceAccountId;
+
+    /**
+     * Private key path location.
+     */
+    private final String privateKeyFile;
+
+    /**
+     * Bucket name, used in error messages.
+     */
+    private final String bucketName;
+
+    /**
+     * Bounds the number of calls in-flight.
+     */
+    private final Semaphore permits;
+
+    /**
+     * The credential, {@code null} until first access.
+     */
+    private volatile GoogleCredential googleCredential;
+
+    /**
+     * The client, {@code null} until first access.
+     */
+    private volatile Storage storage;
+
+    /**
+     * The scheduled refresh task.
+     */
+    private ScheduledFuture<?> refreshTask;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param accountId the Google service account id
+     * @param keyFile the private key path location in the classpath
+     * @param bucket the bucket name
+     * @param maxConcurrentRequests maximum number of calls in-flight
+     */
+    public GStorageClientHolder(final String accountId, final String keyFile, final String bucket, final int maxConcurrentRequests) {
+        if (maxConcurrentRequests <= 0) {
+            throw new IllegalArgumentException("Maximum number of concurrent requests must be a positive number.");
+        }
+
+        serviceAccountId = accountId;
+        privateKeyFile = keyFile;
+        bucketName = bucket;
+        permits = new Semaphore(maxConcurrentRequests, true);
+    }
+
+    /**
+     * <p>
+     * Gets the client, building it if it's the first call.
+     * </p>
+     *
+     * @return the client
+     * @throws IOException if the client can't be built
+     */
+    public Storage storage() throws IOException {
+        Storage retval = storage;
+
+        if (retval == null) {
+            synchronized (this) {
+                retval = storage;
+
+                if (retval == null) {
+                    build();
+                    retval = storage;
+                }
+            }
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Acquires a permit to execute a call. Blocks while the maximum number of calls in-flight is reached.
+     * </p>
+     *
+     * @throws IOException if the thread is interrupted
+     */
+    public void acquire() throws IOException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a Google Storage permit", ie);
+        }
+    }
+
+    /**
+     * <p>
+     * Releases a permit previously {@link #acquire() acquired}.
+     * </p>
+     */
+    public void release() {
+        permits.release();
+    }
+
+    /**
+     * <p>
+     * Wraps the given stream obtained after a permit has been {@link #acquire() acquired}. The permit is released when
+     * the returned stream is closed.
+     * </p>
+     *
+     * @param inputStream the stream to wrap
+     * @return the wrapping stream
+     */
+    public InputStream releaseOnClose(final InputStream inputStream) {
+        final AtomicBoolean released = new AtomicBoolean(false);
+
+        return new FilterInputStream(inputStream) {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (released.compareAndSet(false, true)) {
+                        release();
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * <p>
+     * Stops the refresh task and forces the credential expiration.
+     * </p>
+     */
+    public synchronized void shutdown() {
+        if (refreshTask != null) {
+            refreshTask.cancel(false);
+            refreshTask = null;
+        }
+
+        if (googleCredential != null) {
+            log.debug("Release Google credential ticket...");
+
+            // For security, we force Google credential expiration to now.
+            googleCredential.setExpirationTimeMilliseconds(0L);
+        }
+    }
+
+    /**
+     * <p>
+     * Builds OAuth 2 Google credential and the client. A first token is retrieved and a task refreshing it before
+     * expiration is scheduled.
+     * </p>
+     *
+     * @throws IOException if we have a problem to build Google credential
+     */
+    private void build() throws IOException {
+        final String keyPath = IOUtils.mergePath("/", privateKeyFile);
+        final URL keyUrl = getClass().getResource(keyPath);
+
+        if (keyUrl == null) {
+            throw new IOException(String.format("Private key file %s not found in classpath for bucket %s", keyPath, bucketName));
+        }
+
+        try {
+            // Configure Google credential
+            final GoogleCredential.Builder builder = new GoogleCredential.Builder();
+            builder.setTransport(HTTP_TRANSPORT);
+            builder.setJsonFactory(JSON_FACTORY);
+            builder.setServiceAccountId(serviceAccountId);
+            builder.setServiceAccountPrivateKeyFromP12File(new File(keyUrl.getFile()));
+            builder.setServiceAccountScopes(Arrays.asList(StorageScopes.DEVSTORAGE_FULL_CONTROL));
+
+            // Build Google credential and get a first token
+            final GoogleCredential credential = builder.build();
+            credential.refreshToken();
+
+            // Build Google Storage connector
+            googleCredential = credential;
+            refreshTask = REFRESHER.scheduleWithFixedDelay(new Refresher(), REFRESH_CHECK_SECONDS, REFRESH_CHECK_SECONDS, TimeUnit.SECONDS);
+            storage = new Storage.Builder(HTTP_TRANSPORT, JSON_FACTORY, credential).setApplicationName("Wuic").build();
+        } catch (GeneralSecurityException gse) {
+            // Security exception (local check)
+            throw new IOException("Can't build Google credential on bucket " + bucketName + " for key : " + keyPath, gse);
+        } catch (IOException ioe) {
+            // Private key can't be read or token can't be retrieved
+            throw new IOException("Can't build Google credential on bucket " + bucketName + " for key : " + keyPath + " check your private key file", ioe);
+        }
+    }
+
+    /**
+     * <p>
+     * Refreshes the token of the given credential if it expires in less than {@link #REFRESH_AHEAD_SECONDS}. Errors are
+     * logged and never thrown, so the scheduled task keeps running after a failure.
+     * </p>
+     *
+     * @param credential the credential
+     * @return {@code true} if the token has been refreshed, {@code false} otherwise
+     */
+    boolean refreshIfExpiring(final GoogleCredential credential) {
+        try {
+            final Long expiresIn = credential.getExpiresInSeconds();
+
+            if (expiresIn != null && expiresIn > REFRESH_AHEAD_SECONDS) {
+                return false;
+            }
+
+            log.debug("Refreshing Google credential token for bucket {}", bucketName);
+
+            if (credential.refreshToken()) {
+                return true;
+            }
+
+            log.warn("Google credential token for bucket {} has not been refreshed", bucketName);
+        } catch (IOException ioe) {
+            log.warn("Unable to refresh Google credential token for bucket " + bucketName, ioe);
+        } catch (RuntimeException re) {
+            // An unchecked exception would cancel all the next executions of the scheduled task
+            log.error("Unexpected error while refreshing Google credential token for bucket " + bucketName, re);
+        }
+
+        return false;
+    }
+
+    /**
+     * <p>
+     * Refreshes the token when it's going to expire.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5.3
+     */
+    private final class Refresher implements Runnable {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            refreshIfExpiring(googleCredential);
+        }
+    }
+}
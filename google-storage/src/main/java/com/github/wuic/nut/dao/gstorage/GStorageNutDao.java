@@ -25,6 +25,7 @@ package com.github.wuic.nut.dao.gstorage;
 import com.github.wuic.ApplicationConfig;
 import com.github.wuic.NutType;
 import com.github.wuic.ProcessContext;
+import com.github.wuic.commons.ObjectPrefetcher;
 import com.github.wuic.config.*;
 import com.github.wuic.config.Config;
 import com.github.wuic.exception.WuicException;
@@ -34,24 +35,16 @@ import com.github.wuic.nut.Nut;
 import com.github.wuic.nut.dao.NutDaoService;
 import com.github.wuic.nut.setter.ProxyUrisPropertySetter;
 import com.github.wuic.util.DefaultInput;
-import com.github.wuic.util.IOUtils;
 import com.github.wuic.util.Input;
-import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.json.JsonFactory;
-import com.google.api.client.json.jackson2.JacksonFactory;
-import com.google.api.services.storage.Storage;
-import com.google.api.services.storage.StorageScopes;
 import com.google.api.services.storage.model.Objects;
 import com.google.api.services.storage.model.StorageObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
 import java.io.IOException;
-import java.security.GeneralSecurityException;
+import java.io.InputStream;
+import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Future;
 import java.util.regex.Matcher;
@@ -71,24 +64,39 @@ import java.util.regex.Pattern;
 public class GStorageNutDao extends AbstractNutDao implements ApplicationConfig {
 
     /**
-     * Logger.
+     * Property key for the maximum number of calls to Google Cloud Storage in-flight.
      */
-    private final Logger log = LoggerFactory.getLogger(this.getClass());
+    public static final String MAX_CONCURRENT_REQUESTS = "c.g.wuic.dao.maxConcurrentRequests";
 
     /**
-     * The client connected to the Google Cloud Storage.
+     * Default maximum number of calls in-flight.
      */
-    private Storage storage;
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 16;
 
     /**
-     * Bucket name.
+     * Property key for the number of threads prefetching listed objects, {@code 0} to disable prefetch.
      */
-    private String bucketName;
+    public static final String PREFETCH_POOL_SIZE = "c.g.wuic.dao.prefetchPoolSize";
+
+    /**
+     * Property key for the maximum number of bytes retained in memory by prefetched objects.
+     */
+    public static final String PREFETCH_MAX_BYTES = "c.g.wuic.dao.prefetchMaxBytes";
 
     /**
-     * Google credential for OAuth2.
+     * Property key for the number of milliseconds a read waits for an object being prefetched.
      */
-    private GoogleCredential googleCredential;
+    public static final String PREFETCH_TIMEOUT = "c.g.wuic.dao.prefetchTimeout";
+
+    /**
+     * Logger.
+     */
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Bucket name.
+     */
+    private String bucketName;
 
     /**
      * Private key path location.
@@ -100,6 +108,21 @@ public class GStorageNutDao extends AbstractNutDao implements ApplicationConfig
      */
     private String serviceAccountId;
 
+    /**
+     * Maximum number of calls in-flight.
+     */
+    private int maxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
+
+    /**
+     * Holds the client connected to the Google Cloud Storage, {@code null} until first access.
+     */
+    private volatile GStorageClientHolder clientHolder;
+
+    /**
+     * Downloads listed objects in background, {@code null} if prefetch is disabled.
+     */
+    private volatile ObjectPrefetcher prefetcher;
+
     /**
      * <p>
      * Initializes a new instance.
@@ -126,54 +149,95 @@ public class GStorageNutDao extends AbstractNutDao implements ApplicationConfig
     }
 
     /**
-     * Check if OAuth token is always alive.
+     * <p>
+     * Sets the maximum number of calls to Google Cloud Storage in-flight.
+     * </p>
+     *
+     * @param max the maximum number
+     */
+    @Config
+    public void maxConcurrentRequests(@IntegerConfigParam(defaultValue = DEFAULT_MAX_CONCURRENT_REQUESTS, propertyKey = MAX_CONCURRENT_REQUESTS) final int max) {
+        maxConcurrentRequests = max;
+    }
+
+    /**
+     * <p>
+     * Configures the prefetch of listed objects. When enabled, all the objects matched by a listing are downloaded
+     * concurrently by a bounded pool and nuts read the downloaded buffers instead of opening a new remote stream.
+     * Downloads also respect the maximum number of calls in-flight.
+     * </p>
      *
-     * @throws IOException if token can't be refresh
+     * @param poolSize the number of threads downloading objects, {@code 0} to disable prefetch
+     * @param maxBytes the maximum number of bytes retained in memory by prefetched objects
+     * @param timeout the number of milliseconds a read waits for an object being prefetched
      */
-    private void checkGoogleOAuth2() throws IOException {
-        // Check if we have build Google credential
-        if (googleCredential == null) {
-            this.buildOAuth2();
+    @Config
+    public void prefetch(@IntegerConfigParam(defaultValue = 0, propertyKey = PREFETCH_POOL_SIZE) final int poolSize,
+                         @IntegerConfigParam(defaultValue = ObjectPrefetcher.DEFAULT_MAX_BYTES, propertyKey = PREFETCH_MAX_BYTES) final int maxBytes,
+                         @IntegerConfigParam(defaultValue = ObjectPrefetcher.DEFAULT_TIMEOUT, propertyKey = PREFETCH_TIMEOUT) final int timeout) {
+        if (prefetcher != null) {
+            prefetcher.shutdown();
         }
 
-        // Check token
-        if (googleCredential.getExpiresInSeconds() == null || googleCredential.getExpirationTimeMilliseconds() == 0) {
-            googleCredential.refreshToken();
+        prefetcher = poolSize > 0 ? new GStorageObjectPrefetcher(poolSize, maxBytes, timeout) : null;
+    }
+
+    /**
+     * <p>
+     * Configures the prefetch of listed objects with the default memory budget and timeout.
+     * </p>
+     *
+     * @param poolSize the number of threads downloading objects, {@code 0} to disable prefetch
+     */
+    public void prefetch(final int poolSize) {
+        prefetch(poolSize, ObjectPrefetcher.DEFAULT_MAX_BYTES, ObjectPrefetcher.DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * <p>
+     * Gets the holder of the client, creating it if necessary.
+     * </p>
+     *
+     * @return the client holder
+     */
+    private GStorageClientHolder client() {
+        GStorageClientHolder retval = clientHolder;
+
+        if (retval == null) {
+            synchronized (this) {
+                retval = clientHolder;
+
+                if (retval == null) {
+                    retval = new GStorageClientHolder(serviceAccountId, privateKeyFile, bucketName, maxConcurrentRequests);
+                    clientHolder = retval;
+                }
+            }
         }
+
+        return retval;
     }
 
     /**
-     * Build OAuth 2 Google Credential.
+     * <p>
+     * Opens a stream to the media of the given object. A permit is held until the returned stream is closed.
+     * </p>
      *
-     * @throws IOException if we have a problem to build Google credential
+     * @param path the object name
+     * @return the stream
+     * @throws IOException if the object can't be read
      */
-    private void buildOAuth2() throws IOException {
-        final NetHttpTransport netHttpTransport = new NetHttpTransport();
-        final JsonFactory jsonFactory = new JacksonFactory();
+    protected InputStream openMedia(final String path) throws IOException {
+        final GStorageClientHolder client = client();
+        client.acquire();
 
         try {
-            // Configure Google credential
-            final GoogleCredential.Builder builder = new GoogleCredential.Builder();
-            builder.setTransport(netHttpTransport);
-            builder.setJsonFactory(jsonFactory);
-            builder.setServiceAccountId(serviceAccountId);
-
-            // TODO : raise exception if private key not found
-            final String keyPath = IOUtils.mergePath("/", privateKeyFile);
-            builder.setServiceAccountPrivateKeyFromP12File(new File(getClass().getResource(keyPath).getFile()));
-            builder.setServiceAccountScopes(Arrays.asList(StorageScopes.DEVSTORAGE_FULL_CONTROL));
-
-            // Build Google credential
-            googleCredential = builder.build();
-
-            // Build Google Storage connector
-            storage = new Storage.Builder(netHttpTransport, jsonFactory, googleCredential).setApplicationName("Wuic").build();
-        } catch (GeneralSecurityException gse) {
-            // Security exception (local check)
-            throw new IOException("Can't build Google credential on bucket " + bucketName + " for key : " + getBasePath(), gse);
+            return client.releaseOnClose(client.storage().objects().get(bucketName, path).executeMediaAsInputStream());
         } catch (IOException ioe) {
-            // Private key path not found
-            throw new IOException("Can't build Google credential on bucket " + bucketName + " for key : " + getBasePath() + " check your private key file", ioe);
+            client.release();
+            throw ioe;
+        } catch (RuntimeException re) {
+            client.release();
+            throw re;
         }
     }
 
@@ -182,12 +246,28 @@ public class GStorageNutDao extends AbstractNutDao implements ApplicationConfig
      */
     @Override
     public List<String> listNutsPaths(final String pattern) throws IOException {
-        // Check if we are ready to read on Google Storage
-        this.checkGoogleOAuth2();
-
         return recursiveSearch(getBasePath(), Pattern.compile(pattern));
     }
 
+    /**
+     * <p>
+     * Lists the objects of the bucket.
+     * </p>
+     *
+     * @return the listing
+     * @throws IOException if the bucket can't be listed
+     */
+    protected Objects listObjects() throws IOException {
+        final GStorageClientHolder client = client();
+        client.acquire();
+
+        try {
+            return client.storage().objects().list(bucketName).execute();
+        } finally {
+            client.release();
+        }
+    }
+
     /**
      * <p>
      * Searches recursively in the given path any files matching the given entry.
@@ -202,10 +282,10 @@ public class GStorageNutDao extends AbstractNutDao implements ApplicationConfig
         Objects objectListing;
 
         try {
-            objectListing = storage.objects().list(bucketName).execute();
+            objectListing = listObjects();
         } catch (IOException ioe) {
             WuicException.throwStreamException(new IOException(
-                    String.format("Can't get Google Storage Object on bucket %s for nut key : %s", bucketName, path)));
+                    String.format("Can't get Google Storage Object on bucket %s for nut key : %s", bucketName, path), ioe));
             return null;
         }
 
@@ -217,6 +297,13 @@ public class GStorageNutDao extends AbstractNutDao implements ApplicationConfig
 
                 if (matcher.find()) {
                     retval.add(storageObject.getName());
+
+                    if (prefetcher != null) {
+                        final BigInteger size = storageObject.getSize();
+                        prefetcher.prefetch(storageObject.getName(),
+                                String.valueOf(storageObject.getGeneration()),
+                                size == null ? -1L : size.longValue());
+                    }
                 }
             }
         }
@@ -238,10 +325,17 @@ public class GStorageNutDao extends AbstractNutDao implements ApplicationConfig
      */
     @Override
     protected Long getLastUpdateTimestampFor(final String path) throws IOException {
+        final GStorageClientHolder client = client();
         log.info("Polling GStorage nut '{}'", path);
-        final String response = storage.objects().get(bucketName, path).execute().getMd5Hash();
-        log.info("Last MD5 response : {}", response);
-        return storage.objects().get(bucketName, path).execute().getGeneration();
+        client.acquire();
+
+        try {
+            final StorageObject storageObject = client.storage().objects().get(bucketName, path).execute();
+            log.info("Last MD5 response : {}", storageObject.getMd5Hash());
+            return storageObject.getGeneration();
+        } finally {
+            client.release();
+        }
     }
 
     /**
@@ -250,10 +344,13 @@ public class GStorageNutDao extends AbstractNutDao implements ApplicationConfig
     @Override
     protected void finalize() throws Throwable {
         try {
-            log.debug("Release Google credential ticket...");
+            if (clientHolder != null) {
+                clientHolder.shutdown();
+            }
 
-            // For security, we force Google credential expiration to now.
-            googleCredential.setExpirationTimeMilliseconds(new Long(0));
+            if (prefetcher != null) {
+                prefetcher.shutdown();
+            }
         } finally {
             super.finalize();
         }
@@ -272,8 +369,23 @@ public class GStorageNutDao extends AbstractNutDao implements ApplicationConfig
      */
     @Override
     public Input newInputStream(final String path, final ProcessContext processContext) throws IOException {
+        final InputStream prefetched = takePrefetched(path);
+
         // Try to get a Storage object
-        return newInput(storage.objects().get(bucketName, path).executeMediaAsInputStream());
+        return newInput(prefetched != null ? prefetched : openMedia(path));
+    }
+
+    /**
+     * <p>
+     * Takes the content prefetched for the given object.
+     * </p>
+     *
+     * @param path the object name
+     * @return the stream reading the prefetched content, {@code null} if nothing has been prefetched
+     */
+    private InputStream takePrefetched(final String path) {
+        final ObjectPrefetcher p = prefetcher;
+        return p == null ? null : p.take(path);
     }
 
     /**
@@ -283,7 +395,7 @@ public class GStorageNutDao extends AbstractNutDao implements ApplicationConfig
     public Boolean exists(final String path, final ProcessContext processContext) throws IOException {
         try {
             // Try to get a Storage object
-            storage.objects().get(bucketName, path).executeMediaAsInputStream().close();
+            openMedia(path).close();
             return true;
         } catch (IOException ioe) {
             return false;
@@ -318,11 +430,42 @@ public class GStorageNutDao extends AbstractNutDao implements ApplicationConfig
          */
         @Override
         public Input openStream() throws IOException {
-            // Try to get a Storage object
-            final Storage.Objects.Get storageObject = storage.objects().get(bucketName, getInitialName());
+            final InputStream prefetched = takePrefetched(getInitialName());
+
+            // Download path if content has not been prefetched
+            return new DefaultInput(prefetched != null ? prefetched : openMedia(getInitialName()), getCharset());
+        }
+    }
 
-            // Download path
-            return new DefaultInput(storageObject.executeMediaAsInputStream(), getCharset());
+    /**
+     * <p>
+     * Prefetches Google Storage objects.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5.3
+     */
+    private final class GStorageObjectPrefetcher extends ObjectPrefetcher {
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param poolSize the number of threads
+         * @param maxBytes the maximum number of bytes retained in memory
+         * @param timeout the number of milliseconds a read waits for a download
+         */
+        private GStorageObjectPrefetcher(final int poolSize, final int maxBytes, final int timeout) {
+            super("wuic-gstorage-prefetch-", poolSize, maxBytes, timeout);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected InputStream download(final String name) throws IOException {
+            return openMedia(name);
         }
     }
 }
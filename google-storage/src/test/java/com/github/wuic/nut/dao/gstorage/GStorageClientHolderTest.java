@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2016   The authors of WUIC
+ *
+ * License/Terms of Use
+ * Permission is hereby granted, free of charge and for the term of intellectual
+ * property rights on the Software, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify and
+ * propagate free of charge, anywhere in the world, all or part of the Software
+ * subject to the following mandatory conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, PEACEFUL ENJOYMENT,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.github.wuic.nut.dao.gstorage;
+
+import com.google.api.client.auth.oauth2.TokenResponse;
+import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Tests for {@link GStorageClientHolder}.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5.3
+ */
+@RunWith(JUnit4.class)
+public class GStorageClientHolderTest {
+
+    /**
+     * Timeout.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /**
+     * <p>
+     * Tests that the number of calls in-flight never exceeds the number of permits.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void permitsTest() throws Exception {
+        final GStorageClientHolder holder = new GStorageClientHolder("account", "key.p12", "bucket", 2);
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger max = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<Thread>();
+
+        for (int i = 0; i < 8; i++) {
+            final Thread thread = new Thread(new Runnable() {
+
+                /**
+                 * {@inheritDoc}
+                 */
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        holder.acquire();
+                        final InputStream is = holder.releaseOnClose(new ByteArrayInputStream(new byte[0]));
+
+                        try {
+                            final int current = inFlight.incrementAndGet();
+
+                            synchronized (max) {
+                                max.set(Math.max(max.get(), current));
+                            }
+
+                            Thread.sleep(50L);
+                            inFlight.decrementAndGet();
+                        } finally {
+                            // Closing twice releases only one permit
+                            is.close();
+                            is.close();
+                        }
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    } catch (IOException ioe) {
+                        throw new IllegalStateException(ioe);
+                    }
+                }
+            });
+
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(2, max.get());
+
+        // All permits have been released
+        holder.acquire();
+        holder.acquire();
+        holder.release();
+        holder.release();
+    }
+
+    /**
+     * <p>
+     * Tests that a token is refreshed only when it's going to expire and that errors are not thrown.
+     * </p>
+     */
+    @Test
+    public void refreshTest() {
+        final GStorageClientHolder holder = new GStorageClientHolder("account", "key.p12", "bucket", 1);
+        final AtomicInteger refreshes = new AtomicInteger();
+        final GoogleCredential credential = new GoogleCredential() {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            protected TokenResponse executeRefreshToken() throws IOException {
+                refreshes.incrementAndGet();
+                return new TokenResponse().setAccessToken("token" + refreshes.get()).setExpiresInSeconds(3600L);
+            }
+        };
+
+        // Far from expiration
+        credential.setExpirationTimeMilliseconds(System.currentTimeMillis() + 3600000L);
+        Assert.assertFalse(holder.refreshIfExpiring(credential));
+        Assert.assertEquals(0, refreshes.get());
+
+        // Near expiration
+        credential.setExpirationTimeMilliseconds(System.currentTimeMillis() + 60000L);
+        Assert.assertTrue(holder.refreshIfExpiring(credential));
+        Assert.assertEquals(1, refreshes.get());
+        Assert.assertEquals("token1", credential.getAccessToken());
+        Assert.assertTrue(credential.getExpiresInSeconds() > GStorageClientHolder.REFRESH_AHEAD_SECONDS);
+    }
+
+    /**
+     * <p>
+     * Tests that an unchecked exception raised by a refresh is not thrown to the scheduled task.
+     * </p>
+     */
+    @Test
+    public void refreshErrorTest() {
+        final GStorageClientHolder holder = new GStorageClientHolder("account", "key.p12", "bucket", 1);
+        final GoogleCredential credential = new GoogleCredential() {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            protected TokenResponse executeRefreshToken() throws IOException {
+                throw new IllegalStateException("refresh failure");
+            }
+        };
+
+        credential.setExpirationTimeMilliseconds(0L);
+        Assert.assertFalse(holder.refreshIfExpiring(credential));
+    }
+}
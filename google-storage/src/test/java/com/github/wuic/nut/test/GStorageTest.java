@@ -38,6 +38,10 @@ import com.github.wuic.nut.NutsHeap;
 import com.github.wuic.nut.Nut;
 import com.github.wuic.nut.dao.gstorage.GStorageNutDao;
 import com.github.wuic.config.ObjectBuilder;
+import com.github.wuic.util.IOUtils;
+import com.github.wuic.util.Input;
+import com.google.api.services.storage.model.Objects;
+import com.google.api.services.storage.model.StorageObject;
 import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
@@ -45,13 +49,20 @@ import org.junit.rules.Timeout;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Arrays;
 
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -87,6 +98,7 @@ public class GStorageTest {
         builder.property(ApplicationConfig.CLOUD_BUCKET, "bucket")
                 .property(ApplicationConfig.LOGIN, "login")
                 .property(ApplicationConfig.PASSWORD, "password")
+                .property(GStorageNutDao.MAX_CONCURRENT_REQUESTS, 4)
                 .build();
     }
 
@@ -132,4 +144,42 @@ public class GStorageTest {
             Assert.assertTrue(res.openStream().execution().toString().length() > 0);
         }
     }
+
+    /**
+     * <p>
+     * Tests that listed objects are prefetched once per generation and read from memory.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void gStoragePrefetchTest() throws Exception {
+        final GStorageNutDao d = new GStorageNutDao();
+        d.init("/path", null, -1, "wuic", "login", "key.p12");
+        d.init(false, true, null);
+        d.setNutTypeFactory(new NutTypeFactory(Charset.defaultCharset().displayName()));
+
+        // Prefetcher must be created by the spy to use the stubbed methods
+        final GStorageNutDao dao = spy(d);
+        dao.prefetch(2);
+
+        final StorageObject object = new StorageObject();
+        object.setName("cloud.css");
+        object.setGeneration(1L);
+        final Objects listing = new Objects();
+        listing.setItems(Arrays.asList(object));
+        doReturn(listing).when(dao).listObjects();
+
+        final String content = ".cloud { text-align : justify;}";
+        doReturn(new ByteArrayInputStream(content.getBytes())).when(dao).openMedia(anyString());
+
+        // Listing twice with the same generation triggers only one download
+        Assert.assertEquals(1, dao.listNutsPaths("cloud.css").size());
+        Assert.assertEquals(1, dao.listNutsPaths("cloud.css").size());
+
+        final Input is = dao.newInputStream("cloud.css", ProcessContext.DEFAULT);
+        Assert.assertEquals(content, IOUtils.readString(new InputStreamReader(is.inputStream())));
+        is.close();
+        verify(dao, times(1)).openMedia(anyString());
+    }
 }
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2016   The authors of WUIC
+ *
+ * License/Terms of Use
+ * Permission is hereby granted, free of charge and for the term of intellectual
+ * property rights on the Software, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify and
+ * propagate free of charge, anywhere in the world, all or part of the Software
+ * subject to the following mandatory conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, PEACEFUL ENJOYMENT,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.github.wuic.nut.dao.spring;
+
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.PathMatcher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ * An immutable index of resource paths stored as a trie of path segments. Children are sorted, so matching paths are
+ * always returned in the same order. Ant-style patterns are matched while walking the trie, pruning the branches
+ * that can't match. Regular expressions are matched against every path.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5.3
+ */
+final class PathIndex {
+
+    /**
+     * The matcher for Ant-style patterns.
+     */
+    private static final PathMatcher ANT_MATCHER = new AntPathMatcher();
+
+    /**
+     * The root of the trie.
+     */
+    private final Node root;
+
+    /**
+     * Number of indexed paths.
+     */
+    private final int size;
+
+    /**
+     * When this index has been built.
+     */
+    private final long builtAt;
+
+    /**
+     * <p>
+     * Builds a new index.
+     * </p>
+     *
+     * @param paths the paths to index, relative to the base path
+     */
+    PathIndex(final Collection<String> paths) {
+        root = new Node();
+        builtAt = System.currentTimeMillis();
+        int count = 0;
+
+        for (final String path : paths) {
+            Node node = root;
+
+            for (final String segment : normalize(path).split("/")) {
+                if (segment.isEmpty()) {
+                    continue;
+                }
+
+                Node child = node.children.get(segment);
+
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(segment, child);
+                }
+
+                node = child;
+            }
+
+            if (node != root && node.path == null) {
+                node.path = path;
+                count++;
+            }
+        }
+
+        size = count;
+    }
+
+    /**
+     * <p>
+     * Gets the paths matching the given Ant-style pattern.
+     * </p>
+     *
+     * @param pattern the pattern relative to the base path
+     * @return the matching paths, in the original form given to the constructor
+     */
+    List<String> match(final String pattern) {
+        final List<String> retval = new ArrayList<String>();
+        collect(root, "", normalize(pattern), retval);
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Gets the paths matching the given regular expression.
+     * </p>
+     *
+     * @param pattern the regular expression matching a path relative to the base path
+     * @return the matching paths, in the original form given to the constructor
+     */
+    List<String> match(final Pattern pattern) {
+        final List<String> retval = new ArrayList<String>();
+        collect(root, "", pattern, retval);
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Gets the number of indexed paths.
+     * </p>
+     *
+     * @return the number of paths
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * <p>
+     * Gets the moment when this index has been built.
+     * </p>
+     *
+     * @return the timestamp
+     */
+    long getBuiltAt() {
+        return builtAt;
+    }
+
+    /**
+     * <p>
+     * Collects the paths under the given node matching the Ant-style pattern.
+     * </p>
+     *
+     * @param node the node
+     * @param prefix the path of the node
+     * @param pattern the pattern
+     * @param retval the list populated with matching paths
+     */
+    private static void collect(final Node node, final String prefix, final String pattern, final List<String> retval) {
+        for (final Map.Entry<String, Node> entry : node.children.entrySet()) {
+            final String path = prefix.isEmpty() ? entry.getKey() : prefix + '/' + entry.getKey();
+            final Node child = entry.getValue();
+
+            if (child.path != null && ANT_MATCHER.match(pattern, path)) {
+                retval.add(child.path);
+            }
+
+            if (!child.children.isEmpty() && ANT_MATCHER.matchStart(pattern, path)) {
+                collect(child, path, pattern, retval);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Collects the paths under the given node matching the regular expression.
+     * </p>
+     *
+     * @param node the node
+     * @param prefix the path of the node
+     * @param pattern the regular expression
+     * @param retval the list populated with matching paths
+     */
+    private static void collect(final Node node, final String prefix, final Pattern pattern, final List<String> retval) {
+        for (final Map.Entry<String, Node> entry : node.children.entrySet()) {
+            final String path = prefix.isEmpty() ? entry.getKey() : prefix + '/' + entry.getKey();
+            final Node child = entry.getValue();
+
+            if (child.path != null && pattern.matcher(path).matches()) {
+                retval.add(child.path);
+            }
+
+            collect(child, path, pattern, retval);
+        }
+    }
+
+    /**
+     * <p>
+     * Removes the leading slash of the given path.
+     * </p>
+     *
+     * @param path the path
+     * @return the path without leading slash
+     */
+    private static String normalize(final String path) {
+        return path.startsWith("/") ? path.substring(1) : path;
+    }
+
+    /**
+     * <p>
+     * A node of the trie.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5.3
+     */
+    private static final class Node {
+
+        /**
+         * The children by segment, sorted.
+         */
+        private final Map<String, Node> children = new TreeMap<String, Node>();
+
+        /**
+         * The original path if this node is an indexed path, {@code null} otherwise.
+         */
+        private String path;
+    }
+}
@@ -25,12 +25,22 @@ package com.github.wuic.nut.dao.spring;
 import com.github.wuic.NutType;
 import com.github.wuic.nut.AbstractNut;
 import com.github.wuic.util.DefaultInput;
-import com.github.wuic.util.FutureLong;
+import com.github.wuic.util.IOUtils;
 import com.github.wuic.util.Input;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.io.Resource;
+import org.springframework.util.ResourceUtils;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.zip.CRC32;
 
 import org.slf4j.Logger;
 
@@ -39,6 +49,13 @@ import org.slf4j.Logger;
  * This {@link com.github.wuic.nut.Nut} is based on the {@link Resource} class from spring framework.
  * </p>
  *
+ * <p>
+ * The version number and the parent file are computed lazily and only once. Resources on the file system are
+ * versioned with their last modification date. Resources inside a JAR are versioned with the CRC and the size of
+ * their entry, read from the JAR directory without opening the entry. Other resources are versioned with a CRC of
+ * their content.
+ * </p>
+ *
  * @author Guillaume DROUET
  * @since 0.5.3
  */
@@ -55,9 +72,14 @@ public class ResourceNut extends AbstractNut {
     private final Resource resource;
 
     /**
-     * The parent.
+     * The parent, {@code null} until resolved.
+     */
+    private volatile String parent;
+
+    /**
+     * If the parent has been resolved.
      */
-    private final String parent;
+    private volatile boolean parentResolved;
 
     /**
      * The charset.
@@ -75,9 +97,8 @@ public class ResourceNut extends AbstractNut {
      * @param cs the charset
      */
     public ResourceNut(final NutType ft, final String name, final Resource resource, final String cs) {
-        super(name, ft, new FutureLong(getVersionNumber(resource)));
+        super(name, ft, new LazyVersionNumber(resource));
         this.resource = resource;
-        parent = getParent(resource);
         charset = cs;
     }
 
@@ -91,7 +112,19 @@ public class ResourceNut extends AbstractNut {
      */
     private static long getVersionNumber(final Resource resource) {
         try {
-            return resource.lastModified();
+            final URL url = getURL(resource);
+
+            if (url != null && ResourceUtils.isFileURL(url)) {
+                return resource.lastModified();
+            } else if (url != null && ResourceUtils.isJarURL(url)) {
+                final Long retval = getJarEntryVersionNumber(url);
+
+                if (retval != null) {
+                    return retval;
+                }
+            }
+
+            return getContentVersionNumber(resource);
         } catch (IOException ioe) {
             LOGGER.info("Unable to resolve version number of {}", resource.getFilename());
             LOGGER.debug("Detailed error.", ioe);
@@ -101,18 +134,93 @@ public class ResourceNut extends AbstractNut {
 
     /**
      * <p>
-     * Gets the parent file and swallow any {@code IOException}.
+     * Gets the URL of the resource.
      * </p>
      *
      * @param resource the resource
-     * @return the parent, {@code null} if {@code IOException} is thrown
+     * @return the URL, {@code null} if the resource can't be resolved as a URL
+     */
+    private static URL getURL(final Resource resource) {
+        try {
+            return resource.getURL();
+        } catch (IOException ioe) {
+            // In-memory resources have no URL but can be read
+            LOGGER.debug("{} has no URL, its content will be read", resource.getDescription());
+            return null;
+        }
+    }
+
+    /**
+     * <p>
+     * Gets a version number from the CRC and the size of a JAR entry.
+     * </p>
+     *
+     * @param url the URL of the entry
+     * @return the version number, {@code null} if CRC or size are unknown
+     * @throws IOException if the entry can't be read
+     */
+    private static Long getJarEntryVersionNumber(final URL url) throws IOException {
+        final URLConnection connection = url.openConnection();
+
+        if (!(connection instanceof JarURLConnection)) {
+            return null;
+        }
+
+        final JarEntry entry = JarURLConnection.class.cast(connection).getJarEntry();
+
+        if (entry == null || entry.getCrc() == -1L || entry.getSize() == -1L) {
+            return null;
+        }
+
+        return (entry.getCrc() << Integer.SIZE) ^ entry.getSize();
+    }
+
+    /**
+     * <p>
+     * Gets a version number from the CRC of the resource content.
+     * </p>
+     *
+     * @param resource the resource
+     * @return the version number
+     * @throws IOException if the content can't be read
+     */
+    private static long getContentVersionNumber(final Resource resource) throws IOException {
+        final CRC32 crc = new CRC32();
+        final byte[] buffer = new byte[IOUtils.WUIC_BUFFER_LEN];
+        InputStream is = null;
+
+        try {
+            is = resource.getInputStream();
+            int offset;
+
+            while ((offset = is.read(buffer)) != -1) {
+                crc.update(buffer, 0, offset);
+            }
+
+            return crc.getValue();
+        } finally {
+            IOUtils.close(is);
+        }
+    }
+
+    /**
+     * <p>
+     * Gets the parent file and swallow any {@code IOException}. Only resources on the file system have a parent.
+     * </p>
+     *
+     * @param resource the resource
+     * @return the parent, {@code null} if the resource is not on the file system or if {@code IOException} is thrown
      */
     private static String getParent(final Resource resource) {
         try {
+            if (!ResourceUtils.isFileURL(resource.getURL())) {
+                LOGGER.debug("{} is not on the file system and has no parent", resource.getDescription());
+                return null;
+            }
+
             return resource.getFile().getParentFile().getAbsolutePath();
         } catch (IOException ioe) {
-            LOGGER.info("Unable to resolve parent of {}", resource.getFilename());
-            LOGGER.debug("Detailed error.", ioe);
+            LOGGER.debug("Unable to resolve parent of {}", resource.getFilename(), ioe);
             return null;
         }
     }
@@ -130,6 +238,97 @@ public class ResourceNut extends AbstractNut {
      */
     @Override
     public String getParentFile() {
+        if (!parentResolved) {
+            parent = getParent(resource);
+            parentResolved = true;
+        }
+
         return parent;
     }
+
+    /**
+     * <p>
+     * A version number computed on first access.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5.3
+     */
+    private static final class LazyVersionNumber implements Future<Long> {
+
+        /**
+         * The resource, {@code null} once the version number is computed.
+         */
+        private Resource resource;
+
+        /**
+         * The version number, {@code null} until computed.
+         */
+        private volatile Long versionNumber;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param r the resource
+         */
+        private LazyVersionNumber(final Resource r) {
+            resource = r;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean isDone() {
+            return versionNumber != null;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Long get() {
+            Long retval = versionNumber;
+
+            if (retval == null) {
+                synchronized (this) {
+                    retval = versionNumber;
+
+                    if (retval == null) {
+                        retval = getVersionNumber(resource);
+                        versionNumber = retval;
+                        resource = null;
+                    }
+                }
+            }
+
+            return retval;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Long get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException {
+            return get();
+        }
+    }
 }
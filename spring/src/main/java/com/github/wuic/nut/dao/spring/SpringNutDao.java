@@ -25,8 +25,11 @@ package com.github.wuic.nut.dao.spring;
 import com.github.wuic.ApplicationConfig;
 import com.github.wuic.NutType;
 import com.github.wuic.ProcessContext;
+import com.github.wuic.commons.LruCache;
 import com.github.wuic.config.Alias;
+import com.github.wuic.config.BooleanConfigParam;
 import com.github.wuic.config.Config;
+import com.github.wuic.config.IntegerConfigParam;
 import com.github.wuic.config.StringConfigParam;
 import com.github.wuic.exception.WuicException;
 import com.github.wuic.nut.AbstractNutDao;
@@ -35,21 +38,45 @@ import com.github.wuic.nut.dao.NutDaoService;
 import com.github.wuic.nut.dao.servlet.ServletContextHandler;
 import com.github.wuic.util.IOUtils;
 import com.github.wuic.util.Input;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.ResourceLoader;
 import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternUtils;
 import org.springframework.web.context.support.ServletContextResourcePatternResolver;
 
 import javax.servlet.ServletContext;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * <p>
  * This DAO relies on the {@link PathMatchingResourcePatternResolver} from spring framework to access nuts.
  * </p>
  *
+ * <p>
+ * Resolved resources, their existence, as well as the paths matching a pattern, are kept in bounded caches. Cached
+ * values expire after one polling interval, or after {@link #CACHE_TTL} seconds when polling is disabled. The last
+ * modification date is never cached: it's always read from the resource, which also refreshes the cached existence.
+ * </p>
+ *
+ * <p>
+ * In index mode, all the resources under the base path are scanned once and kept in a sorted {@link PathIndex}. Ant
+ * style patterns, or regular expressions when {@link ApplicationConfig#REGEX} is enabled, are then matched in memory.
+ * The index is rebuilt at each polling interval.
+ * </p>
+ *
+ * <p>
+ * The resources are resolved relatively to the {@link ServletContext} when it is {@link #setServletContext(ServletContext)
+ * set}, or with any {@link #setResourceLoader(ResourceLoader) resource loader}. When none of them is set, a default
+ * {@link PathMatchingResourcePatternResolver} is used so the DAO also works outside a servlet container.
+ * </p>
+ *
  * @author Guillaume DROUET
  * @since 0.5.3
  */
@@ -57,26 +84,175 @@ import java.util.List;
 @Alias("spring")
 public class SpringNutDao extends AbstractNutDao implements ServletContextHandler {
 
+    /**
+     * Property key for the maximum number of resolved resources and listed patterns kept in cache.
+     */
+    public static final String CACHE_SIZE = "c.g.wuic.dao.cacheSize";
+
+    /**
+     * Property key for the number of seconds cached values are kept when polling is disabled, a negative value to
+     * keep them until evicted.
+     */
+    public static final String CACHE_TTL = "c.g.wuic.dao.cacheTtl";
+
+    /**
+     * Property key to match patterns against an in-memory index of the resources.
+     */
+    public static final String INDEX = "c.g.wuic.dao.index";
+
+    /**
+     * Default maximum number of entries kept in cache.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+
+    /**
+     * Default number of seconds cached values are kept when polling is disabled.
+     */
+    public static final int DEFAULT_CACHE_TTL = 5;
+
+    /**
+     * The logger.
+     */
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
     /**
      * The resolver.
      */
-    private ResourcePatternResolver resolver;
+    private volatile ResourcePatternResolver resolver;
 
     /**
      * The base path.
      */
     private Resource basePath;
 
+    /**
+     * If the existence of the base path has been checked.
+     */
+    private volatile boolean basePathChecked;
+
+    /**
+     * Resolved resources by path.
+     */
+    private LruCache<String, ResolvedResource> resources =
+            new LruCache<String, ResolvedResource>(DEFAULT_CACHE_SIZE, DEFAULT_CACHE_TTL * 1000L);
+
+    /**
+     * Paths matching each listed pattern.
+     */
+    private LruCache<String, List<String>> listings =
+            new LruCache<String, List<String>>(DEFAULT_CACHE_SIZE, DEFAULT_CACHE_TTL * 1000L);
+
+    /**
+     * Polling interval in seconds.
+     */
+    private int pollingInterval = -1;
+
+    /**
+     * Maximum number of entries in each cache.
+     */
+    private int cacheSize = DEFAULT_CACHE_SIZE;
+
+    /**
+     * Number of seconds cached values are kept when polling is disabled.
+     */
+    private int cacheTtl = DEFAULT_CACHE_TTL;
+
+    /**
+     * Match patterns against an index or not.
+     */
+    private Boolean indexed = Boolean.FALSE;
+
+    /**
+     * Patterns are regular expressions or not.
+     */
+    private Boolean regularExpression = Boolean.FALSE;
+
+    /**
+     * The index of all resources, {@code null} until first listing.
+     */
+    private volatile PathIndex index;
+
+    /**
+     * The metrics listing and polling durations are reported to, {@code null} if not set.
+     */
+    private volatile NutDaoMetrics metrics;
+
     /**
      * <p>
-     * Initialized the base path.
+     * Initialized the base path without polling.
      * </p>
      *
      * @param base the base path
      */
+    public void basePath(final String base) {
+        basePath(base, -1, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * <p>
+     * Initialized the base path, the polling interval and the size of caches.
+     * </p>
+     *
+     * @param base the base path
+     * @param pollingSeconds interval in seconds for polling feature (-1 to disable)
+     * @param size the maximum number of resolved resources and listed patterns kept in cache
+     */
+    @Config
+    public void basePath(@StringConfigParam(defaultValue = "classpath:", propertyKey = ApplicationConfig.BASE_PATH) final String base,
+                         @IntegerConfigParam(defaultValue = -1, propertyKey = ApplicationConfig.POLLING_INTERVAL) final int pollingSeconds,
+                         @IntegerConfigParam(defaultValue = DEFAULT_CACHE_SIZE, propertyKey = CACHE_SIZE) final int size) {
+        super.init(base, null, pollingSeconds);
+        pollingInterval = pollingSeconds;
+        cacheSize = size;
+        createCaches();
+    }
+
+    /**
+     * <p>
+     * Configures how long cached values are kept when polling is disabled.
+     * </p>
+     *
+     * @param ttlSeconds the number of seconds, a negative value to keep values until evicted
+     */
+    @Config
+    public void cacheTtl(@IntegerConfigParam(defaultValue = DEFAULT_CACHE_TTL, propertyKey = CACHE_TTL) final int ttlSeconds) {
+        cacheTtl = ttlSeconds;
+        createCaches();
+    }
+
+    /**
+     * <p>
+     * Creates the caches. Cached values expire at each polling interval, or after the configured time to live when
+     * polling is disabled.
+     * </p>
+     */
+    private void createCaches() {
+        final long ttl;
+
+        if (pollingInterval > 0) {
+            ttl = pollingInterval * 1000L;
+        } else {
+            ttl = cacheTtl < 0 ? -1L : cacheTtl * 1000L;
+        }
+
+        resources = new LruCache<String, ResolvedResource>(cacheSize, ttl);
+        listings = new LruCache<String, List<String>>(cacheSize, ttl);
+    }
+
+    /**
+     * <p>
+     * Configures the index mode. Regular expressions can only be matched against the index, so the index is always
+     * used when they are enabled.
+     * </p>
+     *
+     * @param useIndex match patterns against an index of the resources
+     * @param regex patterns are regular expressions instead of Ant-style patterns
+     */
     @Config
-    public void basePath(@StringConfigParam(defaultValue = "classpath:", propertyKey = ApplicationConfig.BASE_PATH) final String base) {
-        super.init(base, null, -1);
+    public void index(@BooleanConfigParam(defaultValue = false, propertyKey = INDEX) final Boolean useIndex,
+                      @BooleanConfigParam(defaultValue = false, propertyKey = ApplicationConfig.REGEX) final Boolean regex) {
+        indexed = useIndex;
+        regularExpression = regex;
     }
 
     /**
@@ -84,7 +260,45 @@ public class SpringNutDao extends AbstractNutDao implements ServletContextHandle
      */
     @Override
     public void setServletContext(final ServletContext sc) {
-        resolver = new ServletContextResourcePatternResolver(sc);
+        setResolver(new ServletContextResourcePatternResolver(sc));
+    }
+
+    /**
+     * <p>
+     * Resolves the resources with the given loader instead of a servlet context.
+     * </p>
+     *
+     * @param resourceLoader the resource loader
+     */
+    public void setResourceLoader(final ResourceLoader resourceLoader) {
+        setResolver(ResourcePatternUtils.getResourcePatternResolver(resourceLoader));
+    }
+
+    /**
+     * <p>
+     * Reports the listing and polling durations to the given metrics.
+     * </p>
+     *
+     * @param m the metrics
+     */
+    public void setMetrics(final NutDaoMetrics m) {
+        metrics = m;
+    }
+
+    /**
+     * <p>
+     * Sets the resolver and resets the resources resolved with the previous one.
+     * </p>
+     *
+     * @param r the new resolver
+     */
+    private void setResolver(final ResourcePatternResolver r) {
+        resolver = r;
+        basePath = null;
+        basePathChecked = false;
+        index = null;
+        resources.clear();
+        listings.clear();
     }
 
     /**
@@ -102,7 +316,25 @@ public class SpringNutDao extends AbstractNutDao implements ServletContextHandle
     @Override
     protected List<String> listNutsPaths(final String pattern) throws IOException {
         checkBasePath();
-        return toStringList(resolver.getResources(IOUtils.mergePath(getBasePath(), pattern)));
+        List<String> retval = listings.get(pattern);
+
+        if (retval == null) {
+            final long start = System.nanoTime();
+
+            if (regularExpression) {
+                retval = index().match(Pattern.compile(pattern));
+            } else if (indexed) {
+                retval = index().match(pattern);
+            } else {
+                retval = toStringList(resolver.getResources(IOUtils.mergePath(getBasePath(), pattern)));
+            }
+
+            retval = Collections.unmodifiableList(retval);
+            listings.put(pattern, retval);
+            record(NutDaoMetrics.DAO_LISTING, start);
+        }
+
+        return new ArrayList<String>(retval);
     }
 
     /**
@@ -111,7 +343,7 @@ public class SpringNutDao extends AbstractNutDao implements ServletContextHandle
     @Override
     protected Nut accessFor(final String realPath, final NutType type, final ProcessContext processContext) throws IOException {
         checkBasePath();
-        return new ResourceNut(type, realPath, resolver.getResource(IOUtils.mergePath(getBasePath(), realPath)), getCharset());
+        return new ResourceNut(type, realPath, resolve(realPath).resource, getCharset());
     }
 
     /**
@@ -120,7 +352,7 @@ public class SpringNutDao extends AbstractNutDao implements ServletContextHandle
     @Override
     public Input newInputStream(final String path, final ProcessContext processContext) throws IOException {
         checkBasePath();
-        return newInput(resolver.getResource(IOUtils.mergePath(getBasePath(), path)).getInputStream());
+        return newInput(resolve(path).resource.getInputStream());
     }
 
     /**
@@ -129,7 +361,7 @@ public class SpringNutDao extends AbstractNutDao implements ServletContextHandle
     @Override
     public Boolean exists(final String path, final ProcessContext processContext) throws IOException {
         checkBasePath();
-        return resolver.getResource(IOUtils.mergePath(getBasePath(), path)).exists();
+        return resolve(path).exists();
     }
 
     /**
@@ -138,7 +370,28 @@ public class SpringNutDao extends AbstractNutDao implements ServletContextHandle
     @Override
     protected Long getLastUpdateTimestampFor(final String path) throws IOException {
         checkBasePath();
-        return resolver.getResource(IOUtils.mergePath(getBasePath(), path)).lastModified();
+        final long start = System.nanoTime();
+
+        // Polling must detect changes: read the resource and refresh the cached existence
+        final Long retval = resolve(path).refresh();
+        record(NutDaoMetrics.DAO_POLLING, start);
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Records the time elapsed since the given start in the timer with the given name, if metrics are set.
+     * </p>
+     *
+     * @param timer the timer name
+     * @param start the start in nanoseconds
+     */
+    private void record(final String timer, final long start) {
+        final NutDaoMetrics m = metrics;
+
+        if (m != null) {
+            m.record(timer, System.nanoTime() - start);
+        }
     }
 
     /**
@@ -152,10 +405,10 @@ public class SpringNutDao extends AbstractNutDao implements ServletContextHandle
      */
     private List<String> toStringList(final Resource ... resources) throws IOException {
         final List<String> retval = new ArrayList<String>(resources.length);
+        final String base = basePath.getURL().toString();
 
         for (final Resource resource : resources) {
             final String url = resource.getURL().toString();
-            final String base = basePath.getURL().toString();
             final int basePathIndex = url.indexOf(base);
             retval.add(basePathIndex == -1 ? resource.getFilename() : url.substring(basePathIndex + base.length()));
         }
@@ -165,14 +418,19 @@ public class SpringNutDao extends AbstractNutDao implements ServletContextHandle
 
     /**
      * <p>
-     * Checks that {@link #resolver} has been initialized. If the member is not {@code null}, the method checks if the
-     * base path has been initialized and do it it's not the case. Then checks that it exists.
+     * Checks that {@link #resolver} has been initialized, falling back to a {@link PathMatchingResourcePatternResolver}
+     * otherwise. Then the method checks if the base path has been initialized and do it it's not the case. Then checks
+     * that it exists.
      * </p>
      */
     private void checkBasePath() {
         if (resolver == null) {
-            WuicException.throwBadStateException(new IllegalArgumentException(
-                    String.format("%s not initialized. Seems setServletContext(ServletContext) has not been called", getClass().getName())));
+            log.debug("No servlet context or resource loader set, resolving resources with the default class loader");
+            resolver = new PathMatchingResourcePatternResolver();
+        }
+
+        if (basePathChecked) {
+            return;
         }
 
         if (basePath == null) {
@@ -182,5 +440,137 @@ public class SpringNutDao extends AbstractNutDao implements ServletContextHandle
         if (!basePath.exists()) {
             WuicException.throwBadArgumentException(new IllegalArgumentException(String.format("%s does not exists.", getBasePath())));
         }
+
+        basePathChecked = true;
+    }
+
+    /**
+     * <p>
+     * Gets the index of all resources under the base path, building it if it does not exist or if it is older than
+     * the polling interval.
+     * </p>
+     *
+     * @return the index
+     * @throws IOException if resources can't be listed
+     */
+    private PathIndex index() throws IOException {
+        PathIndex retval = index;
+
+        if (retval == null || isExpired(retval)) {
+            synchronized (this) {
+                retval = index;
+
+                if (retval == null || isExpired(retval)) {
+                    final List<Resource> files = new ArrayList<Resource>();
+
+                    for (final Resource resource : resolver.getResources(IOUtils.mergePath(getBasePath(), "**/*"))) {
+                        // Skip directories
+                        if (resource.isReadable() && !resource.getURL().toString().endsWith("/")) {
+                            files.add(resource);
+                        }
+                    }
+
+                    retval = new PathIndex(toStringList(files.toArray(new Resource[files.size()])));
+                    log.debug("{} paths indexed under {}", retval.size(), getBasePath());
+                    index = retval;
+                }
+            }
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Indicates if the given index is older than the polling interval.
+     * </p>
+     *
+     * @param pathIndex the index
+     * @return {@code true} if the index must be rebuilt
+     */
+    private boolean isExpired(final PathIndex pathIndex) {
+        return pollingInterval > 0 && System.currentTimeMillis() - pathIndex.getBuiltAt() > pollingInterval * 1000L;
+    }
+
+    /**
+     * <p>
+     * Resolves the resource for the given path, reusing the cached resource if any.
+     * </p>
+     *
+     * @param path the path relative to the base path
+     * @return the resolved resource
+     */
+    private ResolvedResource resolve(final String path) {
+        ResolvedResource retval = resources.get(path);
+
+        if (retval == null) {
+            retval = new ResolvedResource(resolver.getResource(IOUtils.mergePath(getBasePath(), path)));
+            resources.put(path, retval);
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * A resolved resource with its existence computed once.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5.3
+     */
+    private static final class ResolvedResource {
+
+        /**
+         * The resource.
+         */
+        private final Resource resource;
+
+        /**
+         * If the resource exists, {@code null} until computed.
+         */
+        private volatile Boolean exists;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param r the resource
+         */
+        private ResolvedResource(final Resource r) {
+            resource = r;
+        }
+
+        /**
+         * <p>
+         * Indicates if the resource exists.
+         * </p>
+         *
+         * @return {@code true} if the resource exists
+         */
+        private boolean exists() {
+            Boolean retval = exists;
+
+            if (retval == null) {
+                retval = resource.exists();
+                exists = retval;
+            }
+
+            return retval;
+        }
+
+        /**
+         * <p>
+         * Reads the existence from the resource and keeps it, then reads the last modification date.
+         * </p>
+         *
+         * @return the last modification date
+         * @throws IOException if the date can't be resolved
+         */
+        private long refresh() throws IOException {
+            exists = resource.exists();
+            return resource.lastModified();
+        }
     }
 }
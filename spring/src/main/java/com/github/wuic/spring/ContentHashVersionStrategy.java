@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2016   The authors of WUIC
+ *
+ * License/Terms of Use
+ * Permission is hereby granted, free of charge and for the term of intellectual
+ * property rights on the Software, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify and
+ * propagate free of charge, anywhere in the world, all or part of the Software
+ * subject to the following mandatory conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, PEACEFUL ENJOYMENT,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.github.wuic.spring;
+
+import com.github.wuic.commons.LruCache;
+import com.github.wuic.util.IOUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * This strategy gets the version from a hash of the resource content. Unlike a timestamp, the hash is the same on all
+ * the nodes of a cluster serving the same content, which keeps the URLs stable behind a load balancer or a CDN.
+ * </p>
+ *
+ * <p>
+ * The hash is computed once per resource version and kept in a bounded cache, keyed by workflow, resource and version.
+ * When the content of the resource is already in memory (see {@link WuicResource#getByteBuffer()}), the hash is
+ * computed immediately. Otherwise, the content is read and hashed asynchronously and {@code null} is returned until the
+ * hash is available: the URL is then generated without version, so URL generation never waits for the content to be
+ * read and never exposes a version that differs from the content hash.
+ * </p>
+ *
+ * <p>
+ * The content is hashed by the given {@link Executor}, or by a single thread owned by this instance and stopped when
+ * the bean is {@link #destroy() destroyed}.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5.3
+ */
+public class ContentHashVersionStrategy extends WuicVersionStrategy implements DisposableBean {
+
+    /**
+     * Default maximum number of hashes kept in cache.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+
+    /**
+     * Thread counter.
+     */
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    /**
+     * The computed hashes by resource version.
+     */
+    private final LruCache<String, String> hashes;
+
+    /**
+     * The resource versions being hashed.
+     */
+    private final ConcurrentMap<String, Boolean> pending;
+
+    /**
+     * The executor hashing the content asynchronously, {@code null} to use an owned single thread.
+     */
+    private final Executor executor;
+
+    /**
+     * The owned executor, {@code null} until created.
+     */
+    private ExecutorService ownedExecutor;
+
+    /**
+     * Indicates if this bean has been destroyed.
+     */
+    private boolean destroyed;
+
+    /**
+     * <p>
+     * Builds a new instance with a default cache size.
+     * </p>
+     */
+    public ContentHashVersionStrategy() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param cacheSize the maximum number of hashes kept in cache
+     */
+    public ContentHashVersionStrategy(final int cacheSize) {
+        this(cacheSize, null);
+    }
+
+    /**
+     * <p>
+     * Builds a new instance hashing the content with the given executor. The executor is not stopped when this bean
+     * is destroyed.
+     * </p>
+     *
+     * @param cacheSize the maximum number of hashes kept in cache
+     * @param e the executor, {@code null} to use a single thread owned by this instance
+     */
+    public ContentHashVersionStrategy(final int cacheSize, final Executor e) {
+        hashes = new LruCache<String, String>(cacheSize, -1L);
+        pending = new ConcurrentHashMap<String, Boolean>();
+        executor = e;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void destroy() {
+        synchronized (this) {
+            destroyed = true;
+
+            if (ownedExecutor != null) {
+                ownedExecutor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getResourceVersion(final Resource resource) {
+        final String key;
+
+        try {
+            final String workflowId =
+                    resource instanceof WuicResource ? WuicResource.class.cast(resource).getWorkflowId() : null;
+            key = (workflowId == null ? "" : workflowId) + '|' + resource.getDescription() + '@' + resource.lastModified();
+        } catch (IOException ioe) {
+            logger.warn("Unable to retrieve version number.", ioe);
+            return null;
+        }
+
+        final String hash = hashes.get(key);
+
+        if (hash != null) {
+            return hash;
+        }
+
+        final ByteBuffer buffer = resource instanceof WuicResource ? WuicResource.class.cast(resource).getByteBuffer() : null;
+
+        if (buffer != null) {
+            final MessageDigest md = newDigest();
+            md.update(buffer);
+            final String retval = toVersion(md.digest());
+            hashes.put(key, retval);
+            return retval;
+        }
+
+        if (pending.putIfAbsent(key, Boolean.TRUE) == null) {
+            try {
+                executor().execute(new Runnable() {
+
+                    /**
+                     * {@inheritDoc}
+                     */
+                    @Override
+                    public void run() {
+                        try {
+                            hashes.put(key, hash(resource));
+                        } catch (IOException ioe) {
+                            logger.warn(String.format("Unable to hash content of %s", resource.getDescription()), ioe);
+                        } finally {
+                            pending.remove(key);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException ree) {
+                // Bean has been destroyed
+                pending.remove(key);
+            }
+        }
+
+        // Hash may have been computed synchronously by the executor, no version is exposed otherwise
+        return hashes.get(key);
+    }
+
+    /**
+     * <p>
+     * Reads the content of the given resource and computes its hash.
+     * </p>
+     *
+     * @param resource the resource
+     * @return the version computed from the hash
+     * @throws IOException if the content can't be read
+     */
+    private String hash(final Resource resource) throws IOException {
+        final MessageDigest md = newDigest();
+        final byte[] buffer = new byte[IOUtils.WUIC_BUFFER_LEN];
+        InputStream is = null;
+
+        try {
+            is = resource.getInputStream();
+            int offset;
+
+            while ((offset = is.read(buffer)) != -1) {
+                md.update(buffer, 0, offset);
+            }
+        } finally {
+            IOUtils.close(is);
+        }
+
+        return toVersion(md.digest());
+    }
+
+    /**
+     * <p>
+     * Converts the given digest to a positive number built from its first 8 bytes.
+     * </p>
+     *
+     * @param digest the digest
+     * @return the version
+     */
+    private String toVersion(final byte[] digest) {
+        long retval = 0L;
+
+        for (int i = 0; i < Long.SIZE / Byte.SIZE; i++) {
+            retval = (retval << Byte.SIZE) | (digest[i] & 0xFF);
+        }
+
+        return String.valueOf(retval & Long.MAX_VALUE);
+    }
+
+    /**
+     * <p>
+     * Creates a new MD5 digest.
+     * </p>
+     *
+     * @return the digest
+     */
+    private MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException nsae) {
+            // MD5 is always supported by the JVM
+            throw new IllegalStateException(nsae);
+        }
+    }
+
+    /**
+     * <p>
+     * Gets the executor hashing the content, creating the owned one if necessary.
+     * </p>
+     *
+     * @return the executor
+     * @throws RejectedExecutionException if the bean has been destroyed
+     */
+    private Executor executor() {
+        if (executor != null) {
+            return executor;
+        }
+
+        synchronized (this) {
+            if (destroyed) {
+                throw new RejectedExecutionException("Strategy has been destroyed");
+            }
+
+            if (ownedExecutor == null) {
+                ownedExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+                    /**
+                     * {@inheritDoc}
+                     */
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        final Thread thread = new Thread(r, "wuic-content-hash-" + THREAD_COUNT.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+
+            return ownedExecutor;
+        }
+    }
+}
@@ -22,28 +22,56 @@
 
 package com.github.wuic.spring;
 
+import com.github.wuic.commons.LruCache;
+import com.github.wuic.commons.PrecompiledManifest;
 import com.github.wuic.nut.ConvertibleNut;
 import com.github.wuic.util.IOUtils;
+import com.github.wuic.util.NutUtils;
 import com.github.wuic.util.UrlProvider;
 import com.github.wuic.util.UrlProviderFactory;
 import org.springframework.web.servlet.resource.ResourceUrlProvider;
 
+import java.util.concurrent.Future;
+
 /**
  * <p>
  * The helper is a bridge between the {@code ResourceUrlProvider} from spring and the {@code UrlProvider} which helps
  * to resolve URLs inside WUIC.
  * </p>
  *
+ * <p>
+ * Resolving a URL with spring walks the resolver chain and the version strategy. Since a page usually refers the same
+ * nuts again and again, the URLs are kept in a bounded cache by workflow context path and nut name. An entry is
+ * recomputed when the version number of the nut changes. The version number is not computed again as long as the nut
+ * returns the same {@link java.util.concurrent.Future} instance for it. When the nuts are
+ * {@link #setPrecompiled(PrecompiledManifest) precompiled}, the version number is read from the manifest instead.
+ * </p>
+ *
  * @author Guillaume DROUET
  * @since 0.5.0
  */
 public class ResourceUrlProviderHelperFactory implements UrlProviderFactory {
 
+    /**
+     * Default maximum number of URLs kept in cache.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 2048;
+
     /**
      * The spring provider.
      */
     private ResourceUrlProvider resourceUrlProvider;
 
+    /**
+     * The resolved URLs.
+     */
+    private final LruCache<String, VersionedUrl> urls;
+
+    /**
+     * The manifest of the precompiled nuts, {@code null} if not set.
+     */
+    private volatile PrecompiledManifest precompiledManifest;
+
     /**
      * <p>
      * Builds a new instance.
@@ -52,7 +80,33 @@ public class ResourceUrlProviderHelperFactory implements UrlProviderFactory {
      * @param rup the spring provider
      */
     public ResourceUrlProviderHelperFactory(final ResourceUrlProvider rup) {
+        this(rup, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param rup the spring provider
+     * @param cacheSize the maximum number of URLs kept in cache
+     */
+    public ResourceUrlProviderHelperFactory(final ResourceUrlProvider rup, final int cacheSize) {
         this.resourceUrlProvider = rup;
+        this.urls = new LruCache<String, VersionedUrl>(cacheSize, -1L);
+    }
+
+    /**
+     * <p>
+     * Reads the version numbers of the precompiled nuts from the given manifest, for instance the one of the
+     * {@link WuicPathResourceResolver#getPrecompiledManifest() resolver}.
+     * </p>
+     *
+     * @param manifest the manifest, {@code null} to compute all the version numbers
+     */
+    public void setPrecompiled(final PrecompiledManifest manifest) {
+        precompiledManifest = manifest;
+        urls.clear();
     }
 
     /**
@@ -90,6 +144,11 @@ public class ResourceUrlProviderHelperFactory implements UrlProviderFactory {
          */
         private final String workflowContextPath;
 
+        /**
+         * The workflow ID, last segment of the workflow context path.
+         */
+        private final String workflowId;
+
         /**
          * <p>
          * Builds a new instance.
@@ -99,6 +158,7 @@ public class ResourceUrlProviderHelperFactory implements UrlProviderFactory {
          */
         private UrlProviderHelper(final String wcp) {
             workflowContextPath = wcp;
+            workflowId = wcp.substring(wcp.lastIndexOf('/') + 1);
         }
 
         /**
@@ -106,7 +166,83 @@ public class ResourceUrlProviderHelperFactory implements UrlProviderFactory {
          */
         @Override
         public String getUrl(final ConvertibleNut nut) {
-            return get(IOUtils.mergePath(workflowContextPath, nut.getName()));
+            final String key = workflowContextPath + '|' + nut.getName();
+            final VersionedUrl cached = urls.get(key);
+            final PrecompiledManifest manifest = precompiledManifest;
+            final Long precompiledVersion = manifest == null ? null : manifest.getVersionNumber(workflowId, nut.getName());
+            final Future<Long> future;
+            final long version;
+
+            if (precompiledVersion != null) {
+                future = null;
+                version = precompiledVersion;
+            } else {
+                future = nut.getVersionNumber();
+
+                // Same future, same version: nothing to compute
+                if (cached != null && cached.future == future) {
+                    return cached.url;
+                }
+
+                version = NutUtils.getVersionNumber(nut);
+            }
+
+            if (cached != null && cached.version == version) {
+                if (cached.future != future) {
+                    urls.put(key, new VersionedUrl(future, version, cached.url));
+                }
+
+                return cached.url;
+            }
+
+            final String retval = get(IOUtils.mergePath(workflowContextPath, nut.getName()));
+
+            if (retval != null) {
+                urls.put(key, new VersionedUrl(future, version, retval));
+            }
+
+            return retval;
+        }
+    }
+
+    /**
+     * <p>
+     * A resolved URL with the version number of the nut it has been resolved for.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5.3
+     */
+    private static final class VersionedUrl {
+
+        /**
+         * The future the version number has been read from, {@code null} if read from the manifest.
+         */
+        private final Future<Long> future;
+
+        /**
+         * The version number.
+         */
+        private final long version;
+
+        /**
+         * The URL.
+         */
+        private final String url;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param f the future the version number has been read from
+         * @param v the version number
+         * @param u the URL
+         */
+        private VersionedUrl(final Future<Long> f, final long v, final String u) {
+            future = f;
+            version = v;
+            url = u;
         }
     }
 }
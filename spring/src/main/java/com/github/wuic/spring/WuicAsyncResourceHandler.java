@@ -0,0 +1,475 @@
+/*
+ * Copyright (c) 2016   The authors of WUIC
+ *
+ * License/Terms of Use
+ * Permission is hereby granted, free of charge and for the term of intellectual
+ * property rights on the Software, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify and
+ * propagate free of charge, anywhere in the world, all or part of the Software
+ * subject to the following mandatory conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, PEACEFUL ENJOYMENT,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.github.wuic.spring;
+
+import com.github.wuic.util.IOUtils;
+import com.github.wuic.util.UrlMatcher;
+import com.github.wuic.util.UrlUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.io.Resource;
+import org.springframework.web.HttpRequestHandler;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * This {@link HttpRequestHandler} serves WUIC resources with the asynchronous processing of the servlet API. The
+ * container thread only starts the asynchronous context: the workflow runs and the response is written by a bounded
+ * pool of worker threads. When all workers are busy and the queue is full, the request is rejected with a
+ * {@code 503} status instead of piling up.
+ * </p>
+ *
+ * <p>
+ * Resources are resolved with a {@link WuicPathResourceResolver}, so the immutable payloads and the pre-compressed
+ * variants it caches are reused. When the request does not support asynchronous processing, the resource is served by
+ * the calling thread. An {@link AsyncListener} tracks the asynchronous context: after a timeout or an error, the
+ * request is answered by the listener and a worker that did not start yet skips it.
+ * </p>
+ *
+ * <p>
+ * The ETag and, when the version number of the resource is a timestamp, the {@code Last-Modified} header are sent.
+ * A pre-compressed variant has its own {@link WuicEncodedResource#getETag() ETag}, distinct from the identity one.
+ * Conditional requests are answered with a {@code 304} status: {@code If-None-Match} is compared with the weak
+ * comparison and accepts {@code *}, {@code If-Modified-Since} is used only when {@code If-None-Match} is absent. A
+ * resource requested with a version number in its path never changes and is sent with a long-lived immutable
+ * {@code Cache-Control} header, other resources must be revalidated.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5.3
+ */
+public class WuicAsyncResourceHandler implements HttpRequestHandler, DisposableBean {
+
+    /**
+     * Default maximum number of requests waiting for a worker.
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 256;
+
+    /**
+     * Default timeout in milliseconds of the asynchronous processing.
+     */
+    public static final long DEFAULT_TIMEOUT = 30000L;
+
+    /**
+     * {@code Cache-Control} value of a resource requested with a version number.
+     */
+    public static final String CACHE_CONTROL_VERSIONED = "public, max-age=31536000, immutable";
+
+    /**
+     * {@code Cache-Control} value of a resource requested without version number.
+     */
+    public static final String CACHE_CONTROL_UNVERSIONED = "no-cache";
+
+    /**
+     * Thread counter.
+     */
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    /**
+     * The logger.
+     */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * Helps to retrieve the lookup path when the request has not been dispatched by a handler mapping.
+     */
+    private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+    /**
+     * The resolver.
+     */
+    private final WuicPathResourceResolver resolver;
+
+    /**
+     * The workers.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * The timeout in milliseconds of the asynchronous processing.
+     */
+    private final long timeout;
+
+    /**
+     * The metrics rejected requests are reported to, {@code null} if not set.
+     */
+    private volatile WuicMetrics metrics;
+
+    /**
+     * <p>
+     * Builds a new instance with one worker per available processor and default queue size and timeout.
+     * </p>
+     *
+     * @param r the resolver
+     */
+    public WuicAsyncResourceHandler(final WuicPathResourceResolver r) {
+        this(r, Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_SIZE, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param r the resolver
+     * @param poolSize the number of workers
+     * @param queueSize the maximum number of requests waiting for a worker
+     * @param timeoutMillis the timeout in milliseconds of the asynchronous processing
+     */
+    public WuicAsyncResourceHandler(final WuicPathResourceResolver r,
+                                    final int poolSize,
+                                    final int queueSize,
+                                    final long timeoutMillis) {
+        resolver = r;
+        timeout = timeoutMillis;
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "wuic-async-resource-" + THREAD_COUNT.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * <p>
+     * Reports the rejected requests to the given metrics.
+     * </p>
+     *
+     * @param m the metrics
+     */
+    public void setMetrics(final WuicMetrics m) {
+        metrics = m;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void handleRequest(final HttpServletRequest request, final HttpServletResponse response)
+            throws ServletException, IOException {
+        final String attribute = (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
+        final String path = attribute != null ? attribute : urlPathHelper.getLookupPathForRequest(request);
+
+        if (!request.isAsyncSupported()) {
+            serve(request, response, path);
+            return;
+        }
+
+        final AsyncContext asyncContext = request.startAsync(request, response);
+        final AtomicBoolean done = new AtomicBoolean();
+        asyncContext.setTimeout(timeout);
+        asyncContext.addListener(new AsyncListener() {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void onComplete(final AsyncEvent event) {
+                done.set(true);
+            }
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void onTimeout(final AsyncEvent event) throws IOException {
+                if (done.compareAndSet(false, true)) {
+                    logger.warn("Timeout while serving {}", path);
+                    final HttpServletResponse r = HttpServletResponse.class.cast(event.getAsyncContext().getResponse());
+
+                    if (!r.isCommitted()) {
+                        r.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                    }
+
+                    event.getAsyncContext().complete();
+                }
+            }
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void onError(final AsyncEvent event) {
+                if (done.compareAndSet(false, true)) {
+                    logger.warn(String.format("Error while serving %s", path), event.getThrowable());
+                    event.getAsyncContext().complete();
+                }
+            }
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void onStartAsync(final AsyncEvent event) {
+                // Nothing to do
+            }
+        });
+
+        try {
+            executor.execute(new Runnable() {
+
+                /**
+                 * {@inheritDoc}
+                 */
+                @Override
+                public void run() {
+                    // Timeout or error already answered the request
+                    if (done.get()) {
+                        logger.debug("Skipping {}, asynchronous processing is over", path);
+                        return;
+                    }
+
+                    try {
+                        serve(HttpServletRequest.class.cast(asyncContext.getRequest()),
+                                HttpServletResponse.class.cast(asyncContext.getResponse()),
+                                path);
+                    } catch (IOException ioe) {
+                        logger.warn(String.format("Unable to serve %s", path), ioe);
+                    } catch (RuntimeException re) {
+                        if (done.get()) {
+                            // Asynchronous context has been completed by the container meanwhile
+                            logger.debug(String.format("Unable to serve %s", path), re);
+                        } else {
+                            logger.error(String.format("Unable to serve %s", path), re);
+                            sendServerError(HttpServletResponse.class.cast(asyncContext.getResponse()), path);
+                        }
+                    } finally {
+                        if (done.compareAndSet(false, true)) {
+                            asyncContext.complete();
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            logger.warn("Too many pending requests, {} is rejected", path);
+            final WuicMetrics m = metrics;
+
+            if (m != null) {
+                m.increment(WuicMetrics.ASYNC_REJECTED);
+            }
+
+            if (done.compareAndSet(false, true)) {
+                response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                asyncContext.complete();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * <p>
+     * Resolves the resource and writes it to the response.
+     * </p>
+     *
+     * @param request the request
+     * @param response the response
+     * @param path the path of the resource
+     * @throws IOException if the response can't be written
+     */
+    private void serve(final HttpServletRequest request, final HttpServletResponse response, final String path)
+            throws IOException {
+        final Resource resource = resolver.resolveResource(request, path, null, null);
+
+        if (resource == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        final WuicEncodedResource encoded = resource instanceof WuicEncodedResource ?
+                WuicEncodedResource.class.cast(resource) : null;
+        final WuicResource original = encoded != null ? encoded.getOriginal() : WuicResource.class.cast(resource);
+        final String eTag = encoded != null ? encoded.getETag() : original.getETag();
+        final long lastModified = original.lastModified();
+
+        // A version number in the future or not positive is not a timestamp
+        final boolean timestamp = lastModified > 0L && lastModified <= System.currentTimeMillis();
+
+        if (eTag != null) {
+            response.setHeader("ETag", eTag);
+        }
+
+        if (timestamp) {
+            response.setDateHeader("Last-Modified", lastModified);
+        }
+
+        response.setHeader("Cache-Control", isVersioned(path) ? CACHE_CONTROL_VERSIONED : CACHE_CONTROL_UNVERSIONED);
+        response.setHeader("Vary", "Accept-Encoding");
+
+        if (isNotModified(request, eTag, timestamp ? lastModified : -1L)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        final String mimeType = request.getServletContext().getMimeType(resource.getFilename());
+
+        if (mimeType != null) {
+            response.setContentType(mimeType);
+        }
+
+        if (encoded != null) {
+            response.setHeader("Content-Encoding", encoded.getContentEncoding());
+        }
+
+        response.setContentLength((int) resource.contentLength());
+        InputStream is = null;
+
+        try {
+            is = resource.getInputStream();
+            IOUtils.copyStream(is, response.getOutputStream());
+        } finally {
+            IOUtils.close(is);
+        }
+    }
+
+    /**
+     * <p>
+     * Answers with a {@code 500} status if the response is not committed yet.
+     * </p>
+     *
+     * @param response the response
+     * @param path the path of the resource
+     */
+    private void sendServerError(final HttpServletResponse response, final String path) {
+        try {
+            if (!response.isCommitted()) {
+                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+        } catch (IOException ioe) {
+            logger.debug(String.format("Unable to send error for %s", path), ioe);
+        } catch (IllegalStateException ise) {
+            logger.debug(String.format("Unable to send error for %s", path), ise);
+        }
+    }
+
+    /**
+     * <p>
+     * Indicates if the client already has the representation. When the request has an {@code If-None-Match} header,
+     * the ETags it lists are compared with the weak comparison and {@code *} matches any ETag. Otherwise the
+     * {@code If-Modified-Since} header is compared with the last modification date.
+     * </p>
+     *
+     * @param request the request
+     * @param eTag the ETag of the resource, {@code null} if not available
+     * @param lastModified the last modification date, {@code -1} if not available
+     * @return {@code true} if the resource has not been modified, {@code false} otherwise
+     */
+    private boolean isNotModified(final HttpServletRequest request, final String eTag, final long lastModified) {
+        final String ifNoneMatch = request.getHeader("If-None-Match");
+
+        if (ifNoneMatch != null) {
+            if (eTag == null) {
+                return false;
+            }
+
+            final String opaque = opaqueTag(eTag);
+
+            for (final String tag : ifNoneMatch.split(",")) {
+                final String trimmed = tag.trim();
+
+                if ("*".equals(trimmed) || opaque.equals(opaqueTag(trimmed))) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        if (lastModified == -1L) {
+            return false;
+        }
+
+        final long ifModifiedSince;
+
+        try {
+            ifModifiedSince = request.getDateHeader("If-Modified-Since");
+        } catch (IllegalArgumentException iae) {
+            // Invalid date is ignored
+            return false;
+        }
+
+        // HTTP dates have a precision of one second
+        return ifModifiedSince != -1L && lastModified / 1000L <= ifModifiedSince / 1000L;
+    }
+
+    /**
+     * <p>
+     * Removes the weak indicator from the given entity tag.
+     * </p>
+     *
+     * @param tag the entity tag
+     * @return the opaque tag
+     */
+    private static String opaqueTag(final String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    /**
+     * <p>
+     * Indicates if the given path contains a version number.
+     * </p>
+     *
+     * @param path the path
+     * @return {@code true} if a version number is in the path, {@code false} otherwise
+     */
+    private static boolean isVersioned(final String path) {
+        try {
+            final UrlMatcher matcher = UrlUtils.urlMatcher(path);
+            return matcher.matches() && matcher.getVersionNumber() != null;
+        } catch (UnsupportedEncodingException uee) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2016   The authors of WUIC
+ *
+ * License/Terms of Use
+ * Permission is hereby granted, free of charge and for the term of intellectual
+ * property rights on the Software, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify and
+ * propagate free of charge, anywhere in the world, all or part of the Software
+ * subject to the following mandatory conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, PEACEFUL ENJOYMENT,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.github.wuic.spring;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.web.servlet.resource.EncodedResource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * A pre-compressed variant of a {@link WuicResource}. The encoded content is computed once and served from memory.
+ * Spring uses the {@link EncodedResource} contract to set the {@code Content-Encoding} header of the response.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5.3
+ */
+public class WuicEncodedResource extends AbstractResource implements EncodedResource {
+
+    /**
+     * The original resource.
+     */
+    private final WuicResource original;
+
+    /**
+     * The content coding.
+     */
+    private final String contentEncoding;
+
+    /**
+     * The encoded content.
+     */
+    private final byte[] content;
+
+    /**
+     * <p>
+     * Builds a new instance. The given array must not be modified.
+     * </p>
+     *
+     * @param o the original resource
+     * @param encoding the content coding
+     * @param c the encoded content
+     */
+    public WuicEncodedResource(final WuicResource o, final String encoding, final byte[] c) {
+        original = o;
+        contentEncoding = encoding;
+        content = c;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getDescription() {
+        return original.getDescription() + " (" + contentEncoding + ')';
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return new ByteArrayInputStream(content);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getFilename() {
+        return original.getFilename();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long contentLength() {
+        return content.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long lastModified() throws IOException {
+        return original.lastModified();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Resource createRelative(final String relativePath) throws IOException {
+        return original.createRelative(relativePath);
+    }
+
+    /**
+     * <p>
+     * Gets the ETag of this variant: the ETag of the original resource suffixed with the content coding. Each
+     * representation of a resource varying on {@code Accept-Encoding} must have its own strong validator.
+     * </p>
+     *
+     * @return the quoted ETag, {@code null} if the original resource has no ETag
+     */
+    public String getETag() {
+        final String eTag = original.getETag();
+
+        if (eTag == null) {
+            return null;
+        }
+
+        // Suffix is inserted before the closing quote
+        return eTag.endsWith("\"") ?
+                eTag.substring(0, eTag.length() - 1) + '-' + contentEncoding + '"' : eTag + '-' + contentEncoding;
+    }
+
+    /**
+     * <p>
+     * Gets a read-only view of the encoded content. No copy of the content is made.
+     * </p>
+     *
+     * @return the buffer
+     */
+    public ByteBuffer getByteBuffer() {
+        return ByteBuffer.wrap(content).asReadOnlyBuffer();
+    }
+
+    /**
+     * <p>
+     * Gets the resource this variant has been encoded from.
+     * </p>
+     *
+     * @return the original resource
+     */
+    public WuicResource getOriginal() {
+        return original;
+    }
+}
@@ -67,7 +67,21 @@ public class WuicFacadeBuilderFactory {
      * @return the {@link WuicFacadeBuilder}
      */
     public WuicFacadeBuilder create() {
-        final WuicFacadeBuilder retval = new WuicFacadeBuilder(WuicServletContextListener.getWuicFacadeBuilder(servletContext));
+        return configure(new WuicFacadeBuilder(WuicServletContextListener.getWuicFacadeBuilder(servletContext)),
+                applicationContext);
+    }
+
+    /**
+     * <p>
+     * Configures the given builder according to the components discovered in the given application context. This
+     * method does not need any servlet context and can be used to build a facade outside a web container.
+     * </p>
+     *
+     * @param retval the builder to configure
+     * @param applicationContext the application context
+     * @return the given builder
+     */
+    public static WuicFacadeBuilder configure(final WuicFacadeBuilder retval, final ApplicationContext applicationContext) {
 
         // Additional configurators
         final Map<String, ContextBuilderConfigurator> configurators = applicationContext.getBeansOfType(ContextBuilderConfigurator.class);
@@ -0,0 +1,378 @@
+/*
+ * Copyright (c) 2016   The authors of WUIC
+ *
+ * License/Terms of Use
+ * Permission is hereby granted, free of charge and for the term of intellectual
+ * property rights on the Software, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify and
+ * propagate free of charge, anywhere in the world, all or part of the Software
+ * subject to the following mandatory conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, PEACEFUL ENJOYMENT,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.github.wuic.spring;
+
+import com.github.wuic.WuicFacade;
+import com.github.wuic.config.ObjectBuilderInspector;
+import com.github.wuic.exception.WuicException;
+import com.github.wuic.nut.dao.spring.NutDaoMetrics;
+import com.github.wuic.nut.dao.spring.SpringNutDao;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Collects timers and counters about WUIC at runtime: workflow executions, cache hits of the
+ * {@link WuicPathResourceResolver}, listing and polling durations of the {@link SpringNutDao}, and requests rejected
+ * by the {@link WuicAsyncResourceHandler}. Meter names follow the dotted convention of Micrometer, so the
+ * {@link #snapshot() snapshot} can be bound to any registry by a gauge per entry.
+ * </p>
+ *
+ * <p>
+ * This class is an {@link ObjectBuilderInspector}: when declared as a bean, the {@link WuicFacadeBuilderFactory}
+ * registers it and each {@link SpringNutDao} created by WUIC reports its durations here through the
+ * {@link NutDaoMetrics} interface. The resolver and the handler report to the instance given with their
+ * {@code setMetrics} method.
+ * </p>
+ *
+ * <p>
+ * The workflows executed successfully at least once are considered as warmed. The {@link #readiness(String...)} method
+ * reports if a set of workflows is warmed, which can be exposed as a readiness indicator. Without argument, all the
+ * workflows {@link #expectWorkflows(WuicFacade) expected} from the facade must be warmed.
+ * </p>
+ *
+ * <p>
+ * Known gaps:
+ * <ul>
+ *     <li>the cache counters are the hits and misses of the {@link WuicPathResourceResolver} cache of immutable
+ *     payloads, not of the WUIC cache engine, which exposes no hook to count them</li>
+ *     <li>workflow executions are timed only when they are run by the {@link WuicPathResourceResolver}: the facade
+ *     itself is not instrumented, so workflows run by other callers such as the Thymeleaf import processors or the
+ *     servlet filters are not measured</li>
+ *     <li>the engine chain is not timed per engine</li>
+ * </ul>
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5.3
+ */
+@ObjectBuilderInspector.InspectedType(SpringNutDao.class)
+public class WuicMetrics implements ObjectBuilderInspector, NutDaoMetrics {
+
+    /**
+     * Timer for workflow executions.
+     */
+    public static final String WORKFLOW_EXECUTION = "wuic.workflow.execution";
+
+    /**
+     * Counter for workflow executions that failed.
+     */
+    public static final String WORKFLOW_FAILURE = "wuic.workflow.failure";
+
+    /**
+     * Counter for resources found in the resolver cache.
+     */
+    public static final String RESOLVER_CACHE_HIT = "wuic.resolver.cache.hit";
+
+    /**
+     * Counter for resources not found in the resolver cache.
+     */
+    public static final String RESOLVER_CACHE_MISS = "wuic.resolver.cache.miss";
+
+    /**
+     * Counter for requests rejected by the asynchronous handler.
+     */
+    public static final String ASYNC_REJECTED = "wuic.async.rejected";
+
+    /**
+     * The timers by name.
+     */
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<String, Timer>();
+
+    /**
+     * The counters by name.
+     */
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * The workflows executed successfully at least once.
+     */
+    private final Set<String> warmedWorkflows = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * The workflows expected to be warmed when the readiness is requested without argument.
+     */
+    private volatile Set<String> expectedWorkflows = Collections.emptySet();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T inspect(final T object) {
+        SpringNutDao.class.cast(object).setMetrics(this);
+        return object;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void record(final String timer, final long nanos) {
+        timer(timer).record(nanos);
+    }
+
+    /**
+     * <p>
+     * Gets the timer with the given name, creating it if necessary.
+     * </p>
+     *
+     * @param name the name
+     * @return the timer
+     */
+    public Timer timer(final String name) {
+        Timer retval = timers.get(name);
+
+        if (retval == null) {
+            final Timer timer = new Timer();
+            retval = timers.putIfAbsent(name, timer);
+
+            if (retval == null) {
+                retval = timer;
+            }
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Increments the counter with the given name.
+     * </p>
+     *
+     * @param name the name
+     */
+    public void increment(final String name) {
+        AtomicLong counter = counters.get(name);
+
+        if (counter == null) {
+            final AtomicLong newCounter = new AtomicLong();
+            counter = counters.putIfAbsent(name, newCounter);
+
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+
+        counter.incrementAndGet();
+    }
+
+    /**
+     * <p>
+     * Gets the value of the counter with the given name.
+     * </p>
+     *
+     * @param name the name
+     * @return the value, 0 if the counter does not exist
+     */
+    public long count(final String name) {
+        final AtomicLong counter = counters.get(name);
+        return counter == null ? 0L : counter.get();
+    }
+
+    /**
+     * <p>
+     * Records the successful execution of a workflow.
+     * </p>
+     *
+     * @param workflowId the workflow ID
+     * @param nanos the duration in nanoseconds
+     */
+    public void workflowExecuted(final String workflowId, final long nanos) {
+        timer(WORKFLOW_EXECUTION).record(nanos);
+        warmedWorkflows.add(workflowId);
+    }
+
+    /**
+     * <p>
+     * Gets the workflows executed successfully at least once.
+     * </p>
+     *
+     * @return the workflow IDs
+     */
+    public Set<String> getWarmedWorkflows() {
+        return Collections.unmodifiableSet(warmedWorkflows);
+    }
+
+    /**
+     * <p>
+     * Sets the workflows expected to be warmed when the readiness is requested without argument.
+     * </p>
+     *
+     * @param workflowIds the workflow IDs
+     */
+    public void expectWorkflows(final Collection<String> workflowIds) {
+        expectedWorkflows = Collections.unmodifiableSet(new TreeSet<String>(workflowIds));
+    }
+
+    /**
+     * <p>
+     * Expects all the workflows configured in the given facade to be warmed when the readiness is requested without
+     * argument.
+     * </p>
+     *
+     * @param facade the facade
+     * @throws WuicException if the workflows can't be retrieved
+     */
+    public void expectWorkflows(final WuicFacade facade) throws WuicException {
+        expectWorkflows(facade.workflowIds());
+    }
+
+    /**
+     * <p>
+     * Reports if the given workflows are warmed. The returned map contains a {@code status} entry with {@code UP} if
+     * all of them have been executed at least once and {@code OUT_OF_SERVICE} otherwise, a {@code warmed} entry and a
+     * {@code pending} entry with the corresponding workflow IDs. The status is {@code OUT_OF_SERVICE} when no
+     * workflow is expected.
+     * </p>
+     *
+     * @param workflowIds the workflows expected to be warmed, if empty the {@link #expectWorkflows(Collection) expected}
+     * workflows
+     * @return the readiness details
+     */
+    public Map<String, Object> readiness(final String ... workflowIds) {
+        final Set<String> expected = workflowIds.length == 0 ?
+                expectedWorkflows : new TreeSet<String>(Arrays.asList(workflowIds));
+        final Set<String> pending = new TreeSet<String>(expected);
+        pending.removeAll(warmedWorkflows);
+        final boolean ready = !expected.isEmpty() && pending.isEmpty();
+        final Map<String, Object> retval = new LinkedHashMap<String, Object>();
+        retval.put("status", ready ? "UP" : "OUT_OF_SERVICE");
+        retval.put("warmed", new TreeSet<String>(warmedWorkflows));
+        retval.put("pending", pending);
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Takes a snapshot of all meters. Each timer is reported with its {@code count}, {@code totalTime} and {@code max}
+     * in milliseconds, each counter with its value.
+     * </p>
+     *
+     * @return the values sorted by name
+     */
+    public Map<String, Number> snapshot() {
+        final Map<String, Number> retval = new TreeMap<String, Number>();
+
+        for (final Map.Entry<String, Timer> entry : timers.entrySet()) {
+            final Timer timer = entry.getValue();
+            retval.put(entry.getKey() + ".count", timer.getCount());
+            retval.put(entry.getKey() + ".totalTime", timer.getTotalTime(TimeUnit.MILLISECONDS));
+            retval.put(entry.getKey() + ".max", timer.getMax(TimeUnit.MILLISECONDS));
+        }
+
+        for (final Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+            retval.put(entry.getKey(), entry.getValue().get());
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * A timer recording the number of events, their total and their maximum duration.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5.3
+     */
+    public static final class Timer {
+
+        /**
+         * Number of events.
+         */
+        private final AtomicLong count = new AtomicLong();
+
+        /**
+         * Total duration in nanoseconds.
+         */
+        private final AtomicLong total = new AtomicLong();
+
+        /**
+         * Maximum duration in nanoseconds.
+         */
+        private final AtomicLong max = new AtomicLong();
+
+        /**
+         * <p>
+         * Records an event.
+         * </p>
+         *
+         * @param nanos the duration in nanoseconds
+         */
+        public void record(final long nanos) {
+            count.incrementAndGet();
+            total.addAndGet(nanos);
+            long current = max.get();
+
+            while (nanos > current && !max.compareAndSet(current, nanos)) {
+                current = max.get();
+            }
+        }
+
+        /**
+         * <p>
+         * Gets the number of events.
+         * </p>
+         *
+         * @return the count
+         */
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * <p>
+         * Gets the total duration.
+         * </p>
+         *
+         * @param unit the unit
+         * @return the duration
+         */
+        public double getTotalTime(final TimeUnit unit) {
+            return total.get() / (double) unit.toNanos(1L);
+        }
+
+        /**
+         * <p>
+         * Gets the maximum duration.
+         * </p>
+         *
+         * @param unit the unit
+         * @return the duration
+         */
+        public double getMax(final TimeUnit unit) {
+            return max.get() / (double) unit.toNanos(1L);
+        }
+    }
+}
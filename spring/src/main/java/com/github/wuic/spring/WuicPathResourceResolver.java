@@ -24,10 +24,15 @@ package com.github.wuic.spring;
 
 import com.github.wuic.ProcessContext;
 import com.github.wuic.WuicFacade;
+import com.github.wuic.commons.LruCache;
+import com.github.wuic.commons.PrecompiledManifest;
 import com.github.wuic.engine.EngineType;
 import com.github.wuic.exception.WuicException;
 import com.github.wuic.servlet.ServletProcessContext;
 import com.github.wuic.nut.Nut;
+import com.github.wuic.util.IOUtils;
+import com.github.wuic.util.Input;
+import com.github.wuic.util.NutUtils;
 import com.github.wuic.util.UrlMatcher;
 import com.github.wuic.util.UrlUtils;
 import org.springframework.core.io.Resource;
@@ -35,6 +40,9 @@ import org.springframework.web.servlet.resource.PathResourceResolver;
 import org.springframework.web.servlet.resource.ResourceResolverChain;
 
 import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.List;
 
@@ -44,6 +52,28 @@ import java.util.List;
  * are {@link #SKIP skipped} because spring user may configure spring based transformers that do the same thing.
  * </p>
  *
+ * <p>
+ * Resolved nuts are read once and kept as immutable {@link WuicResource} payloads, keyed by workflow, version and nut
+ * name. A request with a version number in its path is then served from memory. Since the content behind a path
+ * without version number can change, such entries expire after a configurable delay. A request with a version number
+ * is resolved like a request without version number and the payload is kept only if its version matches the one in
+ * the path: a stale or unknown version is not served. Both caches are bounded by their number of entries and by the
+ * number of bytes they retain.
+ * </p>
+ *
+ * <p>
+ * When the client accepts gzip content coding, the pre-compressed variant of the resource is returned if it exists.
+ * Spring then sets the {@code Content-Encoding} header from the {@link org.springframework.web.servlet.resource.EncodedResource}
+ * contract, so nothing is compressed per request.
+ * </p>
+ *
+ * <p>
+ * When the nuts have been {@link WuicPrecompiler precompiled} at build time, the resolver can be
+ * {@link #setPrecompiled(Resource) pointed} to the artifact: the nuts listed in its manifest are read from it and no
+ * workflow is run for them. A precompiled nut requested with a version number is served only if the version matches
+ * the one in the manifest.
+ * </p>
+ *
  * @author Guillaume DROUET
  * @since 0.5.0
  */
@@ -52,13 +82,53 @@ public class WuicPathResourceResolver extends PathResourceResolver {
     /**
      * {@link EngineType} to skip.
      */
-    private static final EngineType[] SKIP = new EngineType[] { EngineType.BINARY_COMPRESSION, EngineType.CACHE, };
+    static final EngineType[] SKIP = new EngineType[] { EngineType.BINARY_COMPRESSION, EngineType.CACHE, };
+
+    /**
+     * Default maximum number of resources kept in cache.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 512;
+
+    /**
+     * Default time in milliseconds a resource requested without version number is kept in cache.
+     */
+    public static final long DEFAULT_UNVERSIONED_TTL = 5000L;
+
+    /**
+     * Default maximum number of bytes retained by each cache.
+     */
+    public static final long DEFAULT_CACHE_BYTES = 64L * 1024L * 1024L;
 
     /**
      * The facade managed by spring container.
      */
     private WuicFacade wuicFacade;
 
+    /**
+     * Resources requested with a version number.
+     */
+    private final LruCache<String, WuicResource> versionedResources;
+
+    /**
+     * Resources requested without version number.
+     */
+    private final LruCache<String, WuicResource> unversionedResources;
+
+    /**
+     * The metrics workflow executions and cache hits are reported to, {@code null} if not set.
+     */
+    private volatile WuicMetrics metrics;
+
+    /**
+     * The location of the precompiled nuts, {@code null} if not set.
+     */
+    private volatile Resource precompiledLocation;
+
+    /**
+     * The manifest of the precompiled nuts, {@code null} if not set.
+     */
+    private volatile PrecompiledManifest precompiledManifest;
+
     /**
      * <p>
      * Builds a new instance.
@@ -67,7 +137,88 @@ public class WuicPathResourceResolver extends PathResourceResolver {
      * @param wf the facade
      */
     public WuicPathResourceResolver(final WuicFacade wf) {
+        this(wf, DEFAULT_CACHE_SIZE, DEFAULT_UNVERSIONED_TTL);
+    }
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param wf the facade
+     * @param cacheSize the maximum number of resources kept in cache
+     * @param unversionedTtl the time in milliseconds a resource requested without version number is kept in cache
+     */
+    public WuicPathResourceResolver(final WuicFacade wf, final int cacheSize, final long unversionedTtl) {
+        this(wf, cacheSize, DEFAULT_CACHE_BYTES, unversionedTtl);
+    }
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param wf the facade
+     * @param cacheSize the maximum number of resources kept in cache
+     * @param cacheBytes the maximum number of bytes retained by each cache
+     * @param unversionedTtl the time in milliseconds a resource requested without version number is kept in cache
+     */
+    public WuicPathResourceResolver(final WuicFacade wf,
+                                    final int cacheSize,
+                                    final long cacheBytes,
+                                    final long unversionedTtl) {
         wuicFacade = wf;
+        versionedResources = new LruCache<String, WuicResource>(cacheSize, cacheBytes, -1L);
+        unversionedResources = new LruCache<String, WuicResource>(cacheSize, cacheBytes, unversionedTtl);
+    }
+
+    /**
+     * <p>
+     * Reports the workflow executions and the cache hits to the given metrics.
+     * </p>
+     *
+     * @param m the metrics
+     */
+    public void setMetrics(final WuicMetrics m) {
+        metrics = m;
+    }
+
+    /**
+     * <p>
+     * Serves the nuts precompiled at the given location by the {@link WuicPrecompiler}. The location is the directory
+     * containing the manifest, for instance {@code classpath:/META-INF/wuic/}, and must end with a {@code /}.
+     * </p>
+     *
+     * @param location the location
+     * @throws IOException if the manifest can't be read
+     */
+    public void setPrecompiled(final Resource location) throws IOException {
+        final PrecompiledManifest manifest;
+        InputStream is = null;
+
+        try {
+            is = location.createRelative(WuicPrecompiler.MANIFEST).getInputStream();
+            manifest = PrecompiledManifest.read(is);
+        } finally {
+            IOUtils.close(is);
+        }
+
+        precompiledLocation = location;
+        precompiledManifest = manifest;
+        versionedResources.clear();
+        unversionedResources.clear();
+    }
+
+    /**
+     * <p>
+     * Gets the manifest of the precompiled nuts. It can be shared with the components generating URLs and import
+     * statements, so they don't need to run the workflows.
+     * </p>
+     *
+     * @return the manifest, {@code null} if no precompiled nuts are served
+     */
+    public PrecompiledManifest getPrecompiledManifest() {
+        return precompiledManifest;
     }
 
     /**
@@ -84,7 +235,42 @@ public class WuicPathResourceResolver extends PathResourceResolver {
             return null;
         } else {
             try {
-                return internalResolve(matcher, request == null ? ProcessContext.DEFAULT : new ServletProcessContext(request));
+                final String version = matcher.getVersionNumber();
+                final String unversionedKey = key(matcher, "");
+                final String key = version == null ? unversionedKey : key(matcher, version);
+                WuicResource retval = (version == null ? unversionedResources : versionedResources).get(key);
+                final WuicMetrics m = metrics;
+
+                if (m != null) {
+                    m.increment(retval == null ? WuicMetrics.RESOLVER_CACHE_MISS : WuicMetrics.RESOLVER_CACHE_HIT);
+                }
+
+                if (retval == null) {
+                    final ProcessContext processContext =
+                            request == null ? ProcessContext.DEFAULT : new ServletProcessContext(request);
+                    retval = unversionedResources.get(unversionedKey);
+
+                    if (retval == null) {
+                        retval = internalResolve(matcher, processContext);
+
+                        if (retval != null) {
+                            unversionedResources.put(unversionedKey, retval, weight(retval));
+                        }
+                    }
+
+                    if (retval != null && version != null) {
+                        if (version.equals(String.valueOf(retval.getVersionNumber()))) {
+                            versionedResources.put(key, retval, weight(retval));
+                        } else {
+                            logger.debug(String.format("Version '%s' of nut '%s' in workflow '%s' is not available, "
+                                    + "current version is %d", version, matcher.getNutName(), matcher.getWorkflowId(),
+                                    retval.getVersionNumber()));
+                            retval = null;
+                        }
+                    }
+                }
+
+                return retval == null ? null : selectVariant(request, retval);
             } catch (UnsupportedEncodingException we) {
                 throw new IllegalArgumentException(we);
             }
@@ -103,7 +289,113 @@ public class WuicPathResourceResolver extends PathResourceResolver {
 
     /**
      * <p>
-     * Resolves the nut from the given {@link UrlMatcher} and wrap it to a spring resource.
+     * Builds the cache key of the nut matched by the given {@link UrlMatcher}.
+     * </p>
+     *
+     * @param matcher the matcher
+     * @param version the version number, an empty string if none
+     * @return the key
+     * @throws UnsupportedEncodingException should not happen
+     */
+    private String key(final UrlMatcher matcher, final String version) throws UnsupportedEncodingException {
+        return new StringBuilder()
+                .append(matcher.getWorkflowId())
+                .append('|')
+                .append(version)
+                .append('|')
+                .append(matcher.getNutName())
+                .toString();
+    }
+
+    /**
+     * <p>
+     * Computes the number of bytes retained by the given resource and its encoded variant.
+     * </p>
+     *
+     * @param resource the resource
+     * @return the number of bytes
+     */
+    private long weight(final WuicResource resource) {
+        final WuicEncodedResource gzipped = resource.getEncoded(WuicResource.GZIP);
+        return resource.getByteBuffer().remaining() + (gzipped == null ? 0 : gzipped.contentLength());
+    }
+
+    /**
+     * <p>
+     * Selects the variant of the resource matching the {@code Accept-Encoding} header of the request.
+     * </p>
+     *
+     * @param request the request, may be {@code null}
+     * @param resource the resolved resource
+     * @return the encoded variant if accepted and available, the given resource otherwise
+     */
+    private Resource selectVariant(final HttpServletRequest request, final WuicResource resource) {
+        if (request != null) {
+            if (accepts(request.getHeader("Accept-Encoding"), WuicResource.GZIP)) {
+                final Resource encoded = resource.getEncoded(WuicResource.GZIP);
+
+                if (encoded != null) {
+                    return encoded;
+                }
+            }
+        }
+
+        return resource;
+    }
+
+    /**
+     * <p>
+     * Indicates if the given {@code Accept-Encoding} header accepts the given content coding. The coding is accepted
+     * when it's listed with a non-zero quality value, or when it's not listed and the {@code *} wildcard is listed with a
+     * non-zero quality value.
+     * </p>
+     *
+     * @param acceptEncoding the header value, may be {@code null}
+     * @param coding the content coding
+     * @return {@code true} if the coding is accepted, {@code false} otherwise
+     */
+    static boolean accepts(final String acceptEncoding, final String coding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+
+        Float codingQuality = null;
+        Float wildcardQuality = null;
+
+        for (final String token : acceptEncoding.split(",")) {
+            final String[] params = token.split(";");
+            final String name = params[0].trim();
+            float quality = 1f;
+
+            for (int i = 1; i < params.length; i++) {
+                final String param = params[i].trim();
+
+                if (param.length() > 1 && Character.toLowerCase(param.charAt(0)) == 'q' && param.indexOf('=') != -1) {
+                    try {
+                        quality = Float.parseFloat(param.substring(param.indexOf('=') + 1).trim());
+                    } catch (NumberFormatException nfe) {
+                        quality = 0f;
+                    }
+                }
+            }
+
+            if (coding.equalsIgnoreCase(name) || ("x-" + coding).equalsIgnoreCase(name)) {
+                codingQuality = quality;
+            } else if ("*".equals(name)) {
+                wildcardQuality = quality;
+            }
+        }
+
+        if (codingQuality != null) {
+            return codingQuality > 0f;
+        } else {
+            return wildcardQuality != null && wildcardQuality > 0f;
+        }
+    }
+
+    /**
+     * <p>
+     * Resolves the nut from the given {@link UrlMatcher} and reads it into an immutable spring resource.
      * </p>
      *
      * @param processContext the process context
@@ -114,14 +406,76 @@ public class WuicPathResourceResolver extends PathResourceResolver {
     private WuicResource internalResolve(final UrlMatcher matcher, final ProcessContext processContext)
             throws UnsupportedEncodingException {
 
+        final PrecompiledManifest manifest = precompiledManifest;
+        final Long precompiledVersion =
+                manifest == null ? null : manifest.getVersionNumber(matcher.getWorkflowId(), matcher.getNutName());
+
+        // The version in the path, if any, is checked against the manifest by the caller
+        if (precompiledVersion != null) {
+            return readPrecompiled(matcher,
+                    IOUtils.mergePath(matcher.getWorkflowId(), matcher.getNutName()), precompiledVersion);
+        }
+
         try {
+            final long start = System.nanoTime();
             final Nut nut = wuicFacade.runWorkflow(matcher.getWorkflowId(), matcher.getNutName(), processContext, SKIP);
+            final WuicMetrics m = metrics;
+
+            if (m != null) {
+                m.workflowExecuted(matcher.getWorkflowId(), System.nanoTime() - start);
+            }
+
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            final Input input = nut.openStream();
 
-            return new WuicResource(nut);
+            try {
+                IOUtils.copyStream(input.inputStream(), bos);
+            } finally {
+                input.close();
+            }
+
+            return new WuicResource(matcher.getWorkflowId(), nut.getInitialName(), bos.toByteArray(),
+                    NutUtils.getVersionNumber(nut));
         } catch (WuicException we) {
+            final WuicMetrics m = metrics;
+
+            if (m != null) {
+                m.increment(WuicMetrics.WORKFLOW_FAILURE);
+            }
+
             logger.debug(String.format("Unable to resolve nut with name '%s' in workflow '%s'",
                     matcher.getNutName(), matcher.getWorkflowId()), we);
             return null;
+        } catch (IOException ioe) {
+            logger.debug(String.format("Unable to read nut with name '%s' in workflow '%s'",
+                    matcher.getNutName(), matcher.getWorkflowId()), ioe);
+            return null;
+        }
+    }
+
+    /**
+     * <p>
+     * Reads a precompiled nut into an immutable spring resource.
+     * </p>
+     *
+     * @param matcher the matcher
+     * @param entry the path of the nut relative to the precompiled location
+     * @param versionNumber the version number from the manifest
+     * @return the resource, {@code null} if it can't be read
+     */
+    private WuicResource readPrecompiled(final UrlMatcher matcher, final String entry, final long versionNumber) {
+        InputStream is = null;
+
+        try {
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            is = precompiledLocation.createRelative(entry).getInputStream();
+            IOUtils.copyStream(is, bos);
+            return new WuicResource(matcher.getWorkflowId(), matcher.getNutName(), bos.toByteArray(), versionNumber);
+        } catch (IOException ioe) {
+            logger.warn(String.format("Unable to read precompiled nut '%s'", entry), ioe);
+            return null;
+        } finally {
+            IOUtils.close(is);
         }
     }
 }
@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2016   The authors of WUIC
+ *
+ * License/Terms of Use
+ * Permission is hereby granted, free of charge and for the term of intellectual
+ * property rights on the Software, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify and
+ * propagate free of charge, anywhere in the world, all or part of the Software
+ * subject to the following mandatory conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, PEACEFUL ENJOYMENT,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.github.wuic.spring;
+
+import com.github.wuic.ProcessContext;
+import com.github.wuic.WuicFacade;
+import com.github.wuic.WuicFacadeBuilder;
+import com.github.wuic.commons.PrecompiledManifest;
+import com.github.wuic.exception.WuicException;
+import com.github.wuic.nut.ConvertibleNut;
+import com.github.wuic.util.IOUtils;
+import com.github.wuic.util.NutUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * <p>
+ * Runs workflows at build time and writes the resulting nuts with a manifest to a directory or a JAR file. The
+ * {@link WuicPathResourceResolver} can then {@link WuicPathResourceResolver#setPrecompiled(org.springframework.core.io.Resource)
+ * serve} the nuts from this artifact without running any workflow at runtime.
+ * </p>
+ *
+ * <p>
+ * The manifest is a {@link PrecompiledManifest} named {@link #MANIFEST}. It lists the path of each nut relative to the
+ * output, that is the workflow ID followed by the nut name, with the version number of the nut. It also lists the names
+ * of the nuts produced by each workflow, so the import statements can be generated without running the workflow. In a
+ * JAR file, all entries are written under {@link #JAR_PREFIX} so the artifact can be put in the classpath and read from
+ * {@code classpath:/META-INF/wuic/}.
+ * </p>
+ *
+ * <p>
+ * The {@link #main(String[])} method builds a facade in a headless spring context, configured by the same
+ * {@link WuicFacadeBuilderFactory#configure(WuicFacadeBuilder, org.springframework.context.ApplicationContext) rules}
+ * as a web application: the {@code Environment} resolves the properties and the active profiles are enabled. The
+ * arguments are:
+ * </p>
+ * <ul>
+ *     <li>{@code --output <directory or file.jar>}: mandatory, where the nuts are written</li>
+ *     <li>{@code --workflows <id1,id2>}: the workflows to run, all by default</li>
+ *     <li>{@code --profiles <p1,p2>}: the spring profiles to activate</li>
+ *     <li>{@code --config <class1,class2>}: the spring configuration classes to register</li>
+ * </ul>
+ *
+ * <p>
+ * With maven, the precompiler can be executed during the build with the {@code exec-maven-plugin}:
+ * </p>
+ * <pre>
+ * &lt;plugin&gt;
+ *     &lt;groupId&gt;org.codehaus.mojo&lt;/groupId&gt;
+ *     &lt;artifactId&gt;exec-maven-plugin&lt;/artifactId&gt;
+ *     &lt;executions&gt;
+ *         &lt;execution&gt;
+ *             &lt;phase&gt;prepare-package&lt;/phase&gt;
+ *             &lt;goals&gt;&lt;goal&gt;java&lt;/goal&gt;&lt;/goals&gt;
+ *         &lt;/execution&gt;
+ *     &lt;/executions&gt;
+ *     &lt;configuration&gt;
+ *         &lt;mainClass&gt;com.github.wuic.spring.WuicPrecompiler&lt;/mainClass&gt;
+ *         &lt;arguments&gt;
+ *             &lt;argument&gt;--output&lt;/argument&gt;
+ *             &lt;argument&gt;${project.build.outputDirectory}/META-INF/wuic&lt;/argument&gt;
+ *             &lt;argument&gt;--config&lt;/argument&gt;
+ *             &lt;argument&gt;com.acme.WuicConfig&lt;/argument&gt;
+ *         &lt;/arguments&gt;
+ *     &lt;/configuration&gt;
+ * &lt;/plugin&gt;
+ * </pre>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5.3
+ */
+public class WuicPrecompiler {
+
+    /**
+     * The manifest file name.
+     */
+    public static final String MANIFEST = PrecompiledManifest.FILE_NAME;
+
+    /**
+     * The prefix of all entries in a JAR file.
+     */
+    public static final String JAR_PREFIX = "META-INF/wuic/";
+
+    /**
+     * The logger.
+     */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * The facade.
+     */
+    private final WuicFacade wuicFacade;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param wf the facade running the workflows
+     */
+    public WuicPrecompiler(final WuicFacade wf) {
+        wuicFacade = wf;
+    }
+
+    /**
+     * <p>
+     * Runs the given workflows and writes the nuts with the manifest to the given output. If the output name ends with
+     * {@code .jar}, a JAR file is written, otherwise the nuts are written to a directory.
+     * </p>
+     *
+     * @param output the output directory or JAR file
+     * @param workflowIds the workflows to run, all workflows if empty
+     * @return the manifest
+     * @throws WuicException if a workflow fails
+     * @throws IOException if the output can't be written
+     */
+    public Properties precompile(final File output, final String ... workflowIds) throws WuicException, IOException {
+        final Collection<String> workflows = workflowIds.length == 0 ? wuicFacade.workflowIds() : Arrays.asList(workflowIds);
+        final PrecompiledManifest manifest = new PrecompiledManifest();
+        final boolean jar = output.getName().endsWith(".jar");
+        JarOutputStream jarOutputStream = null;
+
+        try {
+            if (jar) {
+                mkdirs(output.getAbsoluteFile().getParentFile());
+                jarOutputStream = new JarOutputStream(new FileOutputStream(output));
+            } else {
+                mkdirs(output);
+            }
+
+            for (final String workflowId : workflows) {
+                logger.info("Precompiling workflow {}", workflowId);
+                final List<ConvertibleNut> nuts =
+                        wuicFacade.runWorkflow(workflowId, ProcessContext.DEFAULT, WuicPathResourceResolver.SKIP);
+                final List<String> nutNames = new ArrayList<String>(nuts.size());
+
+                for (final ConvertibleNut nut : nuts) {
+                    nutNames.add(nut.getName());
+                }
+
+                manifest.putWorkflow(workflowId, nutNames);
+
+                for (final ConvertibleNut nut : flatten(nuts)) {
+                    final String entry = IOUtils.mergePath(workflowId, nut.getName());
+                    InputStream is = null;
+
+                    try {
+                        is = nut.openStream().inputStream();
+                        write(jarOutputStream, output, entry, is);
+                    } finally {
+                        IOUtils.close(is);
+                    }
+
+                    manifest.putNut(workflowId, nut.getName(), NutUtils.getVersionNumber(nut));
+                }
+            }
+
+            if (jar) {
+                jarOutputStream.putNextEntry(new JarEntry(JAR_PREFIX + MANIFEST));
+                manifest.store(jarOutputStream);
+                jarOutputStream.closeEntry();
+            } else {
+                OutputStream os = null;
+
+                try {
+                    os = new FileOutputStream(new File(output, MANIFEST));
+                    manifest.store(os);
+                } finally {
+                    IOUtils.close(os);
+                }
+            }
+        } finally {
+            IOUtils.close(jarOutputStream);
+        }
+
+        final Properties retval = manifest.getProperties();
+        logger.info("{} workflows precompiled to {}", workflows.size(), output.getAbsolutePath());
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Precompiles workflows from the command line.
+     * </p>
+     *
+     * @param args the arguments, see class documentation
+     * @throws Exception if precompilation fails
+     */
+    public static void main(final String[] args) throws Exception {
+        String output = null;
+        String[] workflows = new String[0];
+        String[] profiles = new String[0];
+        final List<Class<?>> configs = new ArrayList<Class<?>>();
+
+        for (int i = 0; i < args.length; i += 2) {
+            final String name = args[i];
+
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException(String.format("Missing value for argument %s", name));
+            }
+
+            final String value = args[i + 1];
+
+            if ("--output".equals(name)) {
+                output = value;
+            } else if ("--workflows".equals(name)) {
+                workflows = value.split(",");
+            } else if ("--profiles".equals(name)) {
+                profiles = value.split(",");
+            } else if ("--config".equals(name)) {
+                for (final String className : value.split(",")) {
+                    configs.add(Class.forName(className.trim()));
+                }
+            } else {
+                throw new IllegalArgumentException(String.format("Unknown argument %s", name));
+            }
+        }
+
+        if (output == null) {
+            throw new IllegalArgumentException("Usage: --output <directory or file.jar> [--workflows <id1,id2>] "
+                    + "[--profiles <p1,p2>] [--config <class1,class2>]");
+        }
+
+        final AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
+
+        try {
+            applicationContext.getEnvironment().setActiveProfiles(profiles);
+
+            if (!configs.isEmpty()) {
+                applicationContext.register(configs.toArray(new Class<?>[configs.size()]));
+            }
+
+            applicationContext.refresh();
+            final WuicFacade facade = WuicFacadeBuilderFactory.configure(new WuicFacadeBuilder(), applicationContext).build();
+            new WuicPrecompiler(facade).precompile(new File(output), workflows);
+        } finally {
+            applicationContext.close();
+        }
+    }
+
+    /**
+     * <p>
+     * Collects the given nuts and all the nuts they reference.
+     * </p>
+     *
+     * @param nuts the nuts
+     * @return all the nuts
+     */
+    private List<ConvertibleNut> flatten(final List<ConvertibleNut> nuts) {
+        final List<ConvertibleNut> retval = new ArrayList<ConvertibleNut>();
+
+        for (final ConvertibleNut nut : nuts) {
+            retval.add(nut);
+
+            if (nut.getReferencedNuts() != null) {
+                retval.addAll(flatten(nut.getReferencedNuts()));
+            }
+        }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Writes an entry to the JAR file if any, to the output directory otherwise.
+     * </p>
+     *
+     * @param jarOutputStream the JAR file, {@code null} when writing to a directory
+     * @param output the output directory
+     * @param entry the entry path
+     * @param is the content
+     * @throws IOException if the entry can't be written
+     */
+    private void write(final JarOutputStream jarOutputStream, final File output, final String entry, final InputStream is)
+            throws IOException {
+        if (jarOutputStream != null) {
+            jarOutputStream.putNextEntry(new JarEntry(JAR_PREFIX + entry));
+            IOUtils.copyStream(is, jarOutputStream);
+            jarOutputStream.closeEntry();
+        } else {
+            final File file = new File(output, entry);
+            mkdirs(file.getParentFile());
+            OutputStream os = null;
+
+            try {
+                os = new FileOutputStream(file);
+                IOUtils.copyStream(is, os);
+            } finally {
+                IOUtils.close(os);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Creates the given directory if it does not exist.
+     * </p>
+     *
+     * @param directory the directory
+     * @throws IOException if the directory can't be created
+     */
+    private static void mkdirs(final File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException(String.format("Unable to create directory %s", directory.getAbsolutePath()));
+        }
+    }
+}
@@ -25,25 +25,72 @@ package com.github.wuic.spring;
 import com.github.wuic.nut.Nut;
 import org.springframework.core.io.AbstractResource;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.concurrent.ExecutionException;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * <p>
  * This class exposes a {@link Nut} to spring through its {@code Resource} API.
  * </p>
  *
+ * <p>
+ * A resource can also be built from an immutable payload: the content of the nut read once with its version number.
+ * In this case, the content, its length and its ETag are served from memory without running the workflow again.
+ * A gzip variant of the payload is also computed once and exposed as an {@link WuicEncodedResource encoded resource}
+ * when it is smaller than the original content.
+ * </p>
+ *
  * @author Guillaume DROUET
  * @since 0.5.0
  */
 public class WuicResource extends AbstractResource {
 
     /**
-     * The nut behind the resource.
+     * The gzip content coding.
+     */
+    public static final String GZIP = "gzip";
+
+    /**
+     * The nut behind the resource, {@code null} if the resource is built from a payload.
      */
     private Nut nut;
 
+    /**
+     * The resource name.
+     */
+    private final String name;
+
+    /**
+     * The workflow the payload has been resolved from, {@code null} if unknown.
+     */
+    private final String workflowId;
+
+    /**
+     * The content, {@code null} if the resource is built from a nut.
+     */
+    private final byte[] content;
+
+    /**
+     * The version number of the payload.
+     */
+    private final long versionNumber;
+
+    /**
+     * The ETag of the payload.
+     */
+    private final String eTag;
+
+    /**
+     * The gzip variant of the payload, {@code null} if not available.
+     */
+    private final WuicEncodedResource gzipped;
+
     /**
      * <p>
      * Builds a new instance.
@@ -53,6 +100,46 @@ public class WuicResource extends AbstractResource {
      */
     public WuicResource(final Nut n) {
         nut = n;
+        name = n.getInitialName();
+        workflowId = null;
+        content = null;
+        versionNumber = 0L;
+        eTag = null;
+        gzipped = null;
+    }
+
+    /**
+     * <p>
+     * Builds a new instance from an immutable payload. The given array must not be modified.
+     * </p>
+     *
+     * @param n the resource name
+     * @param c the content
+     * @param v the version number
+     */
+    public WuicResource(final String n, final byte[] c, final long v) {
+        this(null, n, c, v);
+    }
+
+    /**
+     * <p>
+     * Builds a new instance from an immutable payload resolved from a workflow. The given array must not be modified.
+     * </p>
+     *
+     * @param w the workflow ID, {@code null} if unknown
+     * @param n the resource name
+     * @param c the content
+     * @param v the version number
+     */
+    public WuicResource(final String w, final String n, final byte[] c, final long v) {
+        final CRC32 crc = new CRC32();
+        crc.update(c);
+        workflowId = w;
+        name = n;
+        content = c;
+        versionNumber = v;
+        eTag = '"' + Long.toHexString(crc.getValue()) + '"';
+        gzipped = gzip();
     }
 
     /**
@@ -60,7 +147,7 @@ public class WuicResource extends AbstractResource {
      */
     @Override
     public String getDescription() {
-        return nut.getInitialName();
+        return name;
     }
 
     /**
@@ -68,7 +155,7 @@ public class WuicResource extends AbstractResource {
      */
     @Override
     public InputStream getInputStream() throws IOException {
-        return nut.openStream().inputStream();
+        return content != null ? new ByteArrayInputStream(content) : nut.openStream().inputStream();
     }
 
     /**
@@ -76,7 +163,23 @@ public class WuicResource extends AbstractResource {
      */
     @Override
     public String getFilename() {
-        return nut.getInitialName();
+        return name;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean exists() {
+        return content != null || super.exists();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long contentLength() throws IOException {
+        return content != null ? content.length : super.contentLength();
     }
 
     /**
@@ -84,6 +187,10 @@ public class WuicResource extends AbstractResource {
      */
     @Override
     public long lastModified() throws IOException {
+        if (content != null) {
+            return versionNumber;
+        }
+
         try {
             return nut.getVersionNumber().get();
         } catch (InterruptedException ie) {
@@ -92,4 +199,82 @@ public class WuicResource extends AbstractResource {
             throw new IOException(ee);
         }
     }
+
+    /**
+     * <p>
+     * Gets the ETag computed from the content of the payload.
+     * </p>
+     *
+     * @return the quoted ETag, {@code null} if the resource is built from a nut
+     */
+    public String getETag() {
+        return eTag;
+    }
+
+    /**
+     * <p>
+     * Gets the workflow the payload has been resolved from.
+     * </p>
+     *
+     * @return the workflow ID, {@code null} if unknown
+     */
+    public String getWorkflowId() {
+        return workflowId;
+    }
+
+    /**
+     * <p>
+     * Gets the version number of the payload.
+     * </p>
+     *
+     * @return the version number, {@code 0} if the resource is built from a nut
+     */
+    public long getVersionNumber() {
+        return versionNumber;
+    }
+
+    /**
+     * <p>
+     * Gets a read-only view of the payload. No copy of the content is made.
+     * </p>
+     *
+     * @return the buffer, {@code null} if the resource is built from a nut
+     */
+    public ByteBuffer getByteBuffer() {
+        return content != null ? ByteBuffer.wrap(content).asReadOnlyBuffer() : null;
+    }
+
+    /**
+     * <p>
+     * Gets the variant of this resource encoded with the given content coding.
+     * </p>
+     *
+     * @param encoding the content coding
+     * @return the encoded resource, {@code null} if no variant exists for this encoding
+     */
+    public WuicEncodedResource getEncoded(final String encoding) {
+        return GZIP.equalsIgnoreCase(encoding) ? gzipped : null;
+    }
+
+    /**
+     * <p>
+     * Compresses the payload with gzip.
+     * </p>
+     *
+     * @return the gzip variant, {@code null} if it's not smaller than the original content
+     */
+    private WuicEncodedResource gzip() {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream(content.length / 2 + 1);
+
+        try {
+            final GZIPOutputStream gos = new GZIPOutputStream(bos);
+            gos.write(content);
+            gos.close();
+        } catch (IOException ioe) {
+            // Can't happen with an in-memory stream
+            throw new IllegalStateException(ioe);
+        }
+
+        return bos.size() < content.length ? new WuicEncodedResource(this, GZIP, bos.toByteArray()) : null;
+    }
 }
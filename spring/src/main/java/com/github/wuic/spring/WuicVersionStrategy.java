@@ -51,7 +51,7 @@ public class WuicVersionStrategy implements VersionStrategy {
     /**
      * The logger.
      */
-    private final Logger logger = LoggerFactory.getLogger(getClass());
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
 
     /**
      * {@inheritDoc}
@@ -96,10 +96,20 @@ public class WuicVersionStrategy implements VersionStrategy {
     }
 
     /**
-     * {@inheritDoc}
+     * <p>
+     * Adds the given version to the path. When the version is {@code null}, the path is returned unchanged.
+     * </p>
+     *
+     * @param requestPath the path
+     * @param version the version
+     * @return the path with the version
      */
     @Override
     public String addVersion(final String requestPath, final String version) {
+        if (version == null) {
+            return requestPath;
+        }
+
         return new StringBuilder(requestPath).insert(requestPath.indexOf('/'), "/" + version).toString();
     }
 }
@@ -23,23 +23,37 @@
 package com.github.wuic.spring.test;
 
 import com.github.wuic.ApplicationConfig;
+import com.github.wuic.EnumNutType;
 import com.github.wuic.NutTypeFactory;
 import com.github.wuic.ProcessContext;
 import com.github.wuic.config.ObjectBuilderInspector;
 import com.github.wuic.context.ContextBuilder;
 import com.github.wuic.WuicFacade;
 import com.github.wuic.WuicFacadeBuilder;
+import com.github.wuic.commons.PrecompiledManifest;
 import com.github.wuic.context.ContextBuilderConfigurator;
 import com.github.wuic.context.SimpleContextBuilderConfigurator;
 import com.github.wuic.exception.WuicException;
+import com.github.wuic.nut.ConvertibleNut;
 import com.github.wuic.nut.Nut;
 import com.github.wuic.nut.dao.core.ClasspathNutDao;
+import com.github.wuic.nut.dao.spring.ResourceNut;
 import com.github.wuic.nut.dao.spring.SpringNutDao;
 import com.github.wuic.servlet.WuicServletContextListener;
+import com.github.wuic.spring.ContentHashVersionStrategy;
+import com.github.wuic.spring.ResourceUrlProviderHelperFactory;
+import com.github.wuic.spring.WuicAsyncResourceHandler;
 import com.github.wuic.spring.WuicFacadeBuilderFactory;
+import com.github.wuic.spring.WuicMetrics;
+import com.github.wuic.spring.WuicEncodedResource;
 import com.github.wuic.spring.WuicPathResourceResolver;
+import com.github.wuic.spring.WuicPrecompiler;
+import com.github.wuic.spring.WuicResource;
 import com.github.wuic.spring.WuicVersionStrategy;
+import com.github.wuic.util.FutureLong;
+import com.github.wuic.util.IOUtils;
 import com.github.wuic.util.NutUtils;
+import com.github.wuic.util.UrlProvider;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
@@ -50,9 +64,13 @@ import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.UrlResource;
+import org.springframework.mock.web.MockAsyncContext;
 import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.mock.web.MockServletContext;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.TestPropertySource;
@@ -60,20 +78,42 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.web.context.support.GenericWebApplicationContext;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistration;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.web.servlet.HandlerMapping;
 import org.springframework.web.servlet.handler.AbstractHandlerMapping;
 import org.springframework.web.servlet.handler.SimpleUrlHandlerMapping;
 import org.springframework.web.servlet.resource.ResourceHttpRequestHandler;
 import org.springframework.web.servlet.resource.ResourceResolver;
 import org.springframework.web.servlet.resource.ResourceResolverChain;
+import org.springframework.web.servlet.resource.ResourceUrlProvider;
 import org.springframework.web.servlet.resource.VersionResourceResolver;
 
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
 
 /**
  * <p>
@@ -297,6 +337,7 @@ public class SpringSupportTest {
                 .property(ApplicationConfig.BASE_PATH, "/statics")
                 .toContext()
                 .heap("foo", ContextBuilder.getDefaultBuilderId(ClasspathNutDao.class), new String[] { "foo.js" })
+                .heap("bar", ContextBuilder.getDefaultBuilderId(ClasspathNutDao.class), new String[] { "compressible.css" })
                 .releaseTag()
                 .toFacade()
                 .build();
@@ -331,6 +372,196 @@ public class SpringSupportTest {
 
     }
 
+    /**
+     * <p>
+     * Tests for {@link SpringNutDao} matching patterns against an index.
+     * </p>
+     *
+     * @throws IOException if any I/O error occurs
+     */
+    @Test
+    public void daoIndexTest() throws IOException {
+        final SpringNutDao dao = new SpringNutDao();
+        dao.basePath("/statics");
+        dao.index(true, false);
+        dao.init(false, false, null);
+        dao.setServletContext(servletContext);
+        dao.setNutTypeFactory(new NutTypeFactory(Charset.defaultCharset().displayName()));
+        Assert.assertEquals(1, dao.create("*.js", ProcessContext.DEFAULT).size());
+
+        dao.index(true, true);
+        dao.setServletContext(servletContext);
+        Assert.assertEquals(1, dao.create(".*\\.js", ProcessContext.DEFAULT).size());
+    }
+
+    /**
+     * <p>
+     * Tests for {@link SpringNutDao} used without servlet context.
+     * </p>
+     *
+     * @throws IOException if any I/O error occurs
+     */
+    @Test
+    public void daoWithoutServletContextTest() throws IOException {
+        final SpringNutDao dao = new SpringNutDao();
+        dao.basePath("classpath:/statics");
+        dao.init(false, false, null);
+        dao.setNutTypeFactory(new NutTypeFactory(Charset.defaultCharset().displayName()));
+        Assert.assertEquals(1, dao.create("*.js", ProcessContext.DEFAULT).size());
+    }
+
+    /**
+     * <p>
+     * Tests that a {@link ResourceNut} on the file system is versioned with its last modification date.
+     * </p>
+     *
+     * @throws IOException if any I/O error occurs
+     */
+    @Test
+    public void resourceNutFileVersionTest() throws IOException {
+        final File file = File.createTempFile("wuic-resource-nut", ".js");
+        file.deleteOnExit();
+        Assert.assertTrue(file.setLastModified(1000000000000L));
+
+        final Resource resource = Mockito.spy(new FileSystemResource(file));
+        final ResourceNut nut = new ResourceNut(new NutTypeFactory(Charset.defaultCharset().displayName())
+                .getNutType(EnumNutType.JAVASCRIPT), file.getName(), resource, Charset.defaultCharset().displayName());
+
+        Assert.assertEquals(file.lastModified(), (long) NutUtils.getVersionNumber(nut));
+        Assert.assertEquals(file.getParentFile().getAbsolutePath(), nut.getParentFile());
+        Mockito.verify(resource, Mockito.never()).getInputStream();
+    }
+
+    /**
+     * <p>
+     * Tests that a {@link ResourceNut} inside a JAR is versioned with the CRC and the size of its entry, without reading
+     * the entry or resolving it as a file.
+     * </p>
+     *
+     * @throws IOException if any I/O error occurs
+     */
+    @Test
+    public void resourceNutJarVersionTest() throws IOException {
+        final byte[] content = "var foo;".getBytes();
+        final File jar = File.createTempFile("wuic-resource-nut", ".jar");
+        jar.deleteOnExit();
+        final JarOutputStream jos = new JarOutputStream(new FileOutputStream(jar));
+
+        try {
+            jos.putNextEntry(new JarEntry("statics/foo.js"));
+            jos.write(content);
+            jos.closeEntry();
+        } finally {
+            jos.close();
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(content);
+
+        final Resource resource = Mockito.spy(new UrlResource("jar:" + jar.toURI().toURL() + "!/statics/foo.js"));
+        final ResourceNut nut = new ResourceNut(new NutTypeFactory(Charset.defaultCharset().displayName())
+                .getNutType(EnumNutType.JAVASCRIPT), "foo.js", resource, Charset.defaultCharset().displayName());
+
+        // A failure would be logged and give a version number of 0
+        final long expected = (crc.getValue() << Integer.SIZE) ^ content.length;
+        Assert.assertEquals(expected, (long) NutUtils.getVersionNumber(nut));
+        Assert.assertNull(nut.getParentFile());
+        Mockito.verify(resource, Mockito.never()).getFile();
+        Mockito.verify(resource, Mockito.never()).getInputStream();
+    }
+
+    /**
+     * <p>
+     * Tests that a {@link ResourceNut} neither on the file system nor in a JAR is versioned with a CRC of its content
+     * computed only once.
+     * </p>
+     *
+     * @throws IOException if any I/O error occurs
+     */
+    @Test
+    public void resourceNutContentVersionTest() throws IOException {
+        final byte[] content = "var foo;".getBytes();
+        final CRC32 crc = new CRC32();
+        crc.update(content);
+
+        final Resource resource = Mockito.spy(new ByteArrayResource(content));
+        final ResourceNut nut = new ResourceNut(new NutTypeFactory(Charset.defaultCharset().displayName())
+                .getNutType(EnumNutType.JAVASCRIPT), "foo.js", resource, Charset.defaultCharset().displayName());
+
+        Assert.assertEquals(crc.getValue(), (long) NutUtils.getVersionNumber(nut));
+        Assert.assertEquals(crc.getValue(), (long) NutUtils.getVersionNumber(nut));
+        Assert.assertNull(nut.getParentFile());
+        Mockito.verify(resource, Mockito.times(1)).getInputStream();
+    }
+
+    /**
+     * <p>
+     * A DAO exposing the polling of the last modification date.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5.3
+     */
+    private static final class PolledSpringNutDao extends SpringNutDao {
+
+        /**
+         * <p>
+         * Polls the given path.
+         * </p>
+         *
+         * @param path the path
+         * @return the last modification date
+         * @throws IOException if the date can't be read
+         */
+        private Long poll(final String path) throws IOException {
+            return getLastUpdateTimestampFor(path);
+        }
+    }
+
+    /**
+     * <p>
+     * Tests that polling {@link SpringNutDao} reads the resource and refreshes the cached values.
+     * </p>
+     *
+     * @throws IOException if any I/O error occurs
+     */
+    @Test
+    public void daoPollingTest() throws IOException {
+        final File dir = File.createTempFile("wuic-spring-dao", "");
+        Assert.assertTrue(dir.delete() && dir.mkdir());
+        final File file = new File(dir, "polled.css");
+        Assert.assertTrue(file.createNewFile());
+        Assert.assertTrue(file.setLastModified(1000000000000L));
+
+        try {
+            final PolledSpringNutDao dao = new PolledSpringNutDao();
+            dao.basePath("file:" + dir.getAbsolutePath(), -1, 16);
+            dao.init(false, false, null);
+            Assert.assertTrue(dao.exists("polled.css", ProcessContext.DEFAULT));
+            Assert.assertEquals(1000000000000L, (long) dao.poll("polled.css"));
+
+            // Cached values are not used by polling
+            Assert.assertTrue(file.setLastModified(1000000060000L));
+            Assert.assertEquals(1000000060000L, (long) dao.poll("polled.css"));
+
+            // Polling a deleted file refreshes the cached existence
+            Assert.assertTrue(file.delete());
+            Assert.assertTrue(dao.exists("polled.css", ProcessContext.DEFAULT));
+
+            try {
+                dao.poll("polled.css");
+                Assert.fail("A deleted file can't be polled");
+            } catch (IOException ioe) {
+                // expected
+            }
+
+            Assert.assertFalse(dao.exists("polled.css", ProcessContext.DEFAULT));
+        } finally {
+            file.delete();
+            dir.delete();
+        }
+    }
+
     /**
      * Tests for {@link WuicPathResourceResolver}.
      *
@@ -349,6 +580,230 @@ public class SpringSupportTest {
         Assert.assertNull(resolvers.get(1).resolveResource(new MockHttpServletRequest(), "/foo/bad.js", null, null));
     }
 
+    /**
+     * Tests that {@link WuicPathResourceResolver} only serves the version in the path and bounds its cache by bytes.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void resolverVersionTest() throws Exception {
+        final WuicMetrics metrics = new WuicMetrics();
+        final WuicPathResourceResolver resolver = new WuicPathResourceResolver(wuicFacade);
+        resolver.setMetrics(metrics);
+        final Resource current = resolver.resolveResource(null, "/foo/aggregate.js", null, null);
+        Assert.assertTrue(current instanceof WuicResource);
+        final long version = WuicResource.class.cast(current).getVersionNumber();
+
+        // Current version: same payload, then served from the versioned cache
+        Assert.assertSame(current, resolver.resolveResource(null, "/foo/" + version + "/aggregate.js", null, null));
+        Assert.assertSame(current, resolver.resolveResource(null, "/foo/" + version + "/aggregate.js", null, null));
+        Assert.assertEquals(1L, metrics.count(WuicMetrics.RESOLVER_CACHE_HIT));
+
+        // Another version is never served nor cached
+        Assert.assertNull(resolver.resolveResource(null, "/foo/" + (version + 1) + "/aggregate.js", null, null));
+        Assert.assertNull(resolver.resolveResource(null, "/foo/" + (version + 1) + "/aggregate.js", null, null));
+        Assert.assertEquals(1L, metrics.count(WuicMetrics.RESOLVER_CACHE_HIT));
+
+        // A payload larger than the byte bound is not cached
+        final WuicMetrics bounded = new WuicMetrics();
+        final WuicPathResourceResolver small = new WuicPathResourceResolver(wuicFacade, 16, 1L, 5000L);
+        small.setMetrics(bounded);
+        Assert.assertNotNull(small.resolveResource(null, "/foo/aggregate.js", null, null));
+        Assert.assertNotNull(small.resolveResource(null, "/foo/aggregate.js", null, null));
+        Assert.assertEquals(0L, bounded.count(WuicMetrics.RESOLVER_CACHE_HIT));
+        Assert.assertEquals(2L, bounded.timer(WuicMetrics.WORKFLOW_EXECUTION).getCount());
+    }
+
+    /**
+     * Tests that {@link WuicPathResourceResolver} serves pre-compressed variants.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void resolverEncodingTest() throws Exception {
+        final WuicPathResourceResolver resolver = new WuicPathResourceResolver(wuicFacade);
+        final Resource plain = resolver.resolveResource(new MockHttpServletRequest(), "/bar/aggregate.css", null, null);
+        Assert.assertTrue(plain instanceof WuicResource);
+        final WuicEncodedResource gzipped = WuicResource.class.cast(plain).getEncoded(WuicResource.GZIP);
+        Assert.assertNotNull("Expects a gzip variant for a compressible resource", gzipped);
+        Assert.assertEquals(WuicResource.GZIP, gzipped.getContentEncoding());
+        Assert.assertTrue(gzipped.contentLength() < plain.contentLength());
+        Assert.assertArrayEquals(read(plain.getInputStream()), read(new GZIPInputStream(gzipped.getInputStream())));
+
+        // Accepted codings
+        for (final String accept : new String[] { "gzip", "deflate, GZIP", "gzip;q=0.5, identity", "*", "x-gzip", "identity;q=1, *;q=0.1" }) {
+            final MockHttpServletRequest request = new MockHttpServletRequest();
+            request.addHeader("Accept-Encoding", accept);
+            Assert.assertSame(accept, gzipped, resolver.resolveResource(request, "/bar/aggregate.css", null, null));
+        }
+
+        // Refused codings
+        for (final String accept : new String[] { "gzip;q=0", "gzip; q=0.0, *", "*;q=0", "deflate", "identity", "" }) {
+            final MockHttpServletRequest request = new MockHttpServletRequest();
+            request.addHeader("Accept-Encoding", accept);
+            Assert.assertSame(accept, plain, resolver.resolveResource(request, "/bar/aggregate.css", null, null));
+        }
+
+        Assert.assertSame(plain, resolver.resolveResource(new MockHttpServletRequest(), "/bar/aggregate.css", null, null));
+
+        // Content-Encoding is set when serving the variant
+        final WuicAsyncResourceHandler handler = new WuicAsyncResourceHandler(resolver);
+
+        try {
+            MockHttpServletRequest request = new MockHttpServletRequest();
+            request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "/bar/aggregate.css");
+            request.addHeader("Accept-Encoding", "gzip, deflate");
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            handler.handleRequest(request, response);
+            Assert.assertEquals(200, response.getStatus());
+            Assert.assertEquals(WuicResource.GZIP, response.getHeader("Content-Encoding"));
+            Assert.assertEquals("Accept-Encoding", response.getHeader("Vary"));
+            Assert.assertArrayEquals(read(plain.getInputStream()),
+                    read(new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))));
+            final String gzipETag = response.getHeader("ETag");
+            Assert.assertEquals(gzipped.getETag(), gzipETag);
+            Assert.assertNotEquals(WuicResource.class.cast(plain).getETag(), gzipETag);
+            Assert.assertTrue(gzipETag, gzipETag.endsWith("-" + WuicResource.GZIP + "\""));
+
+            // Each representation is validated only by its own ETag
+            request = new MockHttpServletRequest();
+            request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "/bar/aggregate.css");
+            request.addHeader("Accept-Encoding", "gzip");
+            request.addHeader("If-None-Match", gzipETag);
+            response = new MockHttpServletResponse();
+            handler.handleRequest(request, response);
+            Assert.assertEquals(304, response.getStatus());
+
+            request = new MockHttpServletRequest();
+            request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "/bar/aggregate.css");
+            request.addHeader("Accept-Encoding", "gzip");
+            request.addHeader("If-None-Match", WuicResource.class.cast(plain).getETag());
+            response = new MockHttpServletResponse();
+            handler.handleRequest(request, response);
+            Assert.assertEquals(200, response.getStatus());
+
+            request = new MockHttpServletRequest();
+            request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "/bar/aggregate.css");
+            request.addHeader("If-None-Match", gzipETag);
+            response = new MockHttpServletResponse();
+            handler.handleRequest(request, response);
+            Assert.assertEquals(200, response.getStatus());
+
+            request = new MockHttpServletRequest();
+            request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "/bar/aggregate.css");
+            request.addHeader("Accept-Encoding", "gzip;q=0");
+            response = new MockHttpServletResponse();
+            handler.handleRequest(request, response);
+            Assert.assertEquals(200, response.getStatus());
+            Assert.assertNull(response.getHeader("Content-Encoding"));
+            Assert.assertArrayEquals(read(plain.getInputStream()), response.getContentAsByteArray());
+        } finally {
+            handler.destroy();
+        }
+    }
+
+    /**
+     * <p>
+     * Reads the given stream.
+     * </p>
+     *
+     * @param is the stream
+     * @return the bytes
+     * @throws IOException if stream can't be read
+     */
+    private static byte[] read(final InputStream is) throws IOException {
+        try {
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            IOUtils.copyStream(is, bos);
+            return bos.toByteArray();
+        } finally {
+            IOUtils.close(is);
+        }
+    }
+
+    /**
+     * Tests that {@link WuicPathResourceResolver} serves nuts written by {@link WuicPrecompiler}.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void precompilerTest() throws Exception {
+        final File output = File.createTempFile("wuic", "precompiled");
+        Assert.assertTrue(output.delete());
+        final Properties manifest = new WuicPrecompiler(wuicFacade).precompile(output, "foo");
+        Assert.assertTrue(manifest.containsKey("foo/aggregate.js"));
+        Assert.assertTrue(new File(output, WuicPrecompiler.MANIFEST).isFile());
+        Assert.assertTrue(new File(output, "foo/aggregate.js").isFile());
+
+        final WuicPathResourceResolver resolver = new WuicPathResourceResolver(wuicFacade);
+        resolver.setPrecompiled(new FileSystemResource(output.getAbsolutePath() + "/"));
+        final Resource resource = resolver.resolveResource(new MockHttpServletRequest(), "/foo/aggregate.js", null, null);
+        Assert.assertNotNull(resource);
+        Assert.assertEquals(new File(output, "foo/aggregate.js").length(), resource.contentLength());
+        final long version = Long.parseLong(manifest.getProperty("foo/aggregate.js"));
+        Assert.assertEquals(version, resource.lastModified());
+
+        // Only the precompiled version is served
+        Assert.assertNotNull(resolver.resolveResource(null, "/foo/" + version + "/aggregate.js", null, null));
+        Assert.assertNull(resolver.resolveResource(null, "/foo/" + (version + 1) + "/aggregate.js", null, null));
+
+        // Workflow is listed with its nuts
+        final PrecompiledManifest precompiled = resolver.getPrecompiledManifest();
+        Assert.assertEquals(Arrays.asList("aggregate.js"), precompiled.getNutNames("foo"));
+        Assert.assertNull(precompiled.getNutNames("bar"));
+
+        // URLs are generated without computing the version of the nut
+        final ResourceUrlProvider rup = Mockito.mock(ResourceUrlProvider.class);
+        Mockito.when(rup.getForLookupPath(Mockito.anyString())).thenReturn("/resources/foo/" + version + "/aggregate.js");
+        final ResourceUrlProviderHelperFactory factory = new ResourceUrlProviderHelperFactory(rup);
+        factory.setPrecompiled(precompiled);
+        final ConvertibleNut nut = Mockito.mock(ConvertibleNut.class);
+        Mockito.when(nut.getName()).thenReturn("aggregate.js");
+        final UrlProvider urlProvider = factory.create(IOUtils.mergePath("/ctx", "foo"));
+        Assert.assertEquals("/resources/foo/" + version + "/aggregate.js", urlProvider.getUrl(nut));
+        Assert.assertEquals("/resources/foo/" + version + "/aggregate.js", urlProvider.getUrl(nut));
+        Mockito.verify(nut, Mockito.never()).getVersionNumber();
+        Mockito.verify(rup, Mockito.times(1)).getForLookupPath(Mockito.anyString());
+    }
+
+    /**
+     * Tests for {@link WuicMetrics}.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void metricsTest() throws Exception {
+        final WuicMetrics metrics = new WuicMetrics();
+        Assert.assertEquals("OUT_OF_SERVICE", metrics.readiness("foo").get("status"));
+
+        final WuicPathResourceResolver resolver = new WuicPathResourceResolver(wuicFacade);
+        resolver.setMetrics(metrics);
+        resolver.resolveResource(new MockHttpServletRequest(), "/foo/aggregate.js", null, null);
+        resolver.resolveResource(new MockHttpServletRequest(), "/foo/aggregate.js", null, null);
+        Assert.assertEquals(1L, metrics.count(WuicMetrics.RESOLVER_CACHE_MISS));
+        Assert.assertEquals(1L, metrics.count(WuicMetrics.RESOLVER_CACHE_HIT));
+        Assert.assertEquals(1L, metrics.timer(WuicMetrics.WORKFLOW_EXECUTION).getCount());
+        Assert.assertEquals("UP", metrics.readiness("foo").get("status"));
+
+        // Without argument, all the expected workflows must be warmed
+        Assert.assertEquals("OUT_OF_SERVICE", metrics.readiness().get("status"));
+        metrics.expectWorkflows(wuicFacade);
+        Assert.assertTrue(Set.class.cast(metrics.readiness().get("pending")).contains("bar"));
+        Assert.assertEquals("OUT_OF_SERVICE", metrics.readiness().get("status"));
+        metrics.expectWorkflows(Arrays.asList("foo", "bar"));
+        Assert.assertEquals("OUT_OF_SERVICE", metrics.readiness().get("status"));
+        resolver.resolveResource(new MockHttpServletRequest(), "/bar/aggregate.css", null, null);
+        Assert.assertEquals("UP", metrics.readiness().get("status"));
+
+        final SpringNutDao dao = metrics.inspect(new SpringNutDao());
+        dao.basePath("/statics");
+        dao.init(false, false, null);
+        dao.setServletContext(servletContext);
+        dao.setNutTypeFactory(new NutTypeFactory(Charset.defaultCharset().displayName()));
+        dao.create("*.js", ProcessContext.DEFAULT);
+        Assert.assertEquals(1L, metrics.snapshot().get(WuicMetrics.DAO_LISTING + ".count"));
+    }
+
     /**
      * Tests for {@link WuicVersionStrategy}.
      *
@@ -376,6 +831,320 @@ public class SpringSupportTest {
         Assert.assertEquals("foo/" + resource.lastModified() + "/aggregate.js", resolvers.get(1).resolveUrlPath("/foo/aggregate.js", null, chain));
     }
 
+    /**
+     * Tests for {@link WuicAsyncResourceHandler}.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void asyncHandlerTest() throws Exception {
+        final WuicPathResourceResolver resolver = new WuicPathResourceResolver(wuicFacade);
+        final WuicAsyncResourceHandler handler = new WuicAsyncResourceHandler(resolver);
+
+        try {
+            MockHttpServletRequest request = new MockHttpServletRequest();
+            request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "/foo/aggregate.js");
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            handler.handleRequest(request, response);
+            Assert.assertEquals(200, response.getStatus());
+            Assert.assertTrue(response.getContentAsByteArray().length > 0);
+            final String eTag = response.getHeader("ETag");
+            Assert.assertNotNull(eTag);
+
+            Assert.assertEquals(WuicAsyncResourceHandler.CACHE_CONTROL_UNVERSIONED, response.getHeader("Cache-Control"));
+            Assert.assertTrue(response.containsHeader("Last-Modified"));
+
+            // Strong, weak, listed and wildcard ETags
+            for (final String ifNoneMatch : new String[] { eTag, "W/" + eTag, "\"foo\", " + eTag, "*" }) {
+                request = new MockHttpServletRequest();
+                request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "/foo/aggregate.js");
+                request.addHeader("If-None-Match", ifNoneMatch);
+                response = new MockHttpServletResponse();
+                handler.handleRequest(request, response);
+                Assert.assertEquals(ifNoneMatch, 304, response.getStatus());
+                Assert.assertEquals(eTag, response.getHeader("ETag"));
+            }
+
+            request = new MockHttpServletRequest();
+            request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "/foo/aggregate.js");
+            request.addHeader("If-None-Match", "W/\"foo\"");
+            response = new MockHttpServletResponse();
+            handler.handleRequest(request, response);
+            Assert.assertEquals(200, response.getStatus());
+
+            // If-Modified-Since
+            final long lastModified = resolver.resolveResource(null, "/foo/aggregate.js", null, null).lastModified();
+            request = new MockHttpServletRequest();
+            request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "/foo/aggregate.js");
+            request.addHeader("If-Modified-Since", new Date(lastModified));
+            response = new MockHttpServletResponse();
+            handler.handleRequest(request, response);
+            Assert.assertEquals(304, response.getStatus());
+
+            request = new MockHttpServletRequest();
+            request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "/foo/aggregate.js");
+            request.addHeader("If-Modified-Since", new Date(lastModified - 60000L));
+            response = new MockHttpServletResponse();
+            handler.handleRequest(request, response);
+            Assert.assertEquals(200, response.getStatus());
+
+            // If-None-Match takes precedence
+            request = new MockHttpServletRequest();
+            request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "/foo/aggregate.js");
+            request.addHeader("If-Modified-Since", new Date(lastModified));
+            request.addHeader("If-None-Match", "\"foo\"");
+            response = new MockHttpServletResponse();
+            handler.handleRequest(request, response);
+            Assert.assertEquals(200, response.getStatus());
+
+            // Versioned path never changes
+            request = new MockHttpServletRequest();
+            request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "/foo/" + lastModified + "/aggregate.js");
+            response = new MockHttpServletResponse();
+            handler.handleRequest(request, response);
+            Assert.assertEquals(200, response.getStatus());
+            Assert.assertEquals(WuicAsyncResourceHandler.CACHE_CONTROL_VERSIONED, response.getHeader("Cache-Control"));
+
+            request = new MockHttpServletRequest();
+            request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "/foo/bad.js");
+            response = new MockHttpServletResponse();
+            handler.handleRequest(request, response);
+            Assert.assertEquals(404, response.getStatus());
+        } finally {
+            handler.destroy();
+        }
+    }
+
+    /**
+     * Tests that {@link WuicAsyncResourceHandler} answers a timed out request and skips its processing.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void asyncTimeoutTest() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch last = new CountDownLatch(1);
+        final List<String> resolved = new CopyOnWriteArrayList<String>();
+        final WuicPathResourceResolver resolver = new WuicPathResourceResolver(wuicFacade) {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public Resource resolveResource(final HttpServletRequest request,
+                                            final String s,
+                                            final List<? extends Resource> resources,
+                                            final ResourceResolverChain resourceResolverChain) {
+                resolved.add(s);
+
+                try {
+                    // Keeps the only worker busy
+                    if ("/foo/bad.js".equals(s)) {
+                        release.await();
+                    }
+
+                    return super.resolveResource(request, s, resources, resourceResolverChain);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                } finally {
+                    if ("/bar/aggregate.css".equals(s)) {
+                        last.countDown();
+                    }
+                }
+            }
+        };
+
+        final WuicAsyncResourceHandler handler = new WuicAsyncResourceHandler(resolver, 1, 4, 60000L);
+
+        try {
+            final MockHttpServletRequest blocking = asyncRequest("/foo/bad.js");
+            handler.handleRequest(blocking, new MockHttpServletResponse());
+
+            final MockHttpServletRequest timedOut = asyncRequest("/foo/aggregate.js");
+            final MockHttpServletResponse timedOutResponse = new MockHttpServletResponse();
+            handler.handleRequest(timedOut, timedOutResponse);
+            Assert.assertTrue(timedOut.isAsyncStarted());
+
+            final MockAsyncContext asyncContext = (MockAsyncContext) timedOut.getAsyncContext();
+
+            for (final AsyncListener listener : new ArrayList<AsyncListener>(asyncContext.getListeners())) {
+                listener.onTimeout(new AsyncEvent(asyncContext, timedOut, timedOutResponse));
+            }
+
+            Assert.assertEquals(503, timedOutResponse.getStatus());
+            Assert.assertFalse(timedOut.isAsyncStarted());
+
+            handler.handleRequest(asyncRequest("/bar/aggregate.css"), new MockHttpServletResponse());
+            release.countDown();
+            Assert.assertTrue(last.await(30L, TimeUnit.SECONDS));
+
+            // The timed out request has been skipped by the worker
+            Assert.assertEquals(Arrays.asList("/foo/bad.js", "/bar/aggregate.css"), resolved);
+        } finally {
+            handler.destroy();
+        }
+    }
+
+    /**
+     * Tests that {@link WuicAsyncResourceHandler} answers with a {@code 500} status when resolution fails unexpectedly.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void asyncErrorTest() throws Exception {
+        final CountDownLatch served = new CountDownLatch(1);
+        final WuicPathResourceResolver resolver = new WuicPathResourceResolver(wuicFacade) {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public Resource resolveResource(final HttpServletRequest request,
+                                            final String s,
+                                            final List<? extends Resource> resources,
+                                            final ResourceResolverChain resourceResolverChain) {
+                served.countDown();
+                throw new IllegalArgumentException("Unexpected failure");
+            }
+        };
+
+        final WuicAsyncResourceHandler handler = new WuicAsyncResourceHandler(resolver, 1, 4, 60000L);
+
+        try {
+            final MockHttpServletRequest request = asyncRequest("/foo/aggregate.js");
+            final MockHttpServletResponse response = new MockHttpServletResponse();
+            handler.handleRequest(request, response);
+            Assert.assertTrue(served.await(30L, TimeUnit.SECONDS));
+
+            // Waits for the worker to complete the asynchronous context
+            final long end = System.currentTimeMillis() + 30000L;
+
+            while (request.isAsyncStarted() && System.currentTimeMillis() < end) {
+                Thread.sleep(10L);
+            }
+
+            Assert.assertFalse(request.isAsyncStarted());
+            Assert.assertEquals(500, response.getStatus());
+        } finally {
+            handler.destroy();
+        }
+    }
+
+    /**
+     * <p>
+     * Creates a request supporting asynchronous processing for the given path.
+     * </p>
+     *
+     * @param path the path
+     * @return the request
+     */
+    private static MockHttpServletRequest asyncRequest(final String path) {
+        final MockHttpServletRequest retval = new MockHttpServletRequest();
+        retval.setAsyncSupported(true);
+        retval.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, path);
+        return retval;
+    }
+
+    /**
+     * Tests that {@link ResourceUrlProviderHelperFactory} only calls spring when the version of the nut changes.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void urlProviderCacheTest() throws Exception {
+        final ResourceUrlProvider rup = Mockito.mock(ResourceUrlProvider.class);
+        Mockito.when(rup.getForLookupPath(Mockito.anyString())).thenReturn("/resources/foo/1/aggregate.js");
+        final UrlProvider urlProvider = new ResourceUrlProviderHelperFactory(rup).create("foo");
+        final ConvertibleNut nut = Mockito.mock(ConvertibleNut.class);
+        Mockito.when(nut.getName()).thenReturn("aggregate.js");
+        Mockito.when(nut.getVersionNumber()).thenReturn(new FutureLong(1L));
+
+        Assert.assertEquals("/resources/foo/1/aggregate.js", urlProvider.getUrl(nut));
+        Assert.assertEquals("/resources/foo/1/aggregate.js", urlProvider.getUrl(nut));
+        Mockito.verify(rup, Mockito.times(1)).getForLookupPath("foo/aggregate.js");
+
+        // Another future with the same version
+        Mockito.when(nut.getVersionNumber()).thenReturn(new FutureLong(1L));
+        Assert.assertEquals("/resources/foo/1/aggregate.js", urlProvider.getUrl(nut));
+        Mockito.verify(rup, Mockito.times(1)).getForLookupPath("foo/aggregate.js");
+
+        // New version
+        Mockito.when(nut.getVersionNumber()).thenReturn(new FutureLong(2L));
+        Mockito.when(rup.getForLookupPath(Mockito.anyString())).thenReturn("/resources/foo/2/aggregate.js");
+        Assert.assertEquals("/resources/foo/2/aggregate.js", urlProvider.getUrl(nut));
+        Assert.assertEquals("/resources/foo/2/aggregate.js", urlProvider.getUrl(nut));
+        Mockito.verify(rup, Mockito.times(2)).getForLookupPath("foo/aggregate.js");
+    }
+
+    /**
+     * Tests for {@link ContentHashVersionStrategy}.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void contentHashVersionTest() throws Exception {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        final ContentHashVersionStrategy strategy = new ContentHashVersionStrategy(16, new Executor() {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void execute(final Runnable command) {
+                tasks.add(command);
+            }
+        });
+
+        final byte[] content = "var foo = 'bar';".getBytes();
+        final String version = strategy.getResourceVersion(new WuicResource("foo", "foo.js", content, 1L));
+        Assert.assertNotNull(version);
+        Assert.assertTrue(Long.parseLong(version) >= 0L);
+
+        // Same content on another node with another timestamp
+        Assert.assertEquals(version, strategy.getResourceVersion(new WuicResource("foo", "foo.js", content, 2L)));
+        Assert.assertNotEquals(version, strategy.getResourceVersion(new WuicResource("foo", "foo.js", "var bar;".getBytes(), 3L)));
+
+        // Same name and timestamp in another workflow
+        Assert.assertNotEquals(version, strategy.getResourceVersion(new WuicResource("bar", "foo.js", "var bar;".getBytes(), 1L)));
+        Assert.assertEquals(version, strategy.getResourceVersion(new WuicResource("foo", "foo.js", content, 1L)));
+        Assert.assertTrue(tasks.isEmpty());
+
+        // Content not in memory is hashed asynchronously, no version is exposed meanwhile
+        final Resource resource = new FileSystemResource(getClass().getResource("/statics/foo.js").getFile());
+        Assert.assertNull(strategy.getResourceVersion(resource));
+        Assert.assertNull(strategy.getResourceVersion(resource));
+        Assert.assertEquals(1, tasks.size());
+        Assert.assertEquals("foo/aggregate.js", strategy.addVersion("foo/aggregate.js", null));
+
+        tasks.remove(0).run();
+        final String fileVersion = strategy.getResourceVersion(resource);
+        Assert.assertNotNull(fileVersion);
+        Assert.assertNotEquals(String.valueOf(resource.lastModified()), fileVersion);
+        Assert.assertTrue(tasks.isEmpty());
+
+        // A synchronous executor exposes the hash immediately
+        final ContentHashVersionStrategy sync = new ContentHashVersionStrategy(16, new Executor() {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void execute(final Runnable command) {
+                command.run();
+            }
+        });
+
+        Assert.assertEquals(fileVersion, sync.getResourceVersion(resource));
+
+        // The owned executor is stopped when the bean is destroyed
+        final ContentHashVersionStrategy destroyed = new ContentHashVersionStrategy();
+        destroyed.destroy();
+        Assert.assertEquals(version, destroyed.getResourceVersion(new WuicResource("foo", "foo.js", content, 1L)));
+        Assert.assertNull(destroyed.getResourceVersion(resource));
+        destroyed.destroy();
+    }
+
     /**
      * <p>
      * Tests that {@link ContextBuilderConfigurator} beans have been installed.
@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) 2016   The authors of WUIC
+ *
+ * License/Terms of Use
+ * Permission is hereby granted, free of charge and for the term of intellectual
+ * property rights on the Software, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify and
+ * propagate free of charge, anywhere in the world, all or part of the Software
+ * subject to the following mandatory conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, PEACEFUL ENJOYMENT,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.github.wuic.nut.dao.ssh;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * <p>
+ * An {@code InputStream} reading a remote file with several SFTP read requests in flight. The file is split into
+ * chunks of {@code chunkSize} bytes and up to {@code window} chunks are downloaded concurrently, each one from its own
+ * pooled channel starting at the chunk offset. Chunks are consumed in order, so latency is paid once per window
+ * instead of once per request.
+ * </p>
+ *
+ * <p>
+ * Channels are taken from the given pools in turn, so chunks of a same file are spread over all the sessions.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5.3
+ */
+final class ReadAheadSftpInputStream extends InputStream {
+
+    /**
+     * Executes chunk downloads.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The pools providing channels.
+     */
+    private final SftpChannelPool[] pools;
+
+    /**
+     * The path relative to the base path.
+     */
+    private final String path;
+
+    /**
+     * The file size.
+     */
+    private final long size;
+
+    /**
+     * The chunk size.
+     */
+    private final int chunkSize;
+
+    /**
+     * The maximum number of chunks in flight.
+     */
+    private final int window;
+
+    /**
+     * Metrics updated when the stream is fully read.
+     */
+    private final SftpTransferMetrics metrics;
+
+    /**
+     * Chunks being downloaded, in file order.
+     */
+    private final LinkedList<Future<byte[]>> inFlight;
+
+    /**
+     * When the transfer started.
+     */
+    private final long start;
+
+    /**
+     * Offset of the next chunk to request.
+     */
+    private long nextOffset;
+
+    /**
+     * Number of requested chunks.
+     */
+    private int chunks;
+
+    /**
+     * The chunk being read.
+     */
+    private byte[] current;
+
+    /**
+     * Position in the chunk being read.
+     */
+    private int position;
+
+    /**
+     * Number of bytes read.
+     */
+    private long read;
+
+    /**
+     * Metrics recorded or not.
+     */
+    private boolean recorded;
+
+    /**
+     * <p>
+     * Builds a new instance and requests the first chunks.
+     * </p>
+     *
+     * @param e executes chunk downloads
+     * @param p the pools providing channels
+     * @param path the path relative to the base path
+     * @param size the file size
+     * @param chunkSize the chunk size
+     * @param window the maximum number of chunks in flight
+     * @param metrics updated when the stream is fully read
+     */
+    ReadAheadSftpInputStream(final ExecutorService e,
+                             final SftpChannelPool[] p,
+                             final String path,
+                             final long size,
+                             final int chunkSize,
+                             final int window,
+                             final SftpTransferMetrics metrics) {
+        this.executor = e;
+        this.pools = p;
+        this.path = path;
+        this.size = size;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.window = Math.max(1, window);
+        this.metrics = metrics;
+        this.inFlight = new LinkedList<Future<byte[]>>();
+        this.start = System.nanoTime();
+        fill();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() throws IOException {
+        if (!ensureAvailable()) {
+            return -1;
+        }
+
+        read++;
+        return current[position++] & 0xFF;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        } else if (!ensureAvailable()) {
+            return -1;
+        }
+
+        final int retval = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, retval);
+        position += retval;
+        read += retval;
+        return retval;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int available() {
+        return current == null ? 0 : current.length - position;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        // Pending downloads release their channel when they complete
+        for (final Future<byte[]> future : inFlight) {
+            future.cancel(false);
+        }
+
+        inFlight.clear();
+        current = null;
+    }
+
+    /**
+     * <p>
+     * Makes sure that the current chunk has bytes to read, waiting for the next chunk if necessary.
+     * </p>
+     *
+     * @return {@code false} if the end of the file is reached
+     * @throws IOException if a chunk can't be downloaded
+     */
+    private boolean ensureAvailable() throws IOException {
+        while (current == null || position == current.length) {
+            if (inFlight.isEmpty()) {
+                if (!recorded) {
+                    recorded = true;
+                    metrics.record(read, System.nanoTime() - start);
+                }
+
+                return false;
+            }
+
+            try {
+                current = inFlight.removeFirst().get();
+                position = 0;
+            } catch (ExecutionException ee) {
+                close();
+
+                if (ee.getCause() instanceof IOException) {
+                    throw IOException.class.cast(ee.getCause());
+                }
+
+                throw new IOException(ee.getCause());
+            } catch (InterruptedException ie) {
+                close();
+                Thread.currentThread().interrupt();
+                throw new IOException(ie);
+            }
+
+            fill();
+        }
+
+        return true;
+    }
+
+    /**
+     * <p>
+     * Requests chunks until the window is full or the whole file is requested.
+     * </p>
+     */
+    private void fill() {
+        while (inFlight.size() < window && nextOffset < size) {
+            final long offset = nextOffset;
+            final int length = (int) Math.min(chunkSize, size - offset);
+            final SftpChannelPool pool = pools[chunks++ % pools.length];
+            nextOffset += length;
+            inFlight.add(executor.submit(new Chunk(pool, offset, length)));
+        }
+    }
+
+    /**
+     * <p>
+     * Downloads a chunk of the file.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5.3
+     */
+    private final class Chunk implements Callable<byte[]> {
+
+        /**
+         * The pool providing the channel.
+         */
+        private final SftpChannelPool pool;
+
+        /**
+         * The chunk offset.
+         */
+        private final long offset;
+
+        /**
+         * The chunk length.
+         */
+        private final int length;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param p the pool providing the channel
+         * @param o the chunk offset
+         * @param l the chunk length
+         */
+        private Chunk(final SftpChannelPool p, final long o, final int l) {
+            pool = p;
+            offset = o;
+            length = l;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public byte[] call() throws IOException {
+            final ChannelSftp channel = pool.borrow();
+            boolean valid = false;
+
+            try {
+                final byte[] retval = new byte[length];
+                final InputStream is = channel.get(path, null, offset);
+
+                try {
+                    int count = 0;
+
+                    while (count < length) {
+                        final int r = is.read(retval, count, length - count);
+
+                        if (r == -1) {
+                            throw new IOException(String.format("Unexpected end of '%s' at offset %d", path, offset + count));
+                        }
+
+                        count += r;
+                    }
+                } finally {
+                    is.close();
+                }
+
+                valid = true;
+                return retval;
+            } catch (SftpException se) {
+                throw new IOException(String.format("Can't read '%s' at offset %d", path, offset), se);
+            } finally {
+                if (valid) {
+                    pool.release(channel);
+                } else {
+                    pool.invalidate(channel);
+                }
+            }
+        }
+    }
+}
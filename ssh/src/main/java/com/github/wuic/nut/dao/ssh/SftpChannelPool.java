@@ -0,0 +1,355 @@
+/*
+ * Copyright (c) 2016   The authors of WUIC
+ *
+ * License/Terms of Use
+ * Permission is hereby granted, free of charge and for the term of intellectual
+ * property rights on the Software, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify and
+ * propagate free of charge, anywhere in the world, all or part of the Software
+ * subject to the following mandatory conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, PEACEFUL ENJOYMENT,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.github.wuic.nut.dao.ssh;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>
+ * A bounded pool of connected {@link ChannelSftp channels} opened on a {@link Session}. Each channel has already
+ * changed its working directory to the base path, so paths relative to the base path can be used directly. A channel
+ * is stateful and can't be shared by several threads: each operation {@link #borrow() borrows} a channel and
+ * {@link #release(ChannelSftp) releases} it when done, or {@link #invalidate(ChannelSftp) invalidates} it if it is
+ * broken.
+ * </p>
+ *
+ * <p>
+ * The number of channels is limited: a thread waits at most {@code maxWait} milliseconds for a channel when all of
+ * them are borrowed. A channel idle for a few seconds is checked with a {@code realpath} request before being borrowed
+ * again. The session is connected when the first channel is opened.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5.3
+ */
+public class SftpChannelPool {
+
+    /**
+     * SFTP channel usage.
+     */
+    private static final String SFTP_CHANNEL = "sftp";
+
+    /**
+     * A channel idle for more than this number of milliseconds is validated before being borrowed.
+     */
+    private static final long VALIDATION_INTERVAL = 5000L;
+
+    /**
+     * Logger.
+     */
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Idle channels, the most recently used first.
+     */
+    private final LinkedBlockingDeque<IdleChannel> idleChannels;
+
+    /**
+     * Permits to borrow a channel.
+     */
+    private final Semaphore permits;
+
+    /**
+     * The session opening channels.
+     */
+    private final Session session;
+
+    /**
+     * The directory where channels move after connection.
+     */
+    private final String basePath;
+
+    /**
+     * Maximum time in milliseconds to wait for a channel.
+     */
+    private final long maxWait;
+
+    /**
+     * Closed or not.
+     */
+    private volatile boolean closed;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param s the session opening channels
+     * @param path the directory where channels move after connection
+     * @param maxSize the maximum number of channels
+     * @param maxWaitMillis maximum time in milliseconds to wait for a channel
+     */
+    public SftpChannelPool(final Session s, final String path, final int maxSize, final long maxWaitMillis) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("SFTP channel pool size must be a positive number.");
+        }
+
+        session = s;
+        basePath = path;
+        maxWait = maxWaitMillis;
+        permits = new Semaphore(maxSize, true);
+        idleChannels = new LinkedBlockingDeque<IdleChannel>(maxSize);
+    }
+
+    /**
+     * <p>
+     * Borrows a connected channel. An idle channel is reused if any, otherwise a new channel is opened.
+     * </p>
+     *
+     * @return the channel
+     * @throws IOException if no channel is available in time or if a new channel can't be opened
+     */
+    public ChannelSftp borrow() throws IOException {
+        if (closed) {
+            throw new IOException("SFTP channel pool is closed.");
+        }
+
+        try {
+            if (!permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS)) {
+                throw new IOException(String.format("No SFTP channel available after %d ms.", maxWait));
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for an SFTP channel", ie);
+        }
+
+        try {
+            IdleChannel idle;
+
+            while ((idle = idleChannels.pollFirst()) != null) {
+                if (validate(idle)) {
+                    return idle.channel;
+                }
+
+                idle.channel.disconnect();
+            }
+
+            return open();
+        } catch (IOException ioe) {
+            permits.release();
+            throw ioe;
+        } catch (RuntimeException re) {
+            permits.release();
+            throw re;
+        }
+    }
+
+    /**
+     * <p>
+     * Releases a channel previously {@link #borrow() borrowed}.
+     * </p>
+     *
+     * @param channel the channel
+     */
+    public void release(final ChannelSftp channel) {
+        try {
+            if (closed || !channel.isConnected() || !idleChannels.offerFirst(new IdleChannel(channel))) {
+                channel.disconnect();
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * <p>
+     * Disconnects a channel previously {@link #borrow() borrowed} which must not be used anymore.
+     * </p>
+     *
+     * @param channel the channel
+     */
+    public void invalidate(final ChannelSftp channel) {
+        try {
+            channel.disconnect();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * <p>
+     * Wraps a stream read from a borrowed channel. When the returned stream is closed, the channel is released.
+     * </p>
+     *
+     * @param channel the borrowed channel
+     * @param inputStream the stream to wrap
+     * @return the wrapping stream
+     */
+    public InputStream releaseOnClose(final ChannelSftp channel, final InputStream inputStream) {
+        final AtomicBoolean released = new AtomicBoolean(false);
+
+        return new FilterInputStream(inputStream) {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void close() throws IOException {
+                if (!released.compareAndSet(false, true)) {
+                    return;
+                }
+
+                boolean valid = false;
+
+                try {
+                    super.close();
+                    valid = true;
+                } finally {
+                    if (valid) {
+                        release(channel);
+                    } else {
+                        invalidate(channel);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * <p>
+     * Closes this pool by disconnecting all idle channels and the session. Borrowed channels are disconnected when
+     * released.
+     * </p>
+     */
+    public void close() {
+        closed = true;
+        IdleChannel idle;
+
+        while ((idle = idleChannels.pollFirst()) != null) {
+            idle.channel.disconnect();
+        }
+
+        synchronized (session) {
+            if (session.isConnected()) {
+                session.disconnect();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Opens a new channel, connecting the session if necessary, and moves to the base path.
+     * </p>
+     *
+     * @return the connected channel
+     * @throws IOException if the channel can't be opened
+     */
+    private ChannelSftp open() throws IOException {
+        ChannelSftp channel = null;
+        boolean connected = false;
+
+        try {
+            synchronized (session) {
+                if (!session.isConnected()) {
+                    log.debug("Connecting SSH session to {}:{}", session.getHost(), session.getPort());
+                    session.connect();
+                }
+            }
+
+            channel = (ChannelSftp) session.openChannel(SFTP_CHANNEL);
+            channel.connect();
+            channel.cd(basePath);
+            connected = true;
+            return channel;
+        } catch (JSchException je) {
+            throw new IOException("Can't open SFTP channel", je);
+        } catch (SftpException se) {
+            throw new IOException("Can't move SFTP channel to " + basePath, se);
+        } finally {
+            if (!connected && channel != null) {
+                channel.disconnect();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Checks that an idle channel is still usable. A channel used recently is considered as valid, otherwise a
+     * {@code pwd} request is sent.
+     * </p>
+     *
+     * @param idle the idle channel
+     * @return {@code true} if the channel can be borrowed
+     */
+    private boolean validate(final IdleChannel idle) {
+        if (!idle.channel.isConnected() || idle.channel.isClosed()) {
+            return false;
+        } else if (System.currentTimeMillis() - idle.since < VALIDATION_INTERVAL) {
+            return true;
+        }
+
+        try {
+            idle.channel.realpath(".");
+            return true;
+        } catch (SftpException se) {
+            log.debug("SFTP channel is not valid anymore", se);
+            return false;
+        }
+    }
+
+    /**
+     * <p>
+     * A channel in the pool with the moment it has been released.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5.3
+     */
+    private static final class IdleChannel {
+
+        /**
+         * The channel.
+         */
+        private final ChannelSftp channel;
+
+        /**
+         * Idle since this timestamp.
+         */
+        private final long since;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param c the channel
+         */
+        private IdleChannel(final ChannelSftp c) {
+            channel = c;
+            since = System.currentTimeMillis();
+        }
+    }
+}
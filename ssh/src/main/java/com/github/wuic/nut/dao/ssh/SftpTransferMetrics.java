@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2016   The authors of WUIC
+ *
+ * License/Terms of Use
+ * Permission is hereby granted, free of charge and for the term of intellectual
+ * property rights on the Software, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify and
+ * propagate free of charge, anywhere in the world, all or part of the Software
+ * subject to the following mandatory conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, PEACEFUL ENJOYMENT,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.github.wuic.nut.dao.ssh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Throughput metrics of the files downloaded with SFTP. Each completed transfer adds its number of bytes and its
+ * duration. This class is thread-safe.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5.3
+ */
+public class SftpTransferMetrics {
+
+    /**
+     * Number of completed transfers.
+     */
+    private final AtomicLong transfers = new AtomicLong();
+
+    /**
+     * Number of transferred bytes.
+     */
+    private final AtomicLong bytes = new AtomicLong();
+
+    /**
+     * Cumulated duration of transfers in nanoseconds.
+     */
+    private final AtomicLong nanos = new AtomicLong();
+
+    /**
+     * <p>
+     * Records a completed transfer.
+     * </p>
+     *
+     * @param count the number of transferred bytes
+     * @param duration the duration in nanoseconds
+     */
+    void record(final long count, final long duration) {
+        transfers.incrementAndGet();
+        bytes.addAndGet(count);
+        nanos.addAndGet(duration);
+    }
+
+    /**
+     * <p>
+     * Gets the number of completed transfers.
+     * </p>
+     *
+     * @return the number of transfers
+     */
+    public long getTransfers() {
+        return transfers.get();
+    }
+
+    /**
+     * <p>
+     * Gets the number of transferred bytes.
+     * </p>
+     *
+     * @return the number of bytes
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * <p>
+     * Gets the cumulated duration of transfers.
+     * </p>
+     *
+     * @return the duration in milliseconds
+     */
+    public long getDurationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(nanos.get());
+    }
+
+    /**
+     * <p>
+     * Gets the average throughput of a transfer.
+     * </p>
+     *
+     * @return the number of bytes per second, {@code 0} if nothing has been transferred
+     */
+    public long getBytesPerSecond() {
+        final long duration = nanos.get();
+        return duration == 0L ? 0L : bytes.get() * TimeUnit.SECONDS.toNanos(1L) / duration;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return String.format("%d transfers, %d bytes in %d ms (%d bytes/s)",
+                getTransfers(), getBytes(), getDurationMillis(), getBytesPerSecond());
+    }
+}
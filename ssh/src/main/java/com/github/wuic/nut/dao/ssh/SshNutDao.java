@@ -34,20 +34,35 @@ import com.github.wuic.nut.dao.NutDaoService;
 import com.github.wuic.nut.Nut;
 import com.github.wuic.nut.setter.ProxyUrisPropertySetter;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
-import com.github.wuic.util.DefaultInput;
+import com.github.wuic.util.IOUtils;
 import com.github.wuic.util.Input;
 import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.ChannelSftp;
 import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpATTRS;
 import com.jcraft.jsch.SftpException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,6 +72,12 @@ import org.slf4j.LoggerFactory;
  * A {@link com.github.wuic.nut.dao.NutDao} implementation for SSH accesses.
  * </p>
  *
+ * <p>
+ * SFTP channels are pooled: each operation borrows a connected channel already moved to the base path and returns it
+ * when done. Streams release their channel when they are closed. Several sessions can be opened, each with its own
+ * pool, operations being spread over them in turn.
+ * </p>
+ *
  * @author Guillaume DROUET
  * @since 0.3.1
  */
@@ -64,15 +85,60 @@ import org.slf4j.LoggerFactory;
 @Alias("ssh")
 public class SshNutDao extends AbstractNutDao implements ApplicationConfig {
 
+    /**
+     * Property key for the maximum number of SFTP channels.
+     */
+    public static final String POOL_SIZE = "c.g.wuic.dao.poolSize";
+
+    /**
+     * Property key for the maximum time in milliseconds to wait for an SFTP channel.
+     */
+    public static final String POOL_MAX_WAIT = "c.g.wuic.dao.poolMaxWait";
+
+    /**
+     * Property key for the number of SSH sessions transfers are spread over.
+     */
+    public static final String SSH_SESSIONS = "c.g.wuic.dao.sshSessions";
+
+    /**
+     * Property key for the local directory mirroring the base path, empty to read files remotely.
+     */
+    public static final String MIRROR_DIRECTORY = "c.g.wuic.dao.mirrorDirectory";
+
+    /**
+     * Property key for the number of chunks downloaded concurrently when reading a file, {@code 0} to disable read-ahead.
+     */
+    public static final String READ_AHEAD = "c.g.wuic.dao.readAhead";
+
+    /**
+     * Property key for the size in bytes of a chunk downloaded when reading a file with read-ahead.
+     */
+    public static final String BUFFER_SIZE = "c.g.wuic.dao.bufferSize";
+
+    /**
+     * Default size in bytes of a chunk downloaded with read-ahead.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Default maximum number of SFTP channels.
+     */
+    public static final int DEFAULT_POOL_SIZE = 4;
+
+    /**
+     * Default maximum time in milliseconds to wait for an SFTP channel.
+     */
+    public static final int DEFAULT_POOL_MAX_WAIT = 30000;
+
     /**
      * Default SSH port.
      */
     private static final int DEFAULT_PORT = 22;
 
     /**
-     * SFTP channel usage.
+     * Number of milliseconds the attributes collected by a listing remain fresh when polling is disabled.
      */
-    private static final String SFTP_CHANNEL = "sftp";
+    private static final long DEFAULT_STAT_TTL = 5000L;
 
     /**
      * Common exception message.
@@ -85,15 +151,95 @@ public class SshNutDao extends AbstractNutDao implements ApplicationConfig {
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     /**
-     * The SSH session.
+     * The host name.
+     */
+    private String hostName;
+
+    /**
+     * The port.
      */
-    private Session session;
+    private int port;
+
+    /**
+     * The user name.
+     */
+    private String userName;
+
+    /**
+     * The password.
+     */
+    private String password;
+
+    /**
+     * Number of SSH sessions.
+     */
+    private int sessions = 1;
 
     /**
      * Path considered as regular expression or not.
      */
     private Boolean regularExpression;
 
+    /**
+     * Maximum number of SFTP channels.
+     */
+    private int poolSize = DEFAULT_POOL_SIZE;
+
+    /**
+     * Maximum time in milliseconds to wait for an SFTP channel.
+     */
+    private int poolMaxWait = DEFAULT_POOL_MAX_WAIT;
+
+    /**
+     * One pool of channels per session, {@code null} until first access.
+     */
+    private volatile SftpChannelPool[] channelPools;
+
+    /**
+     * Counter used to select a session for each transfer.
+     */
+    private final AtomicInteger nextPool = new AtomicInteger();
+
+    /**
+     * Polling interval in seconds.
+     */
+    private int pollingSeconds = -1;
+
+    /**
+     * Attributes of the files collected during listings.
+     */
+    private final ConcurrentMap<String, Stat> stats = new ConcurrentHashMap<String, Stat>();
+
+    /**
+     * Local directory mirroring the base path, {@code null} if files are read remotely.
+     */
+    private File mirrorDirectory;
+
+    /**
+     * Locks of the mirrored files being synchronized.
+     */
+    private final ConcurrentMap<String, Object> mirrorLocks = new ConcurrentHashMap<String, Object>();
+
+    /**
+     * Number of chunks downloaded concurrently when reading a file, {@code 0} if read-ahead is disabled.
+     */
+    private int readAhead;
+
+    /**
+     * Size in bytes of a chunk downloaded with read-ahead.
+     */
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    /**
+     * Executor downloading chunks, {@code null} until first access.
+     */
+    private volatile ExecutorService readAheadExecutor;
+
+    /**
+     * Throughput of the files read with read-ahead.
+     */
+    private final SftpTransferMetrics transferMetrics = new SftpTransferMetrics();
+
     /**
      * <p>
      * Initializes a new instance.
@@ -108,6 +254,7 @@ public class SshNutDao extends AbstractNutDao implements ApplicationConfig {
                      @ObjectConfigParam(defaultValue = "", propertyKey = PROXY_URIS, setter = ProxyUrisPropertySetter.class) final String[] proxyUris,
                      @IntegerConfigParam(defaultValue = -1, propertyKey = POLLING_INTERVAL) final int pollingInterval) {
         super.init(path, proxyUris, pollingInterval);
+        pollingSeconds = pollingInterval;
     }
 
     /**
@@ -128,72 +275,481 @@ public class SshNutDao extends AbstractNutDao implements ApplicationConfig {
                      @StringConfigParam(defaultValue = "", propertyKey = LOGIN) final String user,
                      @StringConfigParam(defaultValue = "", propertyKey = PASSWORD) final String pwd) {
         regularExpression = regex;
+        hostName = host;
+        port = p;
+        userName = user;
+        password = pwd;
+    }
+
+    /**
+     * <p>
+     * Configures the pool of SFTP channels.
+     * </p>
+     *
+     * @param size the maximum number of channels
+     * @param maxWait the maximum time in milliseconds to wait for a channel
+     */
+    @Config
+    public void pool(@IntegerConfigParam(defaultValue = DEFAULT_POOL_SIZE, propertyKey = POOL_SIZE) final int size,
+                     @IntegerConfigParam(defaultValue = DEFAULT_POOL_MAX_WAIT, propertyKey = POOL_MAX_WAIT) final int maxWait) {
+        poolSize = size;
+        poolMaxWait = maxWait;
+    }
+
+    /**
+     * <p>
+     * Sets the number of SSH sessions. Each session is a distinct TCP connection with its own pool of channels, so
+     * concurrent transfers are not limited by the window and the encryption throughput of a single session.
+     * </p>
+     *
+     * @param count the number of sessions
+     */
+    @Config
+    public void sessions(@IntegerConfigParam(defaultValue = 1, propertyKey = SSH_SESSIONS) final int count) {
+        sessions = count;
+    }
+
+    /**
+     * <p>
+     * Sets the local directory mirroring the base path. Each listing, done at each polling, downloads the files whose
+     * size or modification date changed. Nuts are then read from the mirror with memory-mapped files.
+     * </p>
+     *
+     * @param directory the mirror directory, empty to read files remotely
+     */
+    @Config
+    public void mirror(@StringConfigParam(defaultValue = "", propertyKey = MIRROR_DIRECTORY) final String directory) {
+        mirrorDirectory = directory == null || directory.isEmpty() ? null : new File(directory);
+    }
+
+    /**
+     * <p>
+     * Configures the read-ahead. When enabled, a file is read with several requests in flight, each one downloading a
+     * chunk of the file from its own channel. The number of chunks in flight is also bounded by the number of
+     * channels.
+     * </p>
+     *
+     * @param window the number of chunks downloaded concurrently, {@code 0} to disable read-ahead
+     * @param size the size in bytes of a chunk
+     */
+    @Config
+    public void readAhead(@IntegerConfigParam(defaultValue = 0, propertyKey = READ_AHEAD) final int window,
+                          @IntegerConfigParam(defaultValue = DEFAULT_BUFFER_SIZE, propertyKey = BUFFER_SIZE) final int size) {
+        readAhead = window;
+        bufferSize = size;
+    }
+
+    /**
+     * <p>
+     * Gets the throughput metrics of the files read with read-ahead.
+     * </p>
+     *
+     * @return the metrics
+     */
+    public SftpTransferMetrics getTransferMetrics() {
+        return transferMetrics;
+    }
 
-        final JSch jsch = new JSch();
+    /**
+     * <p>
+     * Gets the executor downloading chunks with read-ahead, creating it if necessary.
+     * </p>
+     *
+     * @return the executor
+     */
+    private ExecutorService readAheadExecutor() {
+        ExecutorService retval = readAheadExecutor;
+
+        if (retval == null) {
+            synchronized (this) {
+                retval = readAheadExecutor;
+
+                if (retval == null) {
+                    retval = Executors.newFixedThreadPool(readAhead * pools().length, new ThreadFactory() {
+
+                        /**
+                         * Thread counter.
+                         */
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        /**
+                         * {@inheritDoc}
+                         */
+                        @Override
+                        public Thread newThread(final Runnable r) {
+                            final Thread thread = new Thread(r, "wuic-ssh-read-ahead-" + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                    readAheadExecutor = retval;
+                }
+            }
+        }
 
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Reads the given path with several chunks downloaded concurrently.
+     * </p>
+     *
+     * @param path the path relative to the base path
+     * @return the input
+     * @throws IOException if the file can't be read
+     */
+    private Input readWithReadAhead(final String path) throws IOException {
+        final SftpChannelPool pool = pool();
+        final ChannelSftp channel = pool.borrow();
+        final Stat stat;
+
+        // Chunks are requested by offset: the size must be the current one, never the size kept by a listing
         try {
-            session = jsch.getSession(user, host, p);
-            session.setPassword(pwd);
+            snapshot(path, channel.stat(path));
+            stat = stats.get(path);
+        } catch (SftpException se) {
+            WuicException.throwStreamException(new IOException(CANNOT_LOAD_MESSAGE, se));
+            return null;
+        } finally {
+            pool.release(channel);
+        }
+
+        return newInput(new ReadAheadSftpInputStream(
+                readAheadExecutor(), pools(), path, stat.size, bufferSize, readAhead, transferMetrics));
+    }
+
+    /**
+     * <p>
+     * Creates a new session, connected when its first channel is opened.
+     * </p>
+     *
+     * @return the session
+     */
+    private Session newSession() {
+        try {
+            final Session session = new JSch().getSession(userName, hostName, port);
+            session.setPassword(password);
             final Properties config = new Properties();
             config.put("StrictHostKeyChecking", "no");
             session.setConfig(config);
+            return session;
         } catch (JSchException je) {
             WuicException.throwBadStateException(new IllegalStateException("Can't open SSH session", je));
+            return null;
         }
     }
 
     /**
      * <p>
-     * Connects the current session.
+     * Gets the pools of channels, one per session, creating them if necessary.
      * </p>
      *
-     * @throws JSchException if connection fails
+     * @return the pools
      */
-    private void connect() throws JSchException {
-        if (!session.isConnected()) {
-            session.connect();
+    private SftpChannelPool[] pools() {
+        SftpChannelPool[] retval = channelPools;
+
+        if (retval == null) {
+            synchronized (this) {
+                retval = channelPools;
+
+                if (retval == null) {
+                    retval = new SftpChannelPool[Math.max(1, sessions)];
+
+                    for (int i = 0; i < retval.length; i++) {
+                        retval[i] = new SftpChannelPool(newSession(), getBasePath(), poolSize, poolMaxWait);
+                    }
+
+                    channelPools = retval;
+                }
+            }
         }
+
+        return retval;
+    }
+
+    /**
+     * <p>
+     * Selects the pool for the next operation. Sessions are used in turn so the transfers of a workflow are spread
+     * over all of them.
+     * </p>
+     *
+     * @return the pool
+     */
+    private SftpChannelPool pool() {
+        final SftpChannelPool[] pools = pools();
+
+        if (pools.length == 1) {
+            return pools[0];
+        }
+
+        return pools[(nextPool.getAndIncrement() & Integer.MAX_VALUE) % pools.length];
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    @SuppressWarnings("unchecked")
     public List<String> listNutsPaths(final String pattern) throws IOException {
-        ChannelSftp channel = null;
+        final SftpChannelPool pool = pool();
+        final ChannelSftp channel = pool.borrow();
 
         try {
-            connect();
-
-            if (regularExpression) {
-                channel = (ChannelSftp) session.openChannel(SFTP_CHANNEL);
-                channel.connect();
-                channel.cd(getBasePath());
-                final List<ChannelSftp.LsEntry> list = channel.ls(pattern);
-                final List<String> retval = new ArrayList<String>(list.size());
-
-                for (final ChannelSftp.LsEntry entry : list) {
-                    retval.add(entry.getFilename());
+            if (!regularExpression) {
+                // Path is not a pattern, only keep its attributes for polling
+                try {
+                    snapshot(pattern, channel.stat(pattern));
+                    mirror(channel, pattern, stats.get(pattern));
+                } catch (SftpException se) {
+                    log.debug("Can't stat {}", pattern, se);
                 }
 
-                return retval;
-            } else {
                 return Arrays.asList(pattern);
             }
-        } catch (JSchException je) {
-            WuicException.throwStreamException(new IOException(je));
-            return null;
+
+            // A pattern without directory matches files at any depth, otherwise only walk as deep as it can match
+            final boolean anyDirectory = pattern.indexOf('/') == -1;
+            final int maxDepth = anyDirectory || pattern.contains("**") ? Integer.MAX_VALUE : pattern.split("/", -1).length - 1;
+            final String regex = anyDirectory ? "(.*/)?" + globToRegex(pattern) : globToRegex(pattern);
+            final List<String> retval = new ArrayList<String>();
+            walk(channel, "", 0, maxDepth, Pattern.compile(regex), retval);
+
+            for (final String path : retval) {
+                mirror(channel, path, stats.get(path));
+            }
+
+            return retval;
         } catch (SftpException se) {
             WuicException.throwStreamException(new IOException(se));
             return null;
         } finally {
-            if (channel != null) {
-                channel.disconnect();
+            pool.release(channel);
+        }
+    }
+
+    /**
+     * <p>
+     * Lists recursively the given directory and collects the files matching the pattern. The attributes of each
+     * matching file are kept for polling.
+     * </p>
+     *
+     * @param channel the channel
+     * @param relative the directory relative to the base path
+     * @param depth the depth of the directory
+     * @param maxDepth the maximum depth to list
+     * @param pattern the pattern the relative path of a file must match
+     * @param retval the list populated with the paths of matching files
+     * @throws SftpException if a directory can't be listed
+     */
+    @SuppressWarnings("unchecked")
+    private void walk(final ChannelSftp channel,
+                      final String relative,
+                      final int depth,
+                      final int maxDepth,
+                      final Pattern pattern,
+                      final List<String> retval)
+            throws SftpException {
+        final List<ChannelSftp.LsEntry> list = channel.ls(relative.isEmpty() ? "." : relative);
+
+        for (final ChannelSftp.LsEntry entry : list) {
+            final String name = entry.getFilename();
+
+            if (".".equals(name) || "..".equals(name)) {
+                continue;
+            }
+
+            final String path = relative.isEmpty() ? name : relative + '/' + name;
+
+            if (entry.getAttrs().isDir()) {
+                if (depth < maxDepth) {
+                    walk(channel, path, depth + 1, maxDepth, pattern, retval);
+                }
+            } else if (pattern.matcher(path).matches()) {
+                retval.add(path);
+                snapshot(path, entry.getAttrs());
             }
         }
     }
 
+    /**
+     * <p>
+     * Translates a glob pattern to a regular expression. {@code *} and {@code ?} don't match {@code /}, {@code **}
+     * matches any number of directories.
+     * </p>
+     *
+     * @param glob the glob pattern
+     * @return the regular expression
+     */
+    private static String globToRegex(final String glob) {
+        final StringBuilder retval = new StringBuilder();
+
+        for (int i = 0; i < glob.length(); i++) {
+            final char c = glob.charAt(i);
+
+            if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                if (i + 2 < glob.length() && glob.charAt(i + 2) == '/') {
+                    retval.append("(.*/)?");
+                    i += 2;
+                } else {
+                    retval.append(".*");
+                    i++;
+                }
+            } else if (c == '*') {
+                retval.append("[^/]*");
+            } else if (c == '?') {
+                retval.append("[^/]");
+            } else if ("\\.[]{}()+-^$|".indexOf(c) != -1) {
+                retval.append('\\').append(c);
+            } else {
+                retval.append(c);
+            }
+        }
+
+        return retval.toString();
+    }
+
+    /**
+     * <p>
+     * Keeps the attributes of the given path.
+     * </p>
+     *
+     * @param path the path
+     * @param attrs the attributes
+     */
+    private void snapshot(final String path, final SftpATTRS attrs) {
+        stats.put(path, new Stat(attrs.getMTime(), attrs.getSize()));
+    }
+
+    /**
+     * <p>
+     * Gets the attributes of the given path kept during the last listing, if still fresh. Attributes remain fresh
+     * during one polling interval, or during a few seconds when polling is disabled.
+     * </p>
+     *
+     * @param path the path
+     * @return the attributes, {@code null} if unknown
+     */
+    private Stat stat(final String path) {
+        final Stat stat = stats.get(path);
+
+        final long ttl = pollingSeconds > 0 ? pollingSeconds * 1000L : DEFAULT_STAT_TTL;
+
+        if (stat == null) {
+            return null;
+        } else if (System.currentTimeMillis() - stat.statAt > ttl) {
+            stats.remove(path, stat);
+            return null;
+        }
+
+        return stat;
+    }
+
+    /**
+     * <p>
+     * Synchronizes the mirrored file of the given path if its size or modification date differs from the given
+     * attributes. The file is downloaded next to its final location then renamed, so a partial download is never read.
+     * </p>
+     *
+     * @param channel the channel
+     * @param path the path relative to the base path
+     * @param stat the attributes of the remote file
+     * @return the mirrored file, {@code null} if mirror is disabled
+     * @throws IOException if file can't be written
+     * @throws SftpException if file can't be downloaded
+     */
+    private File mirror(final ChannelSftp channel, final String path, final Stat stat) throws IOException, SftpException {
+        if (mirrorDirectory == null || stat == null) {
+            return null;
+        }
+
+        final File file = new File(mirrorDirectory, path);
+
+        // Only one thread synchronizes a given file, the other ones wait for it
+        final Object lock = new Object();
+        final Object existing = mirrorLocks.putIfAbsent(path, lock);
+
+        synchronized (existing == null ? lock : existing) {
+            try {
+                if (file.isFile() && file.length() == stat.size && file.lastModified() / 1000L == stat.mtime) {
+                    return file;
+                }
+
+                log.debug("Synchronizing mirrored file {}", file.getAbsolutePath());
+                final File parent = file.getParentFile();
+
+                if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+                    throw new IOException("Can't create mirror directory " + parent.getAbsolutePath());
+                }
+
+                final File part = new File(parent, file.getName() + ".part");
+                OutputStream os = null;
+
+                try {
+                    os = new FileOutputStream(part);
+                    channel.get(path, os);
+                } finally {
+                    IOUtils.close(os);
+                }
+
+                // Windows does not replace an existing file
+                if (!part.renameTo(file) && (!file.delete() || !part.renameTo(file))) {
+                    throw new IOException("Can't move downloaded resource to " + file.getAbsolutePath());
+                }
+
+                file.setLastModified(stat.mtime * 1000L);
+                return file;
+            } finally {
+                mirrorLocks.remove(path, lock);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Reads the given path from the mirror, synchronizing the mirrored file first if it changed.
+     * </p>
+     *
+     * @param path the path relative to the base path
+     * @return the input
+     * @throws IOException if the file can't be synchronized or read
+     */
+    private Input readMirror(final String path) throws IOException {
+        Stat stat = stat(path);
+        File file = stat == null ? null : new File(mirrorDirectory, path);
+
+        // Synchronize when attributes are unknown or when the mirrored file is not up to date
+        if (file == null || !file.isFile() || file.length() != stat.size || file.lastModified() / 1000L != stat.mtime) {
+            final SftpChannelPool pool = pool();
+            final ChannelSftp channel = pool.borrow();
+
+            try {
+                if (stat == null) {
+                    snapshot(path, channel.stat(path));
+                    stat = stats.get(path);
+                }
+
+                file = mirror(channel, path, stat);
+            } catch (SftpException se) {
+                WuicException.throwStreamException(new IOException(CANNOT_LOAD_MESSAGE, se));
+                return null;
+            } finally {
+                pool.release(channel);
+            }
+        }
+
+        RandomAccessFile raf = null;
+
+        try {
+            raf = new RandomAccessFile(file, "r");
+            final FileChannel fileChannel = raf.getChannel();
+            return newInput(new MappedInputStream(fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size())));
+        } finally {
+            // The mapping remains valid after the channel is closed
+            IOUtils.close(raf);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -207,23 +763,24 @@ public class SshNutDao extends AbstractNutDao implements ApplicationConfig {
      */
     @Override
     protected Long getLastUpdateTimestampFor(final String path) throws IOException {
-        ChannelSftp channel = null;
+        final Stat stat = stat(path);
+
+        if (stat != null) {
+            return stat.mtime;
+        }
+
+        final SftpChannelPool pool = pool();
+        final ChannelSftp channel = pool.borrow();
 
         try {
-            channel = (ChannelSftp) session.openChannel(SFTP_CHANNEL);
-            channel.connect();
-            channel.cd(getBasePath());
-            return (long) channel.stat(path).getMTime();
-        } catch (JSchException je) {
-            WuicException.throwStreamException(new IOException(je));
-            return null;
+            final SftpATTRS attrs = channel.stat(path);
+            snapshot(path, attrs);
+            return (long) attrs.getMTime();
         } catch (SftpException se) {
             WuicException.throwStreamException(new IOException(CANNOT_LOAD_MESSAGE, se));
             return null;
         } finally {
-            if (channel != null) {
-                channel.disconnect();
-            }
+            pool.release(channel);
         }
     }
 
@@ -232,9 +789,15 @@ public class SshNutDao extends AbstractNutDao implements ApplicationConfig {
      */
     protected void finalize() throws Throwable {
 
-        // Disconnect the session if this instance is not referenced anymore
-        if (session.isConnected()) {
-            session.disconnect();
+        if (readAheadExecutor != null) {
+            readAheadExecutor.shutdownNow();
+        }
+
+        // Disconnect the channels and the sessions if this instance is not referenced anymore
+        if (channelPools != null) {
+            for (final SftpChannelPool pool : channelPools) {
+                pool.close();
+            }
         }
 
         super.finalize();
@@ -253,17 +816,27 @@ public class SshNutDao extends AbstractNutDao implements ApplicationConfig {
      */
     @Override
     public Input newInputStream(final String path, final ProcessContext processContext) throws IOException {
-        ChannelSftp channel = null;
+        if (mirrorDirectory != null) {
+            return readMirror(path);
+        } else if (readAhead > 0) {
+            return readWithReadAhead(path);
+        }
+
+        final SftpChannelPool pool = pool();
+        final ChannelSftp channel = pool.borrow();
+        boolean borrowed = true;
 
         try {
-            channel = open();
-            return newInput(channel.get(path));
+            // The channel is released when the stream is closed
+            final Input retval = newInput(pool.releaseOnClose(channel, channel.get(path)));
+            borrowed = false;
+            return retval;
         } catch (SftpException se) {
             WuicException.throwStreamException(new IOException("An SSH FTP error prevent remote file loading", se));
             return null;
         } finally {
-            if (channel != null) {
-                channel.disconnect();
+            if (borrowed) {
+                pool.release(channel);
             }
         }
     }
@@ -273,15 +846,13 @@ public class SshNutDao extends AbstractNutDao implements ApplicationConfig {
      */
     @Override
     public Boolean exists(final String path, final ProcessContext processContext) throws IOException {
-        ChannelSftp channel;
-
-        try {
-            channel = open();
-        } catch (SftpException se) {
-            WuicException.throwStreamException(new IOException("An SSH FTP error prevent remote file loading", se));
-            return false;
+        if (stat(path) != null) {
+            return Boolean.TRUE;
         }
 
+        final SftpChannelPool pool = pool();
+        final ChannelSftp channel = pool.borrow();
+
         try {
             channel.lstat(path);
             return Boolean.TRUE;
@@ -289,40 +860,7 @@ public class SshNutDao extends AbstractNutDao implements ApplicationConfig {
             log.debug("A path does not exists", se);
             return Boolean.FALSE;
         } finally {
-            if (channel != null) {
-                channel.disconnect();
-            }
-        }
-    }
-
-    /**
-     * <p>
-     * Open the returned channel and change directory to base path.
-     * </p>
-     *
-     * @throws IOException if an I/O error occurs
-     * @throws SftpException if connection could not be opened
-     * @return the channel
-     */
-    public ChannelSftp open() throws IOException, SftpException {
-        boolean exception = false;
-        ChannelSftp channel = null;
-
-        try {
-            connect();
-
-            channel = (ChannelSftp) session.openChannel(SFTP_CHANNEL);
-            channel.connect();
-            channel.cd(getBasePath());
-            exception = true;
-            return channel;
-        } catch (JSchException je) {
-            WuicException.throwStreamException(new IOException(CANNOT_LOAD_MESSAGE, je));
-            return null;
-        } finally {
-            if (exception) {
-                channel.disconnect();
-            }
+            pool.release(channel);
         }
     }
 
@@ -354,22 +892,104 @@ public class SshNutDao extends AbstractNutDao implements ApplicationConfig {
          */
         @Override
         public Input openStream() throws IOException {
-            ChannelSftp channel;
+            return newInputStream(getInitialName(), ProcessContext.DEFAULT);
+        }
+    }
 
-            try {
-                connect();
-
-                channel = (ChannelSftp) session.openChannel(SFTP_CHANNEL);
-                channel.connect();
-                channel.cd(getBasePath());
-                return newInput(channel.get(getInitialName()));
-            } catch (JSchException je) {
-                WuicException.throwStreamException(new IOException(CANNOT_LOAD_MESSAGE, je));
-                return null;
-            } catch (SftpException se) {
-                WuicException.throwStreamException(new IOException("An SSH FTP error prevent remote file loading", se));
-                return null;
+    /**
+     * <p>
+     * Attributes of a file collected during a listing.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5.3
+     */
+    private static final class Stat {
+
+        /**
+         * Last modification in seconds.
+         */
+        private final long mtime;
+
+        /**
+         * Size in bytes.
+         */
+        private final long size;
+
+        /**
+         * When the attributes have been collected.
+         */
+        private final long statAt;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param m the last modification in seconds
+         * @param s the size in bytes
+         */
+        private Stat(final long m, final long s) {
+            mtime = m;
+            size = s;
+            statAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * <p>
+     * Reads a memory-mapped file.
+     * </p>
+     *
+     * @author Guillaume DROUET
+     * @since 0.5.3
+     */
+    private static final class MappedInputStream extends InputStream {
+
+        /**
+         * The mapped content.
+         */
+        private final ByteBuffer buffer;
+
+        /**
+         * <p>
+         * Builds a new instance.
+         * </p>
+         *
+         * @param b the mapped content
+         */
+        private MappedInputStream(final ByteBuffer b) {
+            buffer = b;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
             }
+
+            final int retval = Math.min(len, buffer.remaining());
+            buffer.get(b, off, retval);
+            return retval;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int available() {
+            return buffer.remaining();
         }
     }
 }
@@ -23,11 +23,19 @@
 package com.github.wuic.ssh.test;
 
 import com.github.wuic.ApplicationConfig;
+import com.github.wuic.NutTypeFactory;
+import com.github.wuic.NutTypeFactoryHolder;
 import com.github.wuic.ProcessContext;
 import com.github.wuic.WuicFacadeBuilder;
+import com.github.wuic.config.ObjectBuilderFactory;
 import com.github.wuic.exception.WuicException;
 import com.github.wuic.nut.ConvertibleNut;
 import com.github.wuic.nut.Nut;
+import com.github.wuic.nut.dao.NutDao;
+import com.github.wuic.nut.dao.NutDaoService;
+import com.github.wuic.nut.dao.ssh.SshNutDao;
+import com.github.wuic.util.IOUtils;
+import com.github.wuic.util.Input;
 import com.github.wuic.config.bean.xml.FileXmlContextBuilderConfigurator;
 import com.jcraft.jsch.JSchException;
 import org.apache.sshd.SshServer;
@@ -47,9 +55,17 @@ import org.junit.runners.JUnit4;
 import javax.xml.bind.JAXBException;
 import java.io.IOException;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * <p>
@@ -158,4 +174,190 @@ public class SshTest {
             Assert.assertTrue(res.openStream().execution().toString().length() > 0);
         }
     }
+
+    /**
+     * <p>
+     * Tests concurrent reads spread over several sessions with channel pools smaller than the number of threads.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void sshConcurrentReadTest() throws Exception {
+        final ObjectBuilderFactory<NutDao> factory = new ObjectBuilderFactory<NutDao>(NutDaoService.class, SshNutDao.class);
+        final NutDao dao = factory.create(SshNutDao.class.getSimpleName() + "Builder")
+                .property(ApplicationConfig.BASE_PATH, System.getProperty(ApplicationConfig.BASE_PATH))
+                .property(ApplicationConfig.SERVER_PORT, 9876)
+                .property(ApplicationConfig.LOGIN, "wuic")
+                .property(ApplicationConfig.PASSWORD, "wuic")
+                .property(SshNutDao.POOL_SIZE, 2)
+                .property(SshNutDao.SSH_SESSIONS, 2)
+                .build();
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final List<Future<String>> futures = new ArrayList<Future<String>>();
+
+        try {
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        final Input is = dao.newInputStream("style.css", ProcessContext.DEFAULT);
+
+                        try {
+                            return IOUtils.readString(new InputStreamReader(is.inputStream()));
+                        } finally {
+                            is.close();
+                        }
+                    }
+                }));
+            }
+
+            final String expected = futures.get(0).get();
+            Assert.assertFalse(expected.isEmpty());
+
+            for (final Future<String> future : futures) {
+                Assert.assertEquals(expected, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * <p>
+     * Tests reads from a local mirror.
+     * </p>
+     *
+     * @throws IOException if test fails
+     */
+    @Test
+    public void sshMirrorTest() throws IOException {
+        final File mirror = new File(System.getProperty("java.io.tmpdir"), "wuic-ssh-mirror" + System.nanoTime());
+        final ObjectBuilderFactory<NutDao> factory = new ObjectBuilderFactory<NutDao>(NutDaoService.class, SshNutDao.class);
+        final NutDao dao = factory.create(SshNutDao.class.getSimpleName() + "Builder")
+                .property(ApplicationConfig.BASE_PATH, System.getProperty(ApplicationConfig.BASE_PATH))
+                .property(ApplicationConfig.SERVER_PORT, 9876)
+                .property(ApplicationConfig.LOGIN, "wuic")
+                .property(ApplicationConfig.PASSWORD, "wuic")
+                .property(ApplicationConfig.REGEX, true)
+                .property(SshNutDao.MIRROR_DIRECTORY, mirror.getAbsolutePath())
+                .build();
+        NutTypeFactoryHolder.class.cast(dao).setNutTypeFactory(new NutTypeFactory(Charset.defaultCharset().displayName()));
+        final List<Nut> nuts = dao.create("style.css", ProcessContext.DEFAULT);
+        Assert.assertEquals(1, nuts.size());
+        Assert.assertTrue(new File(mirror, "style.css").isFile());
+
+        final Input is = nuts.get(0).openStream();
+
+        try {
+            Assert.assertFalse(IOUtils.readString(new InputStreamReader(is.inputStream())).isEmpty());
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * <p>
+     * Tests reads with several chunks downloaded concurrently.
+     * </p>
+     *
+     * @throws IOException if test fails
+     */
+    @Test
+    public void sshReadAheadTest() throws IOException {
+        final ObjectBuilderFactory<NutDao> factory = new ObjectBuilderFactory<NutDao>(NutDaoService.class, SshNutDao.class);
+        final NutDao dao = factory.create(SshNutDao.class.getSimpleName() + "Builder")
+                .property(ApplicationConfig.BASE_PATH, System.getProperty(ApplicationConfig.BASE_PATH))
+                .property(ApplicationConfig.SERVER_PORT, 9876)
+                .property(ApplicationConfig.LOGIN, "wuic")
+                .property(ApplicationConfig.PASSWORD, "wuic")
+                .property(SshNutDao.READ_AHEAD, 4)
+                .property(SshNutDao.BUFFER_SIZE, 64)
+                .build();
+        final Input is = dao.newInputStream("chosen.css", ProcessContext.DEFAULT);
+        final String content;
+
+        try {
+            content = IOUtils.readString(new InputStreamReader(is.inputStream()));
+        } finally {
+            is.close();
+        }
+
+        final String expected = IOUtils.readString(new InputStreamReader(getClass().getResourceAsStream("/chosen.css")));
+        Assert.assertEquals(expected, content);
+        Assert.assertEquals(1L, SshNutDao.class.cast(dao).getTransferMetrics().getTransfers());
+        Assert.assertEquals(content.getBytes().length, SshNutDao.class.cast(dao).getTransferMetrics().getBytes());
+    }
+
+    /**
+     * <p>
+     * Tests that a pattern without directory matches nested files and that read-ahead uses the current size of a
+     * file changed since the listing.
+     * </p>
+     *
+     * @throws IOException if test fails
+     */
+    @Test
+    public void sshNestedListingTest() throws IOException {
+        final File nested = new File(System.getProperty(ApplicationConfig.BASE_PATH), "nested");
+        final File deep = new File(nested, "deep.css");
+        Assert.assertTrue(nested.isDirectory() || nested.mkdir());
+        write(deep, ".deep { color: red; }");
+
+        try {
+            final ObjectBuilderFactory<NutDao> factory = new ObjectBuilderFactory<NutDao>(NutDaoService.class, SshNutDao.class);
+            final NutDao dao = factory.create(SshNutDao.class.getSimpleName() + "Builder")
+                    .property(ApplicationConfig.BASE_PATH, System.getProperty(ApplicationConfig.BASE_PATH))
+                    .property(ApplicationConfig.SERVER_PORT, 9876)
+                    .property(ApplicationConfig.LOGIN, "wuic")
+                    .property(ApplicationConfig.PASSWORD, "wuic")
+                    .property(ApplicationConfig.REGEX, true)
+                    .property(SshNutDao.READ_AHEAD, 2)
+                    .property(SshNutDao.BUFFER_SIZE, 8)
+                    .build();
+            NutTypeFactoryHolder.class.cast(dao).setNutTypeFactory(new NutTypeFactory(Charset.defaultCharset().displayName()));
+
+            final List<String> names = new ArrayList<String>();
+
+            for (final Nut nut : dao.create("*.css", ProcessContext.DEFAULT)) {
+                names.add(nut.getInitialName());
+            }
+
+            Assert.assertTrue(names.toString(), names.contains("nested/deep.css"));
+            Assert.assertTrue(names.toString(), names.contains("style.css"));
+
+            // The file grows after the listing
+            final String content = ".deep { color: red; } .deeper { color: blue; }";
+            write(deep, content);
+            final Input is = dao.newInputStream("nested/deep.css", ProcessContext.DEFAULT);
+
+            try {
+                Assert.assertEquals(content, IOUtils.readString(new InputStreamReader(is.inputStream())));
+            } finally {
+                is.close();
+            }
+        } finally {
+            deep.delete();
+            nested.delete();
+        }
+    }
+
+    /**
+     * <p>
+     * Writes the given content to the given file.
+     * </p>
+     *
+     * @param file the file
+     * @param content the content
+     * @throws IOException if the file can't be written
+     */
+    private static void write(final File file, final String content) throws IOException {
+        final OutputStream os = new FileOutputStream(file);
+
+        try {
+            os.write(content.getBytes());
+        } finally {
+            os.close();
+        }
+    }
 }
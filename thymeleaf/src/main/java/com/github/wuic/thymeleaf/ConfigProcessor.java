@@ -25,6 +25,7 @@ package com.github.wuic.thymeleaf;
 
 import com.github.wuic.ProcessContext;
 import com.github.wuic.WuicFacade;
+import com.github.wuic.commons.ConfigFingerprints;
 import com.github.wuic.exception.WuicException;
 import com.github.wuic.servlet.HttpUtil;
 import com.github.wuic.servlet.ServletProcessContext;
@@ -37,7 +38,6 @@ import org.thymeleaf.util.DOMUtils;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.xml.bind.JAXBException;
-import java.io.Reader;
 import java.io.StringReader;
 
 /**
@@ -46,16 +46,33 @@ import java.io.StringReader;
  * configuration.
  * </p>
  *
+ * <p>
+ * Configuring the facade requires parsing the XML with JAXB. Since a template usually embeds the same configuration
+ * for every render, each configuration is fingerprinted with its tag and a hash of its XML. Fingerprints already
+ * applied are kept in a bounded cache and the reconfiguration is skipped when the same fingerprint is seen again.
+ * Fingerprints must be {@link #invalidate() invalidated} when the configuration of the facade is cleared or rebuilt.
+ * </p>
+ *
  * @author Guillaume DROUET
  * @since 0.4.2
  */
 public class ConfigProcessor extends AbstractRemovalElementProcessor {
 
+    /**
+     * Default maximum number of configuration fingerprints kept in cache.
+     */
+    public static final int DEFAULT_CACHE_SIZE = ConfigFingerprints.DEFAULT_CACHE_SIZE;
+
     /**
      * The WUIC facade.
      */
     private WuicFacade wuicFacade;
 
+    /**
+     * The fingerprints of the configurations already applied.
+     */
+    private final ConfigFingerprints applied;
+
     /**
      * <p>
      * Builds a new instance.
@@ -64,8 +81,43 @@ public class ConfigProcessor extends AbstractRemovalElementProcessor {
      * @param wf the WUIC facade
      */
     public ConfigProcessor(final WuicFacade wf) {
+        this(wf, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param wf the WUIC facade
+     * @param cacheSize the maximum number of configuration fingerprints kept in cache
+     */
+    public ConfigProcessor(final WuicFacade wf, final int cacheSize) {
+        this(wf, new ConfigFingerprints(cacheSize));
+    }
+
+    /**
+     * <p>
+     * Builds a new instance sharing the fingerprints of the configurations already applied.
+     * </p>
+     *
+     * @param wf the WUIC facade
+     * @param fingerprints the fingerprints of the configurations already applied
+     */
+    public ConfigProcessor(final WuicFacade wf, final ConfigFingerprints fingerprints) {
         super("config");
         wuicFacade = wf;
+        applied = fingerprints;
+    }
+
+    /**
+     * <p>
+     * Forgets the configurations already applied, so they are applied again at the next render. Must be called when
+     * the configuration of the facade is cleared or rebuilt.
+     * </p>
+     */
+    public void invalidate() {
+        applied.invalidate();
     }
 
     /**
@@ -83,14 +135,24 @@ public class ConfigProcessor extends AbstractRemovalElementProcessor {
     protected boolean removeHostElementIfChildNotRemoved(final Arguments arguments, final Element element) {
         try {
             // Let's load the wuic.xml file and configure the builder with it
-            final Reader reader = new StringReader(DOMUtils.getHtml5For(element.getFirstElementChild()));
+            final String xml = DOMUtils.getHtml5For(element.getFirstElementChild());
             final HttpServletRequest req = IWebContext.class.cast(arguments.getContext()).getHttpServletRequest();
+            final String tag = HttpUtil.INSTANCE.computeUniqueTag(req);
+            final String fingerprint = ConfigFingerprints.fingerprint(tag, xml);
+
+            // Same configuration already applied
+            if (applied.isApplied(fingerprint)) {
+                return false;
+            }
+
+            final long generation = applied.getGeneration();
             final ProcessContext pc = new ServletProcessContext(req);
             wuicFacade.configure(new ReaderXmlContextBuilderConfigurator.Simple(
-                    reader,
-                    HttpUtil.INSTANCE.computeUniqueTag(req),
+                    new StringReader(xml),
+                    tag,
                     wuicFacade.allowsMultipleConfigInTagSupport(),
                     pc));
+            applied.applied(fingerprint, generation);
         } catch (WuicException we) {
             WuicException.throwBadStateException(we);
         } catch (JAXBException se) {
@@ -22,15 +22,16 @@
 
 package com.github.wuic.thymeleaf;
 
+import com.github.wuic.NutTypeFactory;
 import com.github.wuic.ProcessContext;
 import com.github.wuic.WuicFacade;
+import com.github.wuic.commons.ImportMarkupCache;
+import com.github.wuic.commons.PrecompiledManifest;
 import com.github.wuic.exception.WuicException;
 import com.github.wuic.servlet.HtmlParserFilter;
 import com.github.wuic.servlet.ServletProcessContext;
 import com.github.wuic.nut.ConvertibleNut;
-import com.github.wuic.util.HtmlUtil;
 import com.github.wuic.util.IOUtils;
-import com.github.wuic.util.UrlProvider;
 import com.github.wuic.util.UrlProviderFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,6 +44,7 @@ import org.thymeleaf.processor.attr.AbstractAttrProcessor;
 
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.List;
 
 /**
@@ -55,11 +57,27 @@ import java.util.List;
  * Usage : <pre><html wuic-import="my-workflow|my-other-workflow"></html></pre>
  * </p>
  *
+ * <p>
+ * The import statements of a workflow are generated once and kept in an {@link ImportMarkupCache}, by workflow, context
+ * path of the facade and context path of the request. As long as the workflow produces the same nuts with the same
+ * versions, the cached markup is inserted as a single {@link Macro}. A new version of any nut regenerates the markup.
+ * </p>
+ *
+ * <p>
+ * When the workflow is listed in the {@link PrecompiledManifest manifest} of the precompiled workflows, the statements
+ * are generated from the nuts listed in the manifest and the workflow is not run.
+ * </p>
+ *
  * @author Guillaume DROUET
  * @since 0.4.1
  */
 public class ImportProcessor extends AbstractAttrProcessor {
 
+    /**
+     * Default maximum number of workflows whose import statements are kept in cache.
+     */
+    public static final int DEFAULT_CACHE_SIZE = ImportMarkupCache.DEFAULT_CACHE_SIZE;
+
     /**
      * The logger.
      */
@@ -75,6 +93,21 @@ public class ImportProcessor extends AbstractAttrProcessor {
      */
     private final UrlProviderFactory urlProviderFactory;
 
+    /**
+     * The import statements by workflow, context path and request context path.
+     */
+    private final ImportMarkupCache markups;
+
+    /**
+     * The manifest of the precompiled workflows, {@code null} if not set.
+     */
+    private final PrecompiledManifest precompiledManifest;
+
+    /**
+     * Resolves the type of the precompiled nuts.
+     */
+    private final NutTypeFactory nutTypeFactory;
+
     /**
      * <p>
      * Builds a new instance.
@@ -84,9 +117,68 @@ public class ImportProcessor extends AbstractAttrProcessor {
      * @param up the URL provider
      */
     public ImportProcessor(final UrlProviderFactory up, final WuicFacade wf) {
+        this(up, wf, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param wf the WUIC facade
+     * @param up the URL provider
+     * @param cacheSize the maximum number of workflows whose import statements are kept in cache
+     */
+    public ImportProcessor(final UrlProviderFactory up, final WuicFacade wf, final int cacheSize) {
+        this(up, wf, cacheSize, null);
+    }
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param wf the WUIC facade
+     * @param up the URL provider
+     * @param cacheSize the maximum number of workflows whose import statements are kept in cache
+     * @param manifest the manifest of the precompiled workflows, {@code null} to always run the workflows
+     */
+    public ImportProcessor(final UrlProviderFactory up,
+                           final WuicFacade wf,
+                           final int cacheSize,
+                           final PrecompiledManifest manifest) {
+        this(up, wf, new ImportMarkupCache(cacheSize), manifest);
+    }
+
+    /**
+     * <p>
+     * Builds a new instance sharing the cache of the import statements.
+     * </p>
+     *
+     * @param wf the WUIC facade
+     * @param up the URL provider
+     * @param cache the cache of the import statements
+     * @param manifest the manifest of the precompiled workflows, {@code null} to always run the workflows
+     */
+    public ImportProcessor(final UrlProviderFactory up,
+                           final WuicFacade wf,
+                           final ImportMarkupCache cache,
+                           final PrecompiledManifest manifest) {
         super("import");
         wuicFacade = wf;
         urlProviderFactory = up;
+        markups = cache;
+        precompiledManifest = manifest;
+        nutTypeFactory = new NutTypeFactory(Charset.defaultCharset().displayName());
+    }
+
+    /**
+     * <p>
+     * Invalidates the import statements kept in cache, so they are generated again at the next render.
+     * </p>
+     */
+    public void invalidate() {
+        markups.invalidate();
     }
 
     /**
@@ -96,8 +188,6 @@ public class ImportProcessor extends AbstractAttrProcessor {
     protected ProcessorResult processAttribute(final Arguments arguments, final Element element, final String attributeName) {
         final HttpServletRequest request = IWebContext.class.cast(arguments.getContext()).getHttpServletRequest();
 
-        request.setAttribute(HtmlParserFilter.FORCE_DYNAMIC_CONTENT, "");
-
         final String workflow = element.getAttributeValue(attributeName);
         final String breakAggregation = element.getAttributeValue("data-wuic-break");
 
@@ -109,24 +199,26 @@ public class ImportProcessor extends AbstractAttrProcessor {
             log.warn("data-wuic-break attribute has bean specified for the import of workflow {} but will be ignored because the page is not filtered by",
                     workflow, HtmlParserFilter.class.getName());
 
-            final UrlProvider urlProvider = urlProviderFactory.create(IOUtils.mergePath(wuicFacade.getContextPath(), workflow));
-
             try {
-                int cpt = 0;
-                final ProcessContext pc = arguments.getContext() instanceof IWebContext ?
-                        new ServletProcessContext(request) : null;
-                final List<ConvertibleNut> nuts = wuicFacade.runWorkflow(workflow, urlProviderFactory, pc);
+                List<ConvertibleNut> nuts = precompiledNuts(workflow);
 
-                // Insert import statements into the top
-                for (final ConvertibleNut nut : nuts) {
-                    element.insertChild(cpt++, new Macro(HtmlUtil.writeScriptImport(nut, urlProvider)));
+                if (nuts == null) {
+                    final ProcessContext pc = arguments.getContext() instanceof IWebContext ?
+                            new ServletProcessContext(request) : null;
+                    nuts = wuicFacade.runWorkflow(workflow, urlProviderFactory, pc);
                 }
+
+                // Insert import statements into the top
+                element.insertChild(0, new Macro(markup(workflow, request, nuts)));
             } catch (WuicException we) {
                 log.error("WUIC import processor has failed", we);
             } catch (IOException ioe) {
                 log.error("WUIC import processor has failed", ioe);
             }
         } else {
+            // Only the filter reads this attribute
+            request.setAttribute(HtmlParserFilter.FORCE_DYNAMIC_CONTENT, "");
+
             element.insertChild(0, new Macro("<wuic:html-import workflowId='"
                     + workflow
                     + "'"
@@ -147,4 +239,35 @@ public class ImportProcessor extends AbstractAttrProcessor {
     public int getPrecedence() {
         return 0;
     }
+
+    /**
+     * <p>
+     * Gets the nuts of the given workflow from the manifest of the precompiled workflows.
+     * </p>
+     *
+     * @param workflow the workflow ID
+     * @return the nuts, {@code null} if the workflow is not precompiled
+     */
+    private List<ConvertibleNut> precompiledNuts(final String workflow) {
+        return precompiledManifest == null ? null : precompiledManifest.getNuts(workflow, nutTypeFactory);
+    }
+
+    /**
+     * <p>
+     * Gets the import statements of the given nuts from the cache, generating them if necessary.
+     * </p>
+     *
+     * @param workflow the workflow ID
+     * @param request the request, {@code null} if not available
+     * @param nuts the nuts produced by the workflow
+     * @return the import statements
+     * @throws IOException if the statements can't be generated
+     */
+    private String markup(final String workflow, final HttpServletRequest request, final List<ConvertibleNut> nuts)
+            throws IOException {
+        final String key = ImportMarkupCache.key(workflow,
+                wuicFacade.getContextPath(),
+                request == null ? null : request.getContextPath());
+        return markups.get(key, nuts, urlProviderFactory, IOUtils.mergePath(wuicFacade.getContextPath(), workflow));
+    }
 }
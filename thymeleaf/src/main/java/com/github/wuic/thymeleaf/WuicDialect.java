@@ -23,6 +23,9 @@
 package com.github.wuic.thymeleaf;
 
 import com.github.wuic.WuicFacade;
+import com.github.wuic.commons.ConfigFingerprints;
+import com.github.wuic.commons.ImportMarkupCache;
+import com.github.wuic.commons.PrecompiledManifest;
 import com.github.wuic.util.UrlProviderFactory;
 import com.github.wuic.util.UrlUtils;
 import org.thymeleaf.dialect.AbstractDialect;
@@ -36,6 +39,13 @@ import java.util.Set;
  * The thymeleaf dialect for WUIC. Actually creates the only one "import" processor.
  * </p>
  *
+ * <p>
+ * The configurations embedded in templates are applied only once and the import statements are generated only once:
+ * the facade is not watched by the dialect. Whoever builds the dialect must keep a reference to it and call
+ * {@link #invalidate()} each time the configuration of the facade is cleared or rebuilt, otherwise the configurations
+ * already seen are never applied again.
+ * </p>
+ *
  * @author Guillaume DROUET
  * @since 0.4.1
  */
@@ -52,6 +62,21 @@ public class WuicDialect extends AbstractDialect {
      */
     private final WuicFacade wuicFacade;
 
+    /**
+     * The manifest of the precompiled workflows, {@code null} if not set.
+     */
+    private final PrecompiledManifest precompiledManifest;
+
+    /**
+     * The import statements shared by the import processors.
+     */
+    private final ImportMarkupCache markups;
+
+    /**
+     * The fingerprints of the configurations applied by the config processors.
+     */
+    private final ConfigFingerprints fingerprints;
+
     /**
      * <p>
      * Builds a new instance
@@ -61,8 +86,48 @@ public class WuicDialect extends AbstractDialect {
      * @param wf the underlying {@link WuicFacade}
      */
     public WuicDialect(final UrlProviderFactory up, final WuicFacade wf) {
+        this(up, wf, null);
+    }
+
+    /**
+     * <p>
+     * Builds a new instance generating the import statements of the precompiled workflows from their manifest.
+     * </p>
+     *
+     * @param up the URL provider
+     * @param wf the underlying {@link WuicFacade}
+     * @param manifest the manifest of the precompiled workflows, {@code null} to always run the workflows
+     */
+    public WuicDialect(final UrlProviderFactory up, final WuicFacade wf, final PrecompiledManifest manifest) {
+        this(up,
+                wf,
+                manifest,
+                new ImportMarkupCache(ImportMarkupCache.DEFAULT_CACHE_SIZE),
+                new ConfigFingerprints(ConfigFingerprints.DEFAULT_CACHE_SIZE));
+    }
+
+    /**
+     * <p>
+     * Builds a new instance with the given caches. The caches are invalidated only by {@link #invalidate()}, which must
+     * be called by the caller when the configuration of the facade is cleared or rebuilt.
+     * </p>
+     *
+     * @param up the URL provider
+     * @param wf the underlying {@link WuicFacade}
+     * @param manifest the manifest of the precompiled workflows, {@code null} to always run the workflows
+     * @param importMarkupCache the import statements kept in cache
+     * @param configFingerprints the fingerprints of the configurations already applied
+     */
+    public WuicDialect(final UrlProviderFactory up,
+                       final WuicFacade wf,
+                       final PrecompiledManifest manifest,
+                       final ImportMarkupCache importMarkupCache,
+                       final ConfigFingerprints configFingerprints) {
         this.urlProviderFactory = up;
         this.wuicFacade = wf;
+        this.precompiledManifest = manifest;
+        this.markups = importMarkupCache;
+        this.fingerprints = configFingerprints;
     }
 
     /**
@@ -90,8 +155,20 @@ public class WuicDialect extends AbstractDialect {
     @Override
     public Set<IProcessor> getProcessors() {
         final Set<IProcessor> processors = new HashSet<IProcessor>();
-        processors.add(new ImportProcessor(urlProviderFactory, wuicFacade));
-        processors.add(new ConfigProcessor(wuicFacade));
+        processors.add(new ImportProcessor(urlProviderFactory, wuicFacade, markups, precompiledManifest));
+        processors.add(new ConfigProcessor(wuicFacade, fingerprints));
         return processors;
     }
+
+    /**
+     * <p>
+     * Invalidates the import statements and the configuration fingerprints kept by the processors. Must be called when
+     * the configuration of the facade is cleared or rebuilt, so the embedded configurations are applied again and the
+     * import statements are generated again at the next render.
+     * </p>
+     */
+    public void invalidate() {
+        fingerprints.invalidate();
+        markups.invalidate();
+    }
 }
@@ -22,6 +22,7 @@
 
 package com.github.wuic.thymeleaf;
 
+import com.github.wuic.servlet.HtmlParserFilter;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.TemplateProcessingParameters;
 import org.thymeleaf.context.WebContext;
@@ -39,6 +40,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * <p>
@@ -50,6 +52,16 @@ import java.io.InputStream;
  */
 public class ThymeleafFilterTest implements Filter {
 
+    /**
+     * The request parameter marking the request as filtered by the {@link HtmlParserFilter}.
+     */
+    static final String PARSED_PARAMETER = "parsed";
+
+    /**
+     * Indicates if the last processed request has the {@link HtmlParserFilter#FORCE_DYNAMIC_CONTENT} attribute.
+     */
+    static final AtomicBoolean FORCE_DYNAMIC_CONTENT = new AtomicBoolean();
+
     /**
      * Servlet context.
      */
@@ -68,7 +80,7 @@ public class ThymeleafFilterTest implements Filter {
         servletContext = filterConfig.getServletContext();
         templateEngine = new TemplateEngine();
         templateEngine.setTemplateResolver(createTemplateResolver());
-        templateEngine.setDialect(new WuicDialect(ThymeleafTest.FACADE));
+        templateEngine.setDialect(ThymeleafTest.DIALECT);
     }
 
     /**
@@ -77,8 +89,14 @@ public class ThymeleafFilterTest implements Filter {
     @Override
     public void doFilter(final ServletRequest request, final ServletResponse response, final FilterChain chain)
             throws IOException, ServletException {
+        // Marks the request as the HTML parser filter does
+        if (request.getParameter(PARSED_PARAMETER) != null) {
+            request.setAttribute(HtmlParserFilter.class.getName(), Boolean.TRUE);
+        }
+
         try {
             templateEngine.process("index", createContext(request, response), response.getWriter());
+            FORCE_DYNAMIC_CONTENT.set(request.getAttribute(HtmlParserFilter.FORCE_DYNAMIC_CONTENT) != null);
         } catch (Exception e) {
             throw new ServletException(e);
         }
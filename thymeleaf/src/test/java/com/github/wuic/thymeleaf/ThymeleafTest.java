@@ -24,10 +24,16 @@ package com.github.wuic.thymeleaf;
 
 import com.github.wuic.WuicFacade;
 import com.github.wuic.WuicFacadeBuilder;
+import com.github.wuic.commons.ConfigFingerprints;
+import com.github.wuic.commons.ImportMarkupCache;
+import com.github.wuic.commons.PrecompiledManifest;
 import com.github.wuic.exception.WuicException;
+import com.github.wuic.nut.ConvertibleNut;
 import com.github.wuic.test.Server;
 import com.github.wuic.test.WuicRunnerConfiguration;
 import com.github.wuic.util.IOUtils;
+import com.github.wuic.util.UrlProviderFactory;
+import com.github.wuic.util.UrlUtils;
 import org.junit.Assert;
 import org.junit.ClassRule;
 import org.junit.Rule;
@@ -38,6 +44,10 @@ import org.junit.runners.JUnit4;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <p>
@@ -56,12 +66,64 @@ public class ThymeleafTest {
      */
     static final WuicFacade FACADE;
 
+    /**
+     * Number of configurations applied by the dialect.
+     */
+    static final AtomicInteger CONFIGURED = new AtomicInteger();
+
+    /**
+     * Number of import statements generated by the dialect.
+     */
+    static final AtomicInteger GENERATED = new AtomicInteger();
+
+    /**
+     * The entries of the manifest of the precompiled workflows given to the dialect, empty by default.
+     */
+    static final Properties PRECOMPILED = new Properties();
+
+    /**
+     * The dialect installed by the filter.
+     */
+    static final WuicDialect DIALECT;
+
     static {
         try {
             FACADE = new WuicFacadeBuilder().build();
         } catch (WuicException we) {
             throw new RuntimeException(we);
         }
+
+        final ConfigFingerprints fingerprints = new ConfigFingerprints(ConfigFingerprints.DEFAULT_CACHE_SIZE) {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void applied(final String fingerprint, final long g) {
+                CONFIGURED.incrementAndGet();
+                super.applied(fingerprint, g);
+            }
+        };
+
+        final ImportMarkupCache markups = new ImportMarkupCache(ImportMarkupCache.DEFAULT_CACHE_SIZE) {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            protected String generate(final List<ConvertibleNut> nuts,
+                                      final UrlProviderFactory urlProviderFactory,
+                                      final String workflowContextPath) throws IOException {
+                GENERATED.incrementAndGet();
+                return super.generate(nuts, urlProviderFactory, workflowContextPath);
+            }
+        };
+
+        DIALECT = new WuicDialect(UrlUtils.urlProviderFactory(),
+                FACADE,
+                new PrecompiledManifest(PRECOMPILED),
+                markups,
+                fingerprints);
     }
 
     /**
@@ -89,4 +151,116 @@ public class ThymeleafTest {
         Assert.assertTrue(content.contains("aggregate.css"));
         Assert.assertTrue(content.contains("aggregate.js"));
     }
+
+    /**
+     * <p>
+     * Renders the page twice. The configurations embedded in the page are applied at the first render only, and
+     * applied again after an invalidation.
+     * </p>
+     *
+     * @throws IOException if any I/O error occurs
+     */
+    @Test
+    public void configTest() throws IOException {
+        DIALECT.invalidate();
+        CONFIGURED.set(0);
+
+        // Both configurations are applied
+        String content = IOUtils.readString(new InputStreamReader(server.get("/index.html").getEntity().getContent()));
+        Assert.assertTrue(content, content.contains("aggregate.js"));
+        Assert.assertFalse(content, content.contains("wuic:config"));
+        Assert.assertEquals(2, CONFIGURED.get());
+
+        // Same configurations: JAXB parsing and reconfiguration are skipped
+        content = IOUtils.readString(new InputStreamReader(server.get("/index.html").getEntity().getContent()));
+        Assert.assertTrue(content, content.contains("aggregate.js"));
+        Assert.assertEquals(2, CONFIGURED.get());
+
+        // Invalidation applies the configurations again
+        DIALECT.invalidate();
+        content = IOUtils.readString(new InputStreamReader(server.get("/index.html").getEntity().getContent()));
+        Assert.assertTrue(content, content.contains("aggregate.js"));
+        Assert.assertEquals(4, CONFIGURED.get());
+    }
+
+    /**
+     * <p>
+     * Renders the page twice. The import statements are generated at the first render and come from the cache at the
+     * second one.
+     * </p>
+     *
+     * @throws IOException if any I/O error occurs
+     */
+    @Test
+    public void markupTest() throws IOException {
+        DIALECT.invalidate();
+        GENERATED.set(0);
+
+        final String content = IOUtils.readString(new InputStreamReader(server.get("/index.html").getEntity().getContent()));
+        Assert.assertTrue(content, content.contains("aggregate.css"));
+        Assert.assertTrue(content, content.contains("aggregate.js"));
+        Assert.assertEquals(1, GENERATED.get());
+
+        Assert.assertEquals(content, IOUtils.readString(new InputStreamReader(server.get("/index.html").getEntity().getContent())));
+        Assert.assertEquals(1, GENERATED.get());
+    }
+
+    /**
+     * <p>
+     * Imports a workflow listed in the manifest of the precompiled workflows. The import statements are generated from
+     * the manifest without running the workflow, and generated again when the version of a nut changes.
+     * </p>
+     *
+     * @throws IOException if any I/O error occurs
+     */
+    @Test
+    public void precompiledTest() throws IOException {
+        try {
+            final PrecompiledManifest manifest = new PrecompiledManifest(PRECOMPILED);
+            manifest.putWorkflow("thymeleaf", Arrays.asList("precompiled.js"));
+            manifest.putNut("thymeleaf", "precompiled.js", 4242L);
+            DIALECT.invalidate();
+            GENERATED.set(0);
+
+            // Nuts come from the manifest
+            String content = IOUtils.readString(new InputStreamReader(server.get("/index.html").getEntity().getContent()));
+            Assert.assertTrue(content, content.contains("4242"));
+            Assert.assertTrue(content, content.contains("precompiled.js"));
+            Assert.assertFalse(content, content.contains("aggregate.js"));
+            Assert.assertEquals(1, GENERATED.get());
+
+            // Same versions
+            Assert.assertEquals(content, IOUtils.readString(new InputStreamReader(server.get("/index.html").getEntity().getContent())));
+            Assert.assertEquals(1, GENERATED.get());
+
+            // New version
+            manifest.putNut("thymeleaf", "precompiled.js", 4343L);
+            content = IOUtils.readString(new InputStreamReader(server.get("/index.html").getEntity().getContent()));
+            Assert.assertTrue(content, content.contains("4343"));
+            Assert.assertFalse(content, content.contains("4242"));
+            Assert.assertEquals(2, GENERATED.get());
+        } finally {
+            PRECOMPILED.clear();
+        }
+    }
+
+    /**
+     * <p>
+     * Renders the page when the HTML parser filter is active. The import is left to the filter and the dynamic content
+     * is still forced.
+     * </p>
+     *
+     * @throws IOException if any I/O error occurs
+     */
+    @Test
+    public void parserFilterTest() throws IOException {
+        DIALECT.invalidate();
+        GENERATED.set(0);
+
+        final String content = IOUtils.readString(new InputStreamReader(server.get("/index.html?"
+                + ThymeleafFilterTest.PARSED_PARAMETER + "=true").getEntity().getContent()));
+        Assert.assertTrue(content, content.contains("<wuic:html-import workflowId='thymeleaf'"));
+        Assert.assertTrue(ThymeleafFilterTest.FORCE_DYNAMIC_CONTENT.get());
+        Assert.assertEquals(0, GENERATED.get());
+    }
 }
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2016   The authors of WUIC
+ *
+ * License/Terms of Use
+ * Permission is hereby granted, free of charge and for the term of intellectual
+ * property rights on the Software, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify and
+ * propagate free of charge, anywhere in the world, all or part of the Software
+ * subject to the following mandatory conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, PEACEFUL ENJOYMENT,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.github.wuic.thymeleaf3;
+
+import com.github.wuic.ProcessContext;
+import com.github.wuic.WuicFacade;
+import com.github.wuic.commons.ConfigFingerprints;
+import com.github.wuic.config.bean.xml.ReaderXmlContextBuilderConfigurator;
+import com.github.wuic.exception.WuicException;
+import com.github.wuic.servlet.HttpUtil;
+import com.github.wuic.servlet.ServletProcessContext;
+import org.thymeleaf.context.ITemplateContext;
+import org.thymeleaf.context.IWebContext;
+import org.thymeleaf.model.IModel;
+import org.thymeleaf.processor.element.AbstractElementModelProcessor;
+import org.thymeleaf.processor.element.IElementModelStructureHandler;
+import org.thymeleaf.templatemode.TemplateMode;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.xml.bind.JAXBException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+/**
+ * <p>
+ * This processor evaluates the XML configuration described in the body of the element and injects it to the global
+ * configuration. The element and its body are then removed from the output.
+ * </p>
+ *
+ * <p>
+ * Configuring the facade requires parsing the XML with JAXB. Since a template usually embeds the same configuration
+ * for every render, each configuration is fingerprinted with its tag and a hash of its XML. Fingerprints already
+ * applied are kept in a bounded cache and the reconfiguration is skipped when the same fingerprint is seen again.
+ * Fingerprints must be {@link #invalidate() invalidated} when the configuration of the facade is cleared or rebuilt.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5.3
+ */
+public class ConfigProcessor extends AbstractElementModelProcessor {
+
+    /**
+     * Default maximum number of configuration fingerprints kept in cache.
+     */
+    public static final int DEFAULT_CACHE_SIZE = ConfigFingerprints.DEFAULT_CACHE_SIZE;
+
+    /**
+     * The element name.
+     */
+    public static final String ELEMENT_NAME = "config";
+
+    /**
+     * The WUIC facade.
+     */
+    private final WuicFacade wuicFacade;
+
+    /**
+     * The fingerprints of the configurations already applied.
+     */
+    private final ConfigFingerprints applied;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param dialectPrefix the dialect prefix
+     * @param wf the WUIC facade
+     */
+    public ConfigProcessor(final String dialectPrefix, final WuicFacade wf) {
+        this(dialectPrefix, wf, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param dialectPrefix the dialect prefix
+     * @param wf the WUIC facade
+     * @param cacheSize the maximum number of configuration fingerprints kept in cache
+     */
+    public ConfigProcessor(final String dialectPrefix, final WuicFacade wf, final int cacheSize) {
+        this(dialectPrefix, wf, new ConfigFingerprints(cacheSize));
+    }
+
+    /**
+     * <p>
+     * Builds a new instance sharing the fingerprints of the configurations already applied.
+     * </p>
+     *
+     * @param dialectPrefix the dialect prefix
+     * @param wf the WUIC facade
+     * @param fingerprints the fingerprints of the configurations already applied
+     */
+    public ConfigProcessor(final String dialectPrefix, final WuicFacade wf, final ConfigFingerprints fingerprints) {
+        super(TemplateMode.HTML, dialectPrefix, ELEMENT_NAME, true, null, false, 0);
+        wuicFacade = wf;
+        applied = fingerprints;
+    }
+
+    /**
+     * <p>
+     * Forgets the configurations already applied, so they are applied again at the next render. Must be called when
+     * the configuration of the facade is cleared or rebuilt.
+     * </p>
+     */
+    public void invalidate() {
+        applied.invalidate();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doProcess(final ITemplateContext context,
+                             final IModel model,
+                             final IElementModelStructureHandler structureHandler) {
+        try {
+            // Let's load the wuic.xml body and configure the builder with it
+            final StringWriter xml = new StringWriter();
+
+            for (int i = 1; i < model.size() - 1; i++) {
+                model.get(i).write(xml);
+            }
+
+            final HttpServletRequest req = context instanceof IWebContext ?
+                    IWebContext.class.cast(context).getRequest() : null;
+            final String tag = req != null ?
+                    HttpUtil.INSTANCE.computeUniqueTag(req) : context.getTemplateData().getTemplate();
+            final String fingerprint = ConfigFingerprints.fingerprint(tag, xml.toString());
+
+            // Skip the configurations already applied
+            if (!applied.isApplied(fingerprint)) {
+                final long generation = applied.getGeneration();
+                final ProcessContext pc = req != null ? new ServletProcessContext(req) : ProcessContext.DEFAULT;
+                wuicFacade.configure(new ReaderXmlContextBuilderConfigurator.Simple(
+                        new StringReader(xml.toString()),
+                        tag,
+                        wuicFacade.allowsMultipleConfigInTagSupport(),
+                        pc));
+                applied.applied(fingerprint, generation);
+            }
+        } catch (IOException ioe) {
+            WuicException.throwBadStateException(ioe);
+        } catch (WuicException we) {
+            WuicException.throwBadStateException(we);
+        } catch (JAXBException se) {
+            WuicException.throwBadArgumentException(new IllegalArgumentException(
+                    "Element body is not a valid XML to describe WUIC configuration", se));
+        }
+
+        // Removes the element and its body
+        model.reset();
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2016   The authors of WUIC
+ *
+ * License/Terms of Use
+ * Permission is hereby granted, free of charge and for the term of intellectual
+ * property rights on the Software, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify and
+ * propagate free of charge, anywhere in the world, all or part of the Software
+ * subject to the following mandatory conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, PEACEFUL ENJOYMENT,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.github.wuic.thymeleaf3;
+
+import com.github.wuic.NutTypeFactory;
+import com.github.wuic.ProcessContext;
+import com.github.wuic.WuicFacade;
+import com.github.wuic.commons.ImportMarkupCache;
+import com.github.wuic.commons.PrecompiledManifest;
+import com.github.wuic.exception.WuicException;
+import com.github.wuic.nut.ConvertibleNut;
+import com.github.wuic.servlet.HtmlParserFilter;
+import com.github.wuic.servlet.ServletProcessContext;
+import com.github.wuic.util.IOUtils;
+import com.github.wuic.util.UrlProviderFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.thymeleaf.context.ITemplateContext;
+import org.thymeleaf.context.IWebContext;
+import org.thymeleaf.engine.AttributeName;
+import org.thymeleaf.model.IModel;
+import org.thymeleaf.model.IModelFactory;
+import org.thymeleaf.model.IProcessableElementTag;
+import org.thymeleaf.processor.element.AbstractAttributeTagProcessor;
+import org.thymeleaf.processor.element.IElementTagStructureHandler;
+import org.thymeleaf.templatemode.TemplateMode;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * <p>
+ * Thymeleaf 3 support for WUIC. This processor inserts the HTML statements that import nuts right after the opening
+ * tag of the element holding the attribute. The suffix processor is "import".
+ * </p>
+ *
+ * <p>
+ * Usage : <pre><head wuic:import="my-workflow"></head></pre>
+ * </p>
+ *
+ * <p>
+ * The import statements of a workflow are generated once and kept in an {@link ImportMarkupCache}, by workflow, context
+ * path of the facade and context path of the request. As long as the workflow produces the same nuts with the same
+ * versions, the cached string is inserted as a single text event. A new version of any nut regenerates the markup.
+ * </p>
+ *
+ * <p>
+ * When the workflow is listed in the {@link PrecompiledManifest manifest} of the precompiled workflows, the statements
+ * are generated from the nuts listed in the manifest and the workflow is not run.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5.3
+ */
+public class ImportProcessor extends AbstractAttributeTagProcessor {
+
+    /**
+     * Default maximum number of workflows whose import statements are kept in cache.
+     */
+    public static final int DEFAULT_CACHE_SIZE = ImportMarkupCache.DEFAULT_CACHE_SIZE;
+
+    /**
+     * The attribute name.
+     */
+    public static final String ATTRIBUTE_NAME = "import";
+
+    /**
+     * The logger.
+     */
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    /**
+     * The WUIC facade.
+     */
+    private final WuicFacade wuicFacade;
+
+    /**
+     * The URL provider.
+     */
+    private final UrlProviderFactory urlProviderFactory;
+
+    /**
+     * The import statements by workflow, context path and request context path.
+     */
+    private final ImportMarkupCache markups;
+
+    /**
+     * The manifest of the precompiled workflows, {@code null} if not set.
+     */
+    private final PrecompiledManifest precompiledManifest;
+
+    /**
+     * Resolves the type of the precompiled nuts.
+     */
+    private final NutTypeFactory nutTypeFactory;
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param dialectPrefix the dialect prefix
+     * @param up the URL provider
+     * @param wf the WUIC facade
+     */
+    public ImportProcessor(final String dialectPrefix, final UrlProviderFactory up, final WuicFacade wf) {
+        this(dialectPrefix, up, wf, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param dialectPrefix the dialect prefix
+     * @param up the URL provider
+     * @param wf the WUIC facade
+     * @param cacheSize the maximum number of workflows whose import statements are kept in cache
+     */
+    public ImportProcessor(final String dialectPrefix, final UrlProviderFactory up, final WuicFacade wf, final int cacheSize) {
+        this(dialectPrefix, up, wf, cacheSize, null);
+    }
+
+    /**
+     * <p>
+     * Builds a new instance.
+     * </p>
+     *
+     * @param dialectPrefix the dialect prefix
+     * @param up the URL provider
+     * @param wf the WUIC facade
+     * @param cacheSize the maximum number of workflows whose import statements are kept in cache
+     * @param manifest the manifest of the precompiled workflows, {@code null} to always run the workflows
+     */
+    public ImportProcessor(final String dialectPrefix,
+                           final UrlProviderFactory up,
+                           final WuicFacade wf,
+                           final int cacheSize,
+                           final PrecompiledManifest manifest) {
+        this(dialectPrefix, up, wf, new ImportMarkupCache(cacheSize), manifest);
+    }
+
+    /**
+     * <p>
+     * Builds a new instance sharing the cache of the import statements.
+     * </p>
+     *
+     * @param dialectPrefix the dialect prefix
+     * @param up the URL provider
+     * @param wf the WUIC facade
+     * @param cache the cache of the import statements
+     * @param manifest the manifest of the precompiled workflows, {@code null} to always run the workflows
+     */
+    public ImportProcessor(final String dialectPrefix,
+                           final UrlProviderFactory up,
+                           final WuicFacade wf,
+                           final ImportMarkupCache cache,
+                           final PrecompiledManifest manifest) {
+        super(TemplateMode.HTML, dialectPrefix, null, false, ATTRIBUTE_NAME, true, 0, true);
+        wuicFacade = wf;
+        urlProviderFactory = up;
+        markups = cache;
+        precompiledManifest = manifest;
+        nutTypeFactory = new NutTypeFactory(Charset.defaultCharset().displayName());
+    }
+
+    /**
+     * <p>
+     * Invalidates the import statements kept in cache, so they are generated again at the next render.
+     * </p>
+     */
+    public void invalidate() {
+        markups.invalidate();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doProcess(final ITemplateContext context,
+                             final IProcessableElementTag tag,
+                             final AttributeName attributeName,
+                             final String workflow,
+                             final IElementTagStructureHandler structureHandler) {
+        final HttpServletRequest request = context instanceof IWebContext ?
+                IWebContext.class.cast(context).getRequest() : null;
+        final IModelFactory modelFactory = context.getModelFactory();
+        final IModel model = modelFactory.createModel();
+
+        if (wuicFacade.allowsMultipleConfigInTagSupport()) {
+            wuicFacade.clearTag(workflow);
+        }
+
+        if (request == null || request.getAttribute(HtmlParserFilter.class.getName()) == null) {
+            try {
+                List<ConvertibleNut> nuts = precompiledNuts(workflow);
+
+                if (nuts == null) {
+                    final ProcessContext pc = request != null ? new ServletProcessContext(request) : ProcessContext.DEFAULT;
+                    nuts = wuicFacade.runWorkflow(workflow, urlProviderFactory, pc);
+                }
+
+                model.add(modelFactory.createText(markup(workflow, request, nuts)));
+            } catch (WuicException we) {
+                log.error("WUIC import processor has failed", we);
+            } catch (IOException ioe) {
+                log.error("WUIC import processor has failed", ioe);
+            }
+        } else {
+            // Only the filter reads this attribute
+            request.setAttribute(HtmlParserFilter.FORCE_DYNAMIC_CONTENT, "");
+
+            model.add(modelFactory.createText("<wuic:html-import workflowId='"
+                    + workflow
+                    + "'"
+                    + (tag.hasAttribute("data-wuic-break") ? " data-wuic-break " : " ")
+                    + "/>"));
+        }
+
+        // Insert import statements into the top
+        structureHandler.insertImmediatelyAfter(model, false);
+    }
+
+    /**
+     * <p>
+     * Gets the nuts of the given workflow from the manifest of the precompiled workflows.
+     * </p>
+     *
+     * @param workflow the workflow ID
+     * @return the nuts, {@code null} if the workflow is not precompiled
+     */
+    private List<ConvertibleNut> precompiledNuts(final String workflow) {
+        return precompiledManifest == null ? null : precompiledManifest.getNuts(workflow, nutTypeFactory);
+    }
+
+    /**
+     * <p>
+     * Gets the import statements of the given nuts from the cache, generating them if necessary.
+     * </p>
+     *
+     * @param workflow the workflow ID
+     * @param request the request, {@code null} if not available
+     * @param nuts the nuts produced by the workflow
+     * @return the import statements
+     * @throws IOException if the statements can't be generated
+     */
+    private String markup(final String workflow, final HttpServletRequest request, final List<ConvertibleNut> nuts)
+            throws IOException {
+        final String key = ImportMarkupCache.key(workflow,
+                wuicFacade.getContextPath(),
+                request == null ? null : request.getContextPath());
+        return markups.get(key, nuts, urlProviderFactory, IOUtils.mergePath(wuicFacade.getContextPath(), workflow));
+    }
+}
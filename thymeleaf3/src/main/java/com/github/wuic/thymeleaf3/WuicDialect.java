@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2016   The authors of WUIC
+ *
+ * License/Terms of Use
+ * Permission is hereby granted, free of charge and for the term of intellectual
+ * property rights on the Software, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify and
+ * propagate free of charge, anywhere in the world, all or part of the Software
+ * subject to the following mandatory conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, PEACEFUL ENJOYMENT,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.github.wuic.thymeleaf3;
+
+import com.github.wuic.WuicFacade;
+import com.github.wuic.commons.ConfigFingerprints;
+import com.github.wuic.commons.ImportMarkupCache;
+import com.github.wuic.commons.PrecompiledManifest;
+import com.github.wuic.util.UrlProviderFactory;
+import com.github.wuic.util.UrlUtils;
+import org.thymeleaf.dialect.AbstractProcessorDialect;
+import org.thymeleaf.processor.IProcessor;
+import org.thymeleaf.standard.StandardDialect;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * <p>
+ * The thymeleaf 3 dialect for WUIC. Creates the "import" and "config" processors.
+ * </p>
+ *
+ * <p>
+ * Unlike the thymeleaf 2 dialect, processors rely on the event based model API: no DOM is built for the page, so the
+ * template can be cached and streamed to the output by the engine.
+ * </p>
+ *
+ * <p>
+ * The configurations embedded in templates are applied only once and the import statements are generated only once:
+ * the facade is not watched by the dialect. Whoever builds the dialect must keep a reference to it and call
+ * {@link #invalidate()} each time the configuration of the facade is cleared or rebuilt, otherwise the configurations
+ * already seen are never applied again.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5.3
+ */
+public class WuicDialect extends AbstractProcessorDialect {
+
+    /**
+     * The dialect prefix.
+     */
+    public static final String PREFIX = "wuic";
+
+    /**
+     * The resource URL provider.
+     */
+    private final UrlProviderFactory urlProviderFactory;
+
+    /**
+     * The facade.
+     */
+    private final WuicFacade wuicFacade;
+
+    /**
+     * The manifest of the precompiled workflows, {@code null} if not set.
+     */
+    private final PrecompiledManifest precompiledManifest;
+
+    /**
+     * The import statements shared by the import processors.
+     */
+    private final ImportMarkupCache markups;
+
+    /**
+     * The fingerprints of the configurations applied by the config processors.
+     */
+    private final ConfigFingerprints fingerprints;
+
+    /**
+     * <p>
+     * Builds a new instance
+     * </p>
+     *
+     * @param up the URL provider
+     * @param wf the underlying {@link WuicFacade}
+     */
+    public WuicDialect(final UrlProviderFactory up, final WuicFacade wf) {
+        this(up, wf, null);
+    }
+
+    /**
+     * <p>
+     * Builds a new instance generating the import statements of the precompiled workflows from their manifest.
+     * </p>
+     *
+     * @param up the URL provider
+     * @param wf the underlying {@link WuicFacade}
+     * @param manifest the manifest of the precompiled workflows, {@code null} to always run the workflows
+     */
+    public WuicDialect(final UrlProviderFactory up, final WuicFacade wf, final PrecompiledManifest manifest) {
+        this(up,
+                wf,
+                manifest,
+                new ImportMarkupCache(ImportMarkupCache.DEFAULT_CACHE_SIZE),
+                new ConfigFingerprints(ConfigFingerprints.DEFAULT_CACHE_SIZE));
+    }
+
+    /**
+     * <p>
+     * Builds a new instance with the given caches. The caches are invalidated only by {@link #invalidate()}, which must
+     * be called by the caller when the configuration of the facade is cleared or rebuilt.
+     * </p>
+     *
+     * @param up the URL provider
+     * @param wf the underlying {@link WuicFacade}
+     * @param manifest the manifest of the precompiled workflows, {@code null} to always run the workflows
+     * @param importMarkupCache the import statements kept in cache
+     * @param configFingerprints the fingerprints of the configurations already applied
+     */
+    public WuicDialect(final UrlProviderFactory up,
+                       final WuicFacade wf,
+                       final PrecompiledManifest manifest,
+                       final ImportMarkupCache importMarkupCache,
+                       final ConfigFingerprints configFingerprints) {
+        super("WUIC", PREFIX, StandardDialect.PROCESSOR_PRECEDENCE);
+        this.urlProviderFactory = up;
+        this.wuicFacade = wf;
+        this.precompiledManifest = manifest;
+        this.markups = importMarkupCache;
+        this.fingerprints = configFingerprints;
+    }
+
+    /**
+     * <p>
+     * Builds a new instance
+     * </p>
+     *
+     * @param wf the underlying {@link WuicFacade}
+     */
+    public WuicDialect(final WuicFacade wf) {
+        this(UrlUtils.urlProviderFactory(), wf);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<IProcessor> getProcessors(final String dialectPrefix) {
+        final Set<IProcessor> processors = new HashSet<IProcessor>();
+        processors.add(new ImportProcessor(
+                dialectPrefix, urlProviderFactory, wuicFacade, markups, precompiledManifest));
+        processors.add(new ConfigProcessor(dialectPrefix, wuicFacade, fingerprints));
+        return processors;
+    }
+
+    /**
+     * <p>
+     * Invalidates the import statements and the configuration fingerprints kept by the processors. Must be called when
+     * the configuration of the facade is cleared or rebuilt, so the embedded configurations are applied again and the
+     * import statements are generated again at the next render.
+     * </p>
+     */
+    public void invalidate() {
+        fingerprints.invalidate();
+        markups.invalidate();
+    }
+}
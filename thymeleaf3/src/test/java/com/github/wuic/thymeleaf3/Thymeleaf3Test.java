@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2016   The authors of WUIC
+ *
+ * License/Terms of Use
+ * Permission is hereby granted, free of charge and for the term of intellectual
+ * property rights on the Software, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify and
+ * propagate free of charge, anywhere in the world, all or part of the Software
+ * subject to the following mandatory conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, PEACEFUL ENJOYMENT,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.github.wuic.thymeleaf3;
+
+import com.github.wuic.WuicFacade;
+import com.github.wuic.WuicFacadeBuilder;
+import com.github.wuic.commons.ConfigFingerprints;
+import com.github.wuic.commons.ImportMarkupCache;
+import com.github.wuic.nut.ConvertibleNut;
+import com.github.wuic.util.UrlProviderFactory;
+import com.github.wuic.util.UrlUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Tests for thymeleaf 3.
+ * </p>
+ *
+ * @author Guillaume DROUET
+ * @since 0.5.3
+ */
+@RunWith(JUnit4.class)
+public class Thymeleaf3Test {
+
+    /**
+     * Timeout.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /**
+     * <p>
+     * Processes a cached template declaring a configuration and importing a workflow. Configurations are applied and
+     * import statements are generated only at the first render and after an invalidation.
+     * </p>
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void dialectTest() throws Exception {
+        final ClassLoaderTemplateResolver templateResolver = new ClassLoaderTemplateResolver();
+        templateResolver.setPrefix("thymeleaf3/");
+        templateResolver.setSuffix(".html");
+        templateResolver.setTemplateMode(TemplateMode.HTML);
+        templateResolver.setCacheable(true);
+
+        final TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(templateResolver);
+
+        final AtomicInteger configured = new AtomicInteger();
+        final AtomicInteger generated = new AtomicInteger();
+        final ConfigFingerprints fingerprints = new ConfigFingerprints(ConfigFingerprints.DEFAULT_CACHE_SIZE) {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void applied(final String fingerprint, final long g) {
+                configured.incrementAndGet();
+                super.applied(fingerprint, g);
+            }
+        };
+        final ImportMarkupCache markups = new ImportMarkupCache(ImportMarkupCache.DEFAULT_CACHE_SIZE) {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            protected String generate(final List<ConvertibleNut> nuts,
+                                      final UrlProviderFactory urlProviderFactory,
+                                      final String workflowContextPath) throws IOException {
+                generated.incrementAndGet();
+                return super.generate(nuts, urlProviderFactory, workflowContextPath);
+            }
+        };
+
+        final WuicFacade facade = new WuicFacadeBuilder().build();
+        final WuicDialect dialect = new WuicDialect(UrlUtils.urlProviderFactory(), facade, null, markups, fingerprints);
+        templateEngine.addDialect(dialect);
+
+        final String content = templateEngine.process("index", new Context());
+        Assert.assertTrue(content, content.contains("aggregate.css"));
+        Assert.assertTrue(content, content.contains("aggregate.js"));
+        Assert.assertFalse(content, content.contains("wuic:config"));
+        Assert.assertFalse(content, content.contains("wuic:import"));
+
+        // Both configurations are applied and the import statements are generated once
+        Assert.assertEquals(2, configured.get());
+        Assert.assertEquals(1, generated.get());
+
+        // Configurations are not applied again and import statements come from the cache
+        Assert.assertEquals(content, templateEngine.process("index", new Context()));
+        Assert.assertEquals(2, configured.get());
+        Assert.assertEquals(1, generated.get());
+
+        // Invalidation applies the configurations and generates the import statements again
+        dialect.invalidate();
+        Assert.assertEquals(content, templateEngine.process("index", new Context()));
+        Assert.assertEquals(4, configured.get());
+        Assert.assertEquals(2, generated.get());
+    }
+}
@@ -0,0 +1 @@
+var foo = "foo";
\ No newline at end of file